@@ -0,0 +1,61 @@
+package com.example.s3merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic JSON-lines fixtures shared by the benchmarks.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    // One JSON record padded to roughly lineLength characters
+    static String line(int index, int lineLength) {
+        String head = "{\"id\":" + index + ",\"event\":\"data\",\"payload\":\"";
+        String tail = "\"}";
+        int padding = Math.max(0, lineLength - head.length() - tail.length());
+        return head + "x".repeat(padding) + tail;
+    }
+
+    static List<String> lines(int count, int lineLength) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(line(i, lineLength));
+        }
+        return lines;
+    }
+
+    // Newline-terminated file body of roughly targetBytes
+    static byte[] file(long targetBytes, int lineLength) {
+        StringBuilder sb = new StringBuilder((int) targetBytes + lineLength);
+        int i = 0;
+        while (sb.length() < targetBytes) {
+            sb.append(line(i++, lineLength)).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Batches as the download side would emit them: byte-mode blocks or 1000-line string batches
+    static List<LineBatch> batches(int lineCount, int lineLength, boolean bytes, BufferPool pool) {
+        List<String> lines = lines(lineCount, lineLength);
+        List<LineBatch> batches = new ArrayList<>();
+        if (!bytes) {
+            for (int i = 0; i < lines.size(); i += 1000) {
+                batches.add(new LineBatch(new ArrayList<>(lines.subList(i, Math.min(i + 1000, lines.size()))), "logs/bench/file.json", i + 1));
+            }
+            return batches;
+        }
+        byte[] body = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        try {
+            new LineFramer(pool, "logs/bench/file.json", 0, batches::add).frame(new ByteArrayInputStream(body));
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return batches;
+    }
+}
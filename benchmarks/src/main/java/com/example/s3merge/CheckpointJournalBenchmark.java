@@ -0,0 +1,75 @@
+package com.example.s3merge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording one file completion in the checkpoint journal with 10k and 1M completed-file
+ * entries, to compare with the full rewrite measured by CheckpointSaveBenchmark.
+ * recordCompletion leaves the fsync to the group commit; recordCompletionAndSync fsyncs
+ * every change on its own. Writes checkpoint.txt* in the working directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckpointJournalBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int entries;
+
+    private final Path snapshot = Paths.get("checkpoint.txt");
+    private final Object lock = new Object();
+    private Map<String, String> checkpoint;
+    private CheckpointJournal journal;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        checkpoint = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            checkpoint.put(String.format("logs/2025/%02d/%02d/app-%08d.json", i % 12 + 1, i % 28 + 1, i), String.valueOf(1000 + i % 5000));
+        }
+        journal = new CheckpointJournal(snapshot, checkpoint, lock,
+                                        S3SequentialJsonArrayMerger.DEFAULT_JOURNAL_FLUSH_MS,
+                                        S3SequentialJsonArrayMerger.DEFAULT_COMPACT_BYTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        journal.close();
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(Paths.get("checkpoint.txt.tmp"));
+    }
+
+    @Benchmark
+    public void recordCompletion() {
+        record();
+    }
+
+    @Benchmark
+    public void recordCompletionAndSync() throws IOException {
+        record();
+        journal.sync();
+    }
+
+    // What ChunkLedger journals when a file's last line is uploaded
+    private void record() {
+        String key = "logs/2026/01/01/new-" + (next++) + ".json";
+        synchronized (lock) {
+            checkpoint.remove("progress_" + key);
+            journal.remove("progress_" + key);
+            checkpoint.put(key, "1000");
+            journal.put(key, "1000");
+        }
+    }
+}
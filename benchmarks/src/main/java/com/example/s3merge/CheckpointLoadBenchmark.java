@@ -0,0 +1,83 @@
+package com.example.s3merge;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of the completed-file checkpoint with 1M and 5M entries: loading the text
+ * checkpoint (loadCheckpoint) versus mapping the binary index (checkpoint.format=indexed),
+ * each followed by 10k skip checks. Writes checkpoint.txt and checkpoint.idx in the
+ * working directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class CheckpointLoadBenchmark {
+
+    @Param({"1000000", "5000000"})
+    public int entries;
+
+    private final Path text = Paths.get("checkpoint.txt");
+    private final Path index = Paths.get("checkpoint.idx");
+    private final Path source = Paths.get("checkpoint-source.txt");
+    private List<String> probes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        probes = new ArrayList<>();
+        List<String> lines = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            String key = String.format("logs/2025/%02d/%02d/app-%08d.json", i % 12 + 1, i % 28 + 1, i);
+            lines.add(key + "=" + (1000 + i % 5000));
+            if (i % (entries / 10000) == 0) {
+                probes.add(key);
+            }
+        }
+        Files.write(source, lines);
+        Files.copy(source, text);
+        CheckpointConverter.convert(text, index, CheckpointConverter.RUN_ENTRIES);
+        Files.delete(text);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(text);
+        Files.deleteIfExists(index);
+        Files.deleteIfExists(source);
+    }
+
+    @Setup(Level.Iteration)
+    public void placeText() throws IOException {
+        Files.deleteIfExists(text);
+    }
+
+    @Benchmark
+    public void loadText(Blackhole bh) throws IOException {
+        Files.copy(source, text);
+        var checkpoint = S3SequentialJsonArrayMerger.loadCheckpoint();
+        for (String probe : probes) {
+            bh.consume(checkpoint.containsKey(probe));
+        }
+        Files.delete(text);
+    }
+
+    @Benchmark
+    public void openIndex(Blackhole bh) throws IOException {
+        try (CheckpointIndex checkpoint = CheckpointIndex.open(index)) {
+            for (String probe : probes) {
+                bh.consume(checkpoint.contains(probe));
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.s3merge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full checkpoint rewrite (saveCheckpoint) with 10k and 1M completed-file entries
+ * plus a small in-flight buffer. Writes checkpoint.txt in the working directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CheckpointSaveBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int entries;
+
+    private Map<String, String> checkpoint;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        checkpoint = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            checkpoint.put(String.format("logs/2025/%02d/%02d/app-%08d.json", i % 12 + 1, i % 28 + 1, i), String.valueOf(1000 + i % 5000));
+        }
+        checkpoint.put("bufferCount", "500");
+        for (int i = 0; i < 500; i++) {
+            checkpoint.put("buffer_" + i, BenchmarkData.line(i, 200));
+        }
+        checkpoint.put("lastSourceKey", "logs/2025/12/28/app-00000000.json");
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(Paths.get("checkpoint.txt"));
+        Files.deleteIfExists(Paths.get("checkpoint.txt.tmp"));
+    }
+
+    @Benchmark
+    public void saveCheckpoint() {
+        S3SequentialJsonArrayMerger.saveCheckpoint(checkpoint);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.s3merge;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunk assembly as done by uploadWorkerTask: stream each incoming batch into a
+ * ChunkWriter, which copies the lines into part buffers and ships every full part,
+ * finishing a chunk every chunkSize lines. Parts go to a store that discards them,
+ * on the calling thread, so the numbers are the copy and bookkeeping cost alone.
+ * Part buffers are recycled through one pool across chunks, as in the merger; run
+ * with -prof gc to see what is still allocated per operation. buffers=direct puts the
+ * blocks and parts off the heap (buffer.direct=true).
+ * One operation assembles every batch of 10 chunks' worth of lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkAssemblyBenchmark {
+
+    private static final int CHUNKS_PER_OP = 10;
+
+    @Param({"25500", "50000"})
+    public int chunkSize;
+
+    @Param({"200", "1000"})
+    public int lineLength;
+
+    @Param({"bytes", "string"})
+    public String lineMode;
+
+    @Param({"heap", "direct"})
+    public String buffers;
+
+    private List<LineBatch> batches;
+    private ObjectStore store;
+    private BufferPool parts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batches = BenchmarkData.batches(chunkSize * CHUNKS_PER_OP, lineLength, "bytes".equals(lineMode),
+                new BufferPool(S3SequentialJsonArrayMerger.BLOCK_SIZE, 0, "direct".equals(buffers)));
+        parts = new BufferPool(S3SequentialJsonArrayMerger.DEFAULT_PART_SIZE, 2, "direct".equals(buffers));
+        store = new InMemoryObjectStore() {
+            @Override
+            public void put(String bucket, String key, ByteBuffer data) {
+            }
+
+            @Override
+            public String uploadPart(String bucket, String key, String uploadId, int partNumber, ByteBuffer data) {
+                return "etag-" + partNumber;
+            }
+
+            @Override
+            public void completeMultipartUpload(String bucket, String key, String uploadId, List<String> partETags) {
+            }
+        };
+    }
+
+    @Benchmark
+    public void assembleChunks(Blackhole bh) throws InterruptedException {
+        ChunkWriter writer = null;
+        for (LineBatch batch : batches) {
+            int from = 0;
+            while (from < batch.size()) {
+                if (writer == null) {
+                    writer = new ChunkWriter(store, "bench", parts, 1, Runnable::run, (sourceKey, prefix) -> prefix);
+                }
+                int n = Math.min(batch.size() - from, chunkSize - writer.lineCount());
+                writer.write(batch, from, from + n);
+                from += n;
+                if (writer.lineCount() >= chunkSize) {
+                    bh.consume(writer.finish("merged-").join());
+                    writer = null;
+                }
+            }
+        }
+        if (writer != null) {
+            bh.consume(writer.finish("final-merged-").join());
+        }
+    }
+}
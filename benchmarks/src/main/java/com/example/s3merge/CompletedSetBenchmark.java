@@ -0,0 +1,48 @@
+package com.example.s3merge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skip check for one listed object against 1M completed files, for each completed.set
+ * type: half the probes are completed files, half are new ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompletedSetBenchmark {
+
+    private static final int ENTRIES = 1_000_000;
+
+    @Param({"heap", "digest"})
+    public String type;
+
+    private CompletedSet set;
+    private String[] probes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        set = CompletedSet.create(type, ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            set.add(key(i));
+        }
+        probes = new String[4096];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = key(i % 2 == 0 ? i * 241 : ENTRIES + i);
+        }
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return set.contains(probes[next++ & (probes.length - 1)]);
+    }
+
+    private static String key(int i) {
+        return String.format("logs/2025/%02d/%02d/app-%08d.json", i % 12 + 1, i % 28 + 1, i);
+    }
+}
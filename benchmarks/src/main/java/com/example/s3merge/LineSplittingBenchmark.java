@@ -0,0 +1,78 @@
+package com.example.s3merge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download-side line splitting: downloadAndProcessFile reading one object from
+ * the in-memory store and emitting batches, in byte mode (LineFramer) and in
+ * string mode (BufferedReader.readLine). Reported as time per file; divide the
+ * file size by the score for MB/s. buffers=direct frames into off-heap blocks
+ * (buffer.direct=true); string mode has no blocks, so it ignores the setting.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineSplittingBenchmark {
+
+    private static final String BUCKET = "source";
+    private static final String KEY = "logs/bench/file.json";
+
+    @Param({"16"})
+    public int fileSizeMb;
+
+    @Param({"200", "1000"})
+    public int lineLength;
+
+    @Param({"bytes", "string"})
+    public String lineMode;
+
+    @Param({"heap", "direct"})
+    public String buffers;
+
+    private InMemoryObjectStore store;
+    private long fileSize;
+    private LinkedBlockingQueue<LineBatch> queue;
+    private Map<String, String> checkpoint;
+    private CompletedSet completedFiles;
+    private S3SequentialJsonArrayMerger.ChunkLedger ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        S3SequentialJsonArrayMerger.byteLineMode = "bytes".equals(lineMode);
+        S3SequentialJsonArrayMerger.blockPool = new BufferPool(S3SequentialJsonArrayMerger.BLOCK_SIZE,
+                S3SequentialJsonArrayMerger.QUEUE_CAPACITY, "direct".equals(buffers));
+        store = new InMemoryObjectStore();
+        byte[] data = BenchmarkData.file(fileSizeMb * 1024L * 1024L, lineLength);
+        store.put(BUCKET, KEY, data);
+        fileSize = data.length;
+        queue = new LinkedBlockingQueue<>();
+        checkpoint = new HashMap<>();
+        completedFiles = CompletedSet.create("heap", 0);
+        ledger = new S3SequentialJsonArrayMerger.ChunkLedger(checkpoint, completedFiles, 1, 0);
+    }
+
+    @TearDown(Level.Invocation)
+    public void drain() {
+        LineBatch batch;
+        while ((batch = queue.poll()) != null) {
+            batch.release();
+        }
+        checkpoint.clear();
+        completedFiles = CompletedSet.create("heap", 0);
+        ledger = new S3SequentialJsonArrayMerger.ChunkLedger(checkpoint, completedFiles, 1, 0);
+    }
+
+    @Benchmark
+    public S3SequentialJsonArrayMerger.FileProcessResult splitFile() {
+        return S3SequentialJsonArrayMerger.downloadAndProcessFile(
+                store, BUCKET, KEY, fileSize, 0, 0, queue, checkpoint, ledger);
+    }
+}
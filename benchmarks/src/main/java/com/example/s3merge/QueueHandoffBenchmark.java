@@ -0,0 +1,116 @@
+package com.example.s3merge;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LineBatch handoff from download threads to the chunk assembler, through the bounded
+ * LinkedBlockingQueue (queue=linked) or the LineRing (queue=ring) used by the merger.
+ * Each group has one consumer and 25 (DOWNLOAD_THREADS), 100 or 500 producers.
+ *
+ * The consumer waits for one batch and drains up to 63 more, as uploadWorkerTask does.
+ * Timed offer/poll are used instead of put/take so producers blocked on a full
+ * queue cannot hang the harness at the end of an iteration. Timed-out offers
+ * still count as producer operations, and one consume call can take many batches,
+ * so read the "batches" counter as the handoff rate.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueHandoffBenchmark {
+
+    @Param({"linked", "ring"})
+    public String queue;
+
+    @Param({"1000"})
+    public int linesPerBatch;
+
+    private BlockingQueue<LineBatch> handoff;
+    private LineBatch batch;
+    private final List<LineBatch> drained = new ArrayList<>(64);
+
+    /** Batches taken by the consumer, reported per second next to the call rates. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Handoffs {
+        public long batches;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        handoff = queue.equals("ring")
+            ? new LineRing(S3SequentialJsonArrayMerger.QUEUE_CAPACITY,
+                           (long) S3SequentialJsonArrayMerger.QUEUE_CAPACITY * S3SequentialJsonArrayMerger.BLOCK_SIZE)
+            : new LinkedBlockingQueue<>(S3SequentialJsonArrayMerger.QUEUE_CAPACITY);
+        batch = new LineBatch(BenchmarkData.lines(linesPerBatch, 200), "logs/bench/file.json", 1);
+    }
+
+    private boolean produce() throws InterruptedException {
+        return handoff.offer(batch, 10, TimeUnit.MILLISECONDS);
+    }
+
+    private void consume(Blackhole bh, Handoffs handoffs) throws InterruptedException {
+        LineBatch first = handoff.poll(10, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        drained.add(first);
+        handoff.drainTo(drained, 63);
+        handoffs.batches += drained.size();
+        for (LineBatch b : drained) {
+            bh.consume(b);
+        }
+        drained.clear();
+    }
+
+    @Benchmark
+    @Group("producers25")
+    @GroupThreads(25)
+    public boolean produce25() throws InterruptedException {
+        return produce();
+    }
+
+    @Benchmark
+    @Group("producers25")
+    @GroupThreads(1)
+    public void consume25(Blackhole bh, Handoffs handoffs) throws InterruptedException {
+        consume(bh, handoffs);
+    }
+
+    @Benchmark
+    @Group("producers100")
+    @GroupThreads(100)
+    public boolean produce100() throws InterruptedException {
+        return produce();
+    }
+
+    @Benchmark
+    @Group("producers100")
+    @GroupThreads(1)
+    public void consume100(Blackhole bh, Handoffs handoffs) throws InterruptedException {
+        consume(bh, handoffs);
+    }
+
+    @Benchmark
+    @Group("producers500")
+    @GroupThreads(500)
+    public boolean produce500() throws InterruptedException {
+        return produce();
+    }
+
+    @Benchmark
+    @Group("producers500")
+    @GroupThreads(1)
+    public void consume500(Blackhole bh, Handoffs handoffs) throws InterruptedException {
+        consume(bh, handoffs);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.s3merge;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking reads for the asynchronous download engine (download.engine=async).
+ *
+ * A GET completes once the response has started and yields the body as a Reactive
+ * Streams publisher of ByteBuffers, which emits only as much as its subscriber requests.
+ * No thread waits on the network in between, so the number of transfers in flight is not
+ * bounded by a thread pool.
+ */
+interface AsyncObjectStore extends AutoCloseable {
+
+    /** Starts reading the full object. */
+    CompletableFuture<Publisher<ByteBuffer>> get(String bucket, String key);
+
+    /** Starts reading the byte range [start, end] (inclusive, like an HTTP Range header). */
+    CompletableFuture<Publisher<ByteBuffer>> getRange(String bucket, String key, long start, long end);
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Any ObjectStore read through blocking streams on the given executor, so the async
+     * engine also runs against local and in-memory stores.
+     */
+    static AsyncObjectStore of(ObjectStore store, Executor executor) {
+        return new BlockingAsyncObjectStore(store, executor);
+    }
+
+    /** Adapts blocking InputStreams to publishers, reading one buffer per requested element. */
+    final class BlockingAsyncObjectStore implements AsyncObjectStore {
+        private static final int READ_SIZE = 64 * 1024;
+
+        private final ObjectStore store;
+        private final Executor executor;
+
+        BlockingAsyncObjectStore(ObjectStore store, Executor executor) {
+            this.store = store;
+            this.executor = executor;
+        }
+
+        @Override
+        public CompletableFuture<Publisher<ByteBuffer>> get(String bucket, String key) {
+            return open(() -> store.get(bucket, key));
+        }
+
+        @Override
+        public CompletableFuture<Publisher<ByteBuffer>> getRange(String bucket, String key, long start, long end) {
+            return open(() -> store.getRange(bucket, key, start, end));
+        }
+
+        private interface Opener {
+            InputStream open() throws IOException;
+        }
+
+        private CompletableFuture<Publisher<ByteBuffer>> open(Opener opener) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    InputStream in = opener.open();
+                    return subscriber -> subscriber.onSubscribe(new StreamSubscription(in, subscriber));
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } catch (UncheckedIOException e) {
+                    throw new CompletionException(e.getCause());
+                }
+            }, executor);
+        }
+
+        // Emits the stream on the executor while there is demand; one drain loop at a time
+        private final class StreamSubscription implements Subscription {
+            private final InputStream in;
+            private final Subscriber<? super ByteBuffer> subscriber;
+            private final AtomicLong demand = new AtomicLong();
+            private final AtomicInteger pending = new AtomicInteger();
+            private volatile boolean done;
+
+            StreamSubscription(InputStream in, Subscriber<? super ByteBuffer> subscriber) {
+                this.in = in;
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    terminate(new IllegalArgumentException("Requested " + n + " buffers"));
+                    return;
+                }
+                demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+                if (pending.getAndIncrement() == 0) {
+                    executor.execute(this::drain);
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+                closeQuietly();
+            }
+
+            private void drain() {
+                int missed = 1;
+                do {
+                    while (!done && demand.get() > 0) {
+                        try {
+                            byte[] buffer = new byte[READ_SIZE];
+                            int n = in.read(buffer);
+                            if (n < 0) {
+                                done = true;
+                                closeQuietly();
+                                subscriber.onComplete();
+                                return;
+                            }
+                            demand.decrementAndGet();
+                            subscriber.onNext(ByteBuffer.wrap(buffer, 0, n));
+                        } catch (IOException e) {
+                            terminate(e);
+                            return;
+                        }
+                    }
+                    missed = pending.addAndGet(-missed);
+                } while (missed != 0);
+            }
+
+            private void terminate(Throwable error) {
+                if (!done) {
+                    done = true;
+                    closeQuietly();
+                    subscriber.onError(error);
+                }
+            }
+
+            private void closeQuietly() {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                    // the read already ended
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.s3merge;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap Bloom filter over object keys, used to answer "definitely not completed"
+ * without touching the memory-mapped checkpoint index.
+ *
+ * Probe positions come from the two halves of the key's {@link KeyDigest} by double
+ * hashing. With b bits per key and k = round(b * ln 2) probes the false-positive rate is
+ * about 0.6185^b (1% at 10 bits per key). A false positive only costs an index lookup;
+ * there are no false negatives, so no file is ever skipped because of the filter.
+ */
+final class BloomFilter {
+
+    private static final int SEGMENT_SHIFT = 33;                // bits per 1 GB buffer
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final ByteBuffer[] segments;
+    private final long bits;
+    private final int probes;
+
+    BloomFilter(long expectedKeys, int bitsPerKey) {
+        this.bits = Math.max(64, expectedKeys * bitsPerKey);
+        this.probes = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+        int count = (int) ((bits + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long segmentBits = Math.min(bits - ((long) i << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+            segments[i] = ByteBuffer.allocateDirect((int) ((segmentBits + 7) / 8));
+        }
+    }
+
+    /** A filter over every key of the index, built with one sequential pass. */
+    static BloomFilter of(CheckpointIndex index, int bitsPerKey) {
+        BloomFilter filter = new BloomFilter(index.size(), bitsPerKey);
+        CheckpointIndex.Cursor cursor = index.cursor();
+        while (cursor.next()) {
+            filter.add(new String(cursor.key(), StandardCharsets.UTF_8));
+        }
+        return filter;
+    }
+
+    void add(String key) {
+        KeyDigest digest = KeyDigest.of(key);
+        for (int i = 0; i < probes; i++) {
+            long bit = position(digest, i);
+            ByteBuffer segment = segments[(int) (bit >>> SEGMENT_SHIFT)];
+            int index = (int) ((bit & SEGMENT_MASK) >>> 3);
+            segment.put(index, (byte) (segment.get(index) | (1 << (bit & 7))));
+        }
+    }
+
+    boolean mightContain(String key) {
+        KeyDigest digest = KeyDigest.of(key);
+        for (int i = 0; i < probes; i++) {
+            long bit = position(digest, i);
+            ByteBuffer segment = segments[(int) (bit >>> SEGMENT_SHIFT)];
+            if ((segment.get((int) ((bit & SEGMENT_MASK) >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Direct memory held by the filter. */
+    long sizeBytes() {
+        return (bits + 7) / 8;
+    }
+
+    private long position(KeyDigest digest, int i) {
+        return Long.remainderUnsigned(digest.high + i * digest.low, bits);
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.s3merge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Lists a bucket as independent prefix partitions on a pool of listing threads, feeding
+ * the objects still to merge into one shared work queue.
+ *
+ * With a partition depth of D, delimiter listings walk the first D levels of the key
+ * hierarchy ("logs/", "logs/2025/", "logs/2025/01/" for D = 3), all prefixes of a level
+ * at once. Every prefix found at depth D becomes a partition that is listed in full;
+ * objects sitting directly under a shallower prefix are picked up by a delimiter listing
+ * of that prefix. Prefixes the checkpoint records as complete are left out at every
+ * level, so none of their objects is listed again. A depth of 0 is the plain listing of
+ * the whole bucket as a single partition.
+ *
+ * Each partition is listed by one thread, page after page, so its objects reach the
+ * queue in key order followed by an end-of-partition item; partitions interleave. Objects
+ * that are already complete are counted and dropped by the listing threads. The queue is
+ * bounded: listing runs ahead of the merge by at most its capacity.
+ *
+ * The pages of a partition are requested by a separate fetcher that keeps up to
+ * prefetchPages pages ready, so the next ListObjectsV2 round trip overlaps with queueing
+ * the current page, and a page is at hand as soon as the scheduler frees queue space.
+ *
+ * All partitions but the last few in key order may be marked complete once merged: in
+ * a date-partitioned bucket only the newest prefixes still receive objects.
+ *
+ * With a {@link ListingManifest}, every fetched page is recorded before it is queued. A
+ * restarted run first replays the recorded objects into the queue and then lists each
+ * partition onward from its saved continuation token; partitions the manifest records
+ * as fully listed are not listed at all.
+ *
+ * Given an {@link InventoryManifest} instead of partitions, the listing threads read the
+ * inventory data files, one file per thread, and no LIST request is made.
+ */
+final class BucketLister implements Closeable {
+
+    static final String DELIMITER = "/";
+
+    /** One unit of listing work. */
+    static final class Partition {
+        final String prefix;        // "" for the bucket root
+        final boolean recursive;    // false: only the objects directly under the prefix
+        final boolean sealable;     // may be recorded as complete once all its objects are
+
+        Partition(String prefix, boolean recursive, boolean sealable) {
+            this.prefix = prefix;
+            this.recursive = recursive;
+            this.sealable = sealable;
+        }
+
+        /** Prefix argument for {@link ObjectStore#list}. */
+        String listPrefix() {
+            return prefix.isEmpty() ? null : prefix;
+        }
+
+        /** Delimiter argument for {@link ObjectStore#list}. */
+        String delimiter() {
+            return recursive ? null : DELIMITER;
+        }
+
+        @Override
+        public String toString() {
+            return (prefix.isEmpty() ? "(root)" : prefix) + (recursive ? "" : " (direct)");
+        }
+    }
+
+    /** A work queue item: an object to merge, or the end of its partition. */
+    static final class Listed {
+        final Partition partition;
+        final StoredObject object;  // null: every object of the partition has been queued
+        final long objects;         // end of partition: objects listed in it, skipped ones included
+
+        private Listed(Partition partition, StoredObject object, long objects) {
+            this.partition = partition;
+            this.object = object;
+            this.objects = objects;
+        }
+    }
+
+    /** Taken from the queue once every partition has ended. */
+    static final Listed END = new Listed(null, null, 0);
+
+    private static final ObjectListing LAST_PAGE = new ObjectListing(Collections.emptyList(), null);
+
+    private final ObjectStore store;
+    private final String bucket;
+    private final Predicate<String> completed;
+    private final ExecutorService listers;
+    private final ExecutorService fetchers;     // one per running partition, so never starved
+    private final int prefetchPages;
+    private final BlockingQueue<Listed> queue;
+    private final AtomicLong listedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    BucketLister(ObjectStore store, String bucket, Predicate<String> completed, int threads, int queueCapacity) {
+        this(store, bucket, completed, threads, queueCapacity, 1);
+    }
+
+    /**
+     * @param completed     objects to count and drop instead of queueing; called from the
+     *                      listing threads
+     * @param queueCapacity objects the listing may run ahead of the consumer
+     * @param prefetchPages pages each partition fetches ahead of the one it is queueing
+     */
+    BucketLister(ObjectStore store, String bucket, Predicate<String> completed, int threads, int queueCapacity,
+                 int prefetchPages) {
+        this.store = store;
+        this.bucket = bucket;
+        this.completed = completed;
+        this.listers = Executors.newFixedThreadPool(threads, r -> daemon(r, "bucket-lister"));
+        this.fetchers = Executors.newFixedThreadPool(threads, r -> daemon(r, "bucket-page-fetcher"));
+        this.prefetchPages = Math.max(1, prefetchPages);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Discovers the partitions of a bucket, shallower direct-object units first and then the
+     * depth-D prefixes in key order.
+     *
+     * @param openPrefixes      how many of the last depth-D prefixes are never sealable
+     * @param completedPrefixes prefixes recorded as complete; skipped wherever they appear
+     */
+    List<Partition> partitions(int depth, int openPrefixes, Set<String> completedPrefixes)
+            throws InterruptedException {
+        if (depth <= 0) {
+            return Collections.singletonList(new Partition("", true, false));
+        }
+
+        List<Partition> partitions = new ArrayList<>();
+        List<String> level = Collections.singletonList("");
+        for (int d = 0; d < depth; d++) {
+            List<Callable<ObjectListing>> requests = new ArrayList<>();
+            for (String prefix : level) {
+                requests.add(() -> listLevel(prefix, completedPrefixes));
+            }
+            List<String> next = new ArrayList<>();
+            List<Future<ObjectListing>> results = listers.invokeAll(requests);
+            for (int i = 0; i < level.size(); i++) {
+                ObjectListing children = get(results.get(i));
+                if (!children.contents().isEmpty()) {
+                    partitions.add(new Partition(level.get(i), false, false));
+                }
+                next.addAll(children.commonPrefixes());
+            }
+            level = next;
+        }
+
+        // Children of sorted parents that end in the delimiter come out in global key order
+        for (int i = 0; i < level.size(); i++) {
+            partitions.add(new Partition(level.get(i), true, i < level.size() - openPrefixes));
+        }
+        return partitions;
+    }
+
+    /** Starts listing the partitions into the work queue, which ends with {@link #END}. */
+    void start(List<Partition> partitions) {
+        start(partitions, null);
+    }
+
+    /**
+     * Starts listing the partitions into the work queue, replaying and extending the
+     * manifest if there is one.
+     */
+    void start(List<Partition> partitions, ListingManifest manifest) {
+        if (partitions.isEmpty()) {
+            queue.add(END);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(partitions.size());
+        if (manifest == null) {
+            for (Partition partition : partitions) {
+                submit(partition, new ListingManifest.Progress(), null, remaining);
+            }
+            return;
+        }
+        listers.execute(() -> {
+            try {
+                Map<String, ListingManifest.Progress> resumed = replay(partitions, manifest);
+                for (Partition partition : partitions) {
+                    ListingManifest.Progress progress = resumed.get(partition.prefix);
+                    submit(partition, progress != null ? progress : new ListingManifest.Progress(), manifest,
+                           remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                failure.compareAndSet(null, new UncheckedIOException("Reading listing manifest failed", e));
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    /** Queues the objects of an S3 Inventory report instead of listing the bucket. */
+    void start(InventoryManifest inventory) {
+        if (inventory.files.isEmpty()) {
+            queue.add(END);
+            return;
+        }
+        Partition whole = new Partition("", true, false);
+        AtomicInteger remaining = new AtomicInteger(inventory.files.size());
+        for (String file : inventory.files) {
+            listers.execute(() -> {
+                try {
+                    long objects = inventory.read(file, obj -> offer(whole, obj));
+                    S3SequentialJsonArrayMerger.log("Read " + objects + " objects from inventory file " + file);
+                    if (remaining.decrementAndGet() == 0) {
+                        queue.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    failure.compareAndSet(null, new UncheckedIOException("Reading inventory file " + file + " failed", e));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * The next object to merge, the end of a partition, or {@link #END}. Throws if a listing
+     * thread died, since its partition would never end.
+     */
+    Listed take() throws InterruptedException {
+        while (true) {
+            Listed next = queue.poll(1, TimeUnit.SECONDS);
+            if (next != null) return next;
+            RuntimeException e = failure.get();
+            if (e != null) {
+                throw new IllegalStateException("Listing failed", e);
+            }
+        }
+    }
+
+    /** Objects listed so far, including skipped ones. */
+    long listedCount() {
+        return listedCount.get();
+    }
+
+    /** Objects dropped so far because they were already complete. */
+    long skippedCount() {
+        return skippedCount.get();
+    }
+
+    /** Stops the listing threads, including any blocked on a full queue. */
+    @Override
+    public void close() {
+        listers.shutdownNow();
+        fetchers.shutdownNow();
+    }
+
+    private void submit(Partition partition, ListingManifest.Progress progress, ListingManifest manifest,
+                        AtomicInteger remaining) {
+        listers.execute(() -> {
+            try {
+                listPartition(partition, progress, manifest);
+                if (remaining.decrementAndGet() == 0) {
+                    queue.put(END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // closed while waiting for queue space
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    // Queues the objects an earlier run recorded for partitions that are still to be listed
+    private Map<String, ListingManifest.Progress> replay(List<Partition> partitions, ListingManifest manifest)
+            throws IOException, InterruptedException {
+        Map<String, Partition> byPrefix = new HashMap<>();
+        for (Partition partition : partitions) {
+            byPrefix.put(partition.prefix, partition);
+        }
+        Map<String, ListingManifest.Progress> resumed = manifest.replay((prefix, obj) -> {
+            Partition partition = byPrefix.get(prefix);
+            if (partition != null) {
+                offer(partition, obj);
+            }
+        });
+        long replayed = 0;
+        for (Map.Entry<String, ListingManifest.Progress> e : resumed.entrySet()) {
+            if (byPrefix.containsKey(e.getKey())) {
+                replayed += e.getValue().objects;
+            }
+        }
+        if (replayed > 0) {
+            S3SequentialJsonArrayMerger.log("Replayed " + replayed + " objects from the listing manifest");
+        }
+        return resumed;
+    }
+
+    private void listPartition(Partition partition, ListingManifest.Progress progress, ListingManifest manifest)
+            throws InterruptedException {
+        long objects = progress.objects;
+        if (!progress.complete) {
+            BlockingQueue<ObjectListing> pages = new ArrayBlockingQueue<>(prefetchPages);
+            fetchers.execute(() -> fetchPages(partition, progress.token, manifest, pages));
+
+            for (ObjectListing page = pages.take(); page != LAST_PAGE; page = pages.take()) {
+                for (StoredObject obj : page.contents()) {
+                    objects++;
+                    offer(partition, obj);
+                }
+            }
+        }
+        queue.put(new Listed(partition, null, objects));
+    }
+
+    private void offer(Partition partition, StoredObject obj) throws InterruptedException {
+        listedCount.incrementAndGet();
+        if (completed.test(obj.key())) {
+            long skipped = skippedCount.incrementAndGet();
+            if (skipped % 1000 == 0) {
+                S3SequentialJsonArrayMerger.log("Fast-skipped " + skipped +
+                    " completed files (checkpoint-only check, no downloads)...");
+            }
+            return;
+        }
+        queue.put(new Listed(partition, obj, 0));
+    }
+
+    // Requests the pages of a partition one after another, as far ahead as the page buffer allows
+    private void fetchPages(Partition partition, String startToken, ListingManifest manifest,
+                            BlockingQueue<ObjectListing> pages) {
+        try {
+            String token = startToken;
+            do {
+                String continuationToken = token;
+                ObjectListing page = S3SequentialJsonArrayMerger.withRetries("listing " + partition,
+                    () -> store.list(bucket, partition.listPrefix(), partition.delimiter(), continuationToken));
+                token = page.nextContinuationToken();
+                if (manifest != null) {
+                    manifest.page(partition.prefix, page.contents(), token);
+                }
+                pages.put(page);
+            } while (token != null);
+            pages.put(LAST_PAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // closed while waiting for buffer space
+        } catch (IOException e) {
+            failure.compareAndSet(null, new UncheckedIOException("Writing listing manifest failed", e));
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    // All pages of one delimiter listing, without the common prefixes recorded as complete
+    private ObjectListing listLevel(String prefix, Set<String> completedPrefixes) {
+        List<StoredObject> contents = new ArrayList<>();
+        List<String> children = new ArrayList<>();
+        String token = null;
+        do {
+            String continuationToken = token;
+            ObjectListing page = S3SequentialJsonArrayMerger.withRetries(
+                "listing prefixes under " + (prefix.isEmpty() ? "bucket root" : prefix),
+                () -> store.list(bucket, prefix.isEmpty() ? null : prefix, DELIMITER, continuationToken));
+            if (contents.isEmpty() && !page.contents().isEmpty()) {
+                contents.add(page.contents().get(0)); // only whether there are any matters
+            }
+            for (String common : page.commonPrefixes()) {
+                if (!completedPrefixes.contains(common)) {
+                    children.add(common);
+                }
+            }
+            token = page.nextContinuationToken();
+        } while (token != null);
+        return new ObjectListing(contents, children, null);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Prefix discovery failed", e.getCause());
+        }
+    }
+
+    /** The depth-D prefix a key belongs to, or null if the key has fewer than D levels. */
+    static String partitionOf(String key, int depth) {
+        int end = 0;
+        for (int d = 0; d < depth; d++) {
+            int at = key.indexOf(DELIMITER, end);
+            if (at < 0) return null;
+            end = at + DELIMITER.length();
+        }
+        return depth > 0 ? key.substring(0, end) : null;
+    }
+
+    /** Whether a key lies under any of the prefixes (which all end in the delimiter). */
+    static boolean isCovered(String key, Set<String> prefixes) {
+        if (prefixes.isEmpty()) return false;
+        for (int at = key.indexOf(DELIMITER); at >= 0; at = key.indexOf(DELIMITER, at + 1)) {
+            if (prefixes.contains(key.substring(0, at + DELIMITER.length()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.s3merge;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recycles byte buffers so the download path does not allocate a fresh block for every
+ * slice of every object, and the upload path a fresh part for every chunk.
+ *
+ * Buffers come in size classes: the standard size and its doublings, up to MAX_CLASSES
+ * of them, each pooled on its own, so a block grown for a line longer than the standard
+ * size is reused by the next such line. The standard class keeps up to maxPooled
+ * buffers and every larger class half as many as the one below it. Requests beyond the
+ * largest class get a one-off buffer that is not pooled.
+ *
+ * A direct pool (buffer.direct=true) hands out off-heap buffers. They are slow to
+ * allocate and only freed once the GC finds them unreachable, so they are worth having
+ * only when recycled. Every buffer handed out is counted until it is released, which is
+ * how tests check that none leak.
+ *
+ * The pool also recycles the line bounds arrays that travel with framed blocks (see
+ * {@link LineFramer}), at most one per pooled buffer. An array is handed out again only
+ * if it is long enough, so the pooled arrays grow to the working batch size.
+ */
+final class BufferPool {
+
+    static final int MAX_CLASSES = 8;
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> free = new ArrayList<>(MAX_CLASSES);
+    private final List<AtomicInteger> pooled = new ArrayList<>(MAX_CLASSES);
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final ConcurrentLinkedQueue<int[]> freeBounds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBounds = new AtomicInteger();
+    private final int boundsLimit;
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this(bufferSize, maxPooled, false);
+    }
+
+    BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+        for (int i = 0; i < MAX_CLASSES; i++) {
+            free.add(new ConcurrentLinkedQueue<>());
+            pooled.add(new AtomicInteger());
+        }
+        int limit = 0;
+        for (int i = 0; i < MAX_CLASSES; i++) {
+            limit += limit(i);
+        }
+        this.boundsLimit = limit;
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    /** Returns a cleared buffer of the standard size. */
+    ByteBuffer acquire() {
+        return acquire(bufferSize);
+    }
+
+    /** Returns a cleared buffer with at least minCapacity bytes. */
+    ByteBuffer acquire(int minCapacity) {
+        outstanding.incrementAndGet();
+        int sizeClass = sizeClass(minCapacity);
+        if (sizeClass < 0) {
+            return allocate(minCapacity);
+        }
+        ByteBuffer buffer = free.get(sizeClass).poll();
+        if (buffer == null) {
+            return allocate(bufferSize << sizeClass);
+        }
+        pooled.get(sizeClass).decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /** Hands a buffer back; one-off buffers and buffers beyond their class's limit are left to GC. */
+    void release(ByteBuffer buffer) {
+        outstanding.decrementAndGet();
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass < 0 || buffer.capacity() != bufferSize << sizeClass || buffer.isDirect() != direct) return;
+        AtomicInteger count = pooled.get(sizeClass);
+        if (count.incrementAndGet() > limit(sizeClass)) {
+            count.decrementAndGet();
+            return;
+        }
+        free.get(sizeClass).offer(buffer);
+    }
+
+    /** Returns a line bounds array of at least minLength ints; its contents are stale. */
+    int[] acquireBounds(int minLength) {
+        int[] bounds = freeBounds.poll();
+        if (bounds == null) {
+            return new int[minLength];
+        }
+        pooledBounds.decrementAndGet();
+        return bounds.length >= minLength ? bounds : new int[minLength];
+    }
+
+    /** Hands a bounds array back; beyond the limit it is left to GC. */
+    void releaseBounds(int[] bounds) {
+        if (pooledBounds.incrementAndGet() > boundsLimit) {
+            pooledBounds.decrementAndGet();
+            return;
+        }
+        freeBounds.offer(bounds);
+    }
+
+    /** Bounds arrays waiting in the pool. */
+    int pooledBoundsCount() {
+        return pooledBounds.get();
+    }
+
+    /** Buffers waiting in the pool, across all size classes. */
+    int pooledCount() {
+        int count = 0;
+        for (AtomicInteger n : pooled) {
+            count += n.get();
+        }
+        return count;
+    }
+
+    /** Buffers acquired and not yet released; 0 once every holder is done. */
+    int outstanding() {
+        return outstanding.get();
+    }
+
+    // The smallest class that holds capacity bytes, or -1 past the largest class
+    private int sizeClass(int capacity) {
+        if (capacity <= bufferSize) {
+            return 0;
+        }
+        long multiple = ((long) capacity + bufferSize - 1) / bufferSize;
+        int sizeClass = 64 - Long.numberOfLeadingZeros(multiple - 1);
+        if (sizeClass >= MAX_CLASSES || (long) bufferSize << sizeClass > Integer.MAX_VALUE - 8) {
+            return -1;
+        }
+        return sizeClass;
+    }
+
+    private int limit(int sizeClass) {
+        return maxPooled == 0 ? 0 : Math.max(1, maxPooled >> sizeClass);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.s3merge;
+
+/**
+ * A semaphore counted in bytes, for admission control (download.budget.mb, queue.budget.mb).
+ *
+ * Reservations are granted in arrival order, so a large one is not starved by a stream
+ * of small ones. A reservation larger than the whole budget is clamped to it: it waits
+ * until nothing else is reserved and then runs alone, instead of never running at all.
+ * Release the same number of bytes that was acquired; it is clamped the same way.
+ */
+final class ByteBudget {
+
+    private final long capacity;
+    private long used;           // guarded by this
+    private long peak;           // guarded by this
+    private long nextTicket;     // guarded by this
+    private long serving;        // guarded by this
+
+    ByteBudget(long capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /** Waits until bytes fit within the budget and reserves them. */
+    synchronized void acquire(long bytes) throws InterruptedException {
+        long amount = clamp(bytes);
+        long ticket = nextTicket++;
+        try {
+            while (ticket != serving || used + amount > capacity) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            // Give up the turn: wait for it so later tickets are not stuck behind this one
+            while (ticket != serving) {
+                try {
+                    wait();
+                } catch (InterruptedException ignored) {
+                    // already interrupted
+                }
+            }
+            serving++;
+            notifyAll();
+            throw e;
+        }
+        serving++;
+        used += amount;
+        peak = Math.max(peak, used);
+        notifyAll();
+    }
+
+    /** Returns bytes reserved by {@link #acquire}. */
+    synchronized void release(long bytes) {
+        used -= clamp(bytes);
+        notifyAll();
+    }
+
+    private long clamp(long bytes) {
+        return Math.max(0, Math.min(bytes, capacity));
+    }
+
+    synchronized long used() {
+        return used;
+    }
+
+    /** The most that was reserved at any one time. */
+    synchronized long peak() {
+        return peak;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+}
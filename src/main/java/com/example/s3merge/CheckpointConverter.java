@@ -0,0 +1,100 @@
+package com.example.s3merge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Moves the completed-file entries of a text checkpoint into a binary checkpoint index.
+ *
+ * Usage: java -cp s3-log-merger.jar com.example.s3merge.CheckpointConverter [checkpoint.txt [checkpoint.idx]]
+ *
+ * Entries are sorted in runs of RUN_ENTRIES, each run is written as a temporary index,
+ * and the runs are merged with any existing index, so memory stays bounded by one run
+ * however large the checkpoint is. Everything else in the text file (progress markers,
+ * legacy buffer entries, the journal marker) stays there.
+ */
+public final class CheckpointConverter {
+
+    static final int RUN_ENTRIES = 1_000_000;
+
+    private CheckpointConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path text = Paths.get(args.length > 0 ? args[0] : "checkpoint.txt");
+        Path index = Paths.get(args.length > 1 ? args[1] : "checkpoint.idx");
+        long moved = convert(text, index, RUN_ENTRIES);
+        S3SequentialJsonArrayMerger.log("Moved " + moved + " completed files from " + text + " to " + index);
+    }
+
+    /** Returns the number of completed-file entries moved into the index. */
+    static long convert(Path text, Path index, int runEntries) throws IOException {
+        Path remaining = text.resolveSibling(text.getFileName() + ".tmp");
+        List<Path> runFiles = new ArrayList<>();
+        List<CheckpointIndex.Entry> run = new ArrayList<>();
+        long moved = 0;
+
+        try {
+            try (BufferedReader br = new BufferedReader(new FileReader(text.toFile()));
+                 BufferedWriter bw = new BufferedWriter(new FileWriter(remaining.toFile()))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = line.split("=", 2);
+                    long lineCount = parts.length == 2 && S3SequentialJsonArrayMerger.isCompletedFileEntry(parts[0])
+                        ? CheckpointJournal.lineCountOf(parts[1]) : -1;
+                    if (lineCount < 0) {
+                        bw.write(line);
+                        bw.newLine();
+                        continue;
+                    }
+                    run.add(new CheckpointIndex.Entry(parts[0], lineCount));
+                    moved++;
+                    if (run.size() >= runEntries) {
+                        runFiles.add(writeRun(index, runFiles.size(), run));
+                        run.clear();
+                    }
+                }
+            }
+
+            // Existing index first, so entries from the text file win
+            List<CheckpointIndex> opened = new ArrayList<>();
+            List<Iterator<CheckpointIndex.Entry>> sources = new ArrayList<>();
+            opened.add(CheckpointIndex.open(index));
+            for (Path runFile : runFiles) {
+                opened.add(CheckpointIndex.open(runFile));
+            }
+            for (CheckpointIndex source : opened) {
+                sources.add(source.entries());
+            }
+            Collections.sort(run);
+            sources.add(run.iterator());
+            CheckpointIndex.merge(index, sources);
+
+            Files.move(remaining, text, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return moved;
+        } finally {
+            Files.deleteIfExists(remaining);
+            for (Path runFile : runFiles) {
+                Files.deleteIfExists(runFile);
+            }
+        }
+    }
+
+    private static Path writeRun(Path index, int number, List<CheckpointIndex.Entry> run) throws IOException {
+        Path runFile = index.resolveSibling(index.getFileName() + ".run-" + number);
+        Collections.sort(run);
+        CheckpointIndex.merge(runFile, Collections.singletonList(run.iterator()));
+        return runFile;
+    }
+}
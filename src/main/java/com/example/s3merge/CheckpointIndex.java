@@ -0,0 +1,422 @@
+package com.example.s3merge;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Read-only, memory-mapped index of completed files (key -> line count), sorted by the
+ * UTF-8 bytes of the key.
+ *
+ * Layout:
+ *   entries    per entry: varint shared prefix length, varint suffix length, suffix bytes,
+ *              varint line count. Every RESTART_INTERVAL entries the shared length is 0,
+ *              so that entry holds its whole key (a restart point).
+ *   restarts   file offset of each restart point, 8 bytes each
+ *   trailer    entry count, restart count, restart table offset (8 bytes each),
+ *              longest key (4 bytes), format version (4 bytes), magic (4 bytes)
+ *
+ * S3 keys under one prefix share most of their bytes, so an entry is usually a few bytes
+ * of suffix plus the count. A lookup binary-searches the restart points and scans at most
+ * one interval, comparing bytes in place; no key is ever turned into a String.
+ *
+ * The file is mapped in regions of up to 1 GB, so indexes over 2 GB work. Readers are
+ * safe to share between threads.
+ */
+final class CheckpointIndex implements Closeable {
+
+    static final int RESTART_INTERVAL = 16;
+    private static final int MAGIC = 0x53334D49; // "S3MI"
+    private static final int VERSION = 1;
+    private static final int TRAILER_SIZE = 3 * 8 + 3 * 4;
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+    private static final CheckpointIndex EMPTY = new CheckpointIndex(new MappedByteBuffer[0], 0, 0, 0, 0);
+
+    private final MappedByteBuffer[] regions;
+    private final long entryCount;
+    private final long restartCount;
+    private final long restartTable;
+    private final int maxKeyLength;
+
+    private CheckpointIndex(MappedByteBuffer[] regions, long entryCount, long restartCount,
+                            long restartTable, int maxKeyLength) {
+        this.regions = regions;
+        this.entryCount = entryCount;
+        this.restartCount = restartCount;
+        this.restartTable = restartTable;
+        this.maxKeyLength = maxKeyLength;
+    }
+
+    /** Maps an index file; a missing file is an empty index. */
+    static CheckpointIndex open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return EMPTY;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IOException("Checkpoint index " + file + " is truncated");
+            }
+            int count = (int) ((size + REGION_MASK) >>> REGION_SHIFT);
+            MappedByteBuffer[] regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << REGION_SHIFT;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << REGION_SHIFT));
+            }
+
+            CheckpointIndex probe = new CheckpointIndex(regions, 0, 0, 0, 0);
+            long trailer = size - TRAILER_SIZE;
+            if (probe.readInt(trailer + 32) != MAGIC) {
+                throw new IOException("Not a checkpoint index: " + file);
+            }
+            if (probe.readInt(trailer + 28) != VERSION) {
+                throw new IOException("Unsupported checkpoint index version in " + file);
+            }
+            return new CheckpointIndex(regions, probe.readLong(trailer), probe.readLong(trailer + 8),
+                                       probe.readLong(trailer + 16), probe.readInt(trailer + 24));
+        }
+    }
+
+    long size() {
+        return entryCount;
+    }
+
+    boolean contains(String key) {
+        return lineCount(key) >= 0;
+    }
+
+    /** Line count recorded for the key, or -1 if the file is not in the index. */
+    long lineCount(String key) {
+        if (entryCount == 0) return -1;
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        if (target.length > maxKeyLength) return -1;
+
+        // Last restart point whose key is <= target
+        long lo = 0;
+        long hi = restartCount - 1;
+        while (lo < hi) {
+            long mid = (lo + hi + 1) >>> 1;
+            long pos = readLong(restartTable + mid * 8);
+            long[] cursor = {pos};
+            readVarint(cursor); // shared, always 0
+            int length = (int) readVarint(cursor);
+            if (compare(cursor[0], length, target) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        long[] cursor = {readLong(restartTable + lo * 8)};
+        long end = lo + 1 < restartCount ? readLong(restartTable + (lo + 1) * 8) : restartTable;
+        byte[] current = new byte[maxKeyLength];
+        while (cursor[0] < end) {
+            int shared = (int) readVarint(cursor);
+            int suffix = (int) readVarint(cursor);
+            for (int i = 0; i < suffix; i++) {
+                current[shared + i] = get(cursor[0] + i);
+            }
+            cursor[0] += suffix;
+            long value = readVarint(cursor);
+            int c = Arrays.compareUnsigned(current, 0, shared + suffix, target, 0, target.length);
+            if (c == 0) return value;
+            if (c > 0) return -1;
+        }
+        return -1;
+    }
+
+    /** Entries in key order, decoded one at a time. */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void close() {
+        // Mappings are released when the index is garbage collected
+    }
+
+    /** Sequential reader over the entries of an index. */
+    final class Cursor {
+        private final long[] pos = {0};
+        private final byte[] key = new byte[maxKeyLength];
+        private int keyLength;
+        private long value;
+        private long remaining = entryCount;
+
+        boolean next() {
+            if (remaining == 0) return false;
+            remaining--;
+            int shared = (int) readVarint(pos);
+            int suffix = (int) readVarint(pos);
+            for (int i = 0; i < suffix; i++) {
+                key[shared + i] = get(pos[0] + i);
+            }
+            pos[0] += suffix;
+            keyLength = shared + suffix;
+            value = readVarint(pos);
+            return true;
+        }
+
+        byte[] key() {
+            return Arrays.copyOf(key, keyLength);
+        }
+
+        long value() {
+            return value;
+        }
+    }
+
+    /**
+     * Streams entries in ascending key order into a new index file. Written to a temporary
+     * file and moved into place on close (or dropped by abort), so readers never see a
+     * partial index.
+     */
+    static final class Writer implements Closeable {
+        private final Path file;
+        private final Path temp;
+        private final OutputStream out;
+        private final List<Long> restarts = new ArrayList<>();
+        private byte[] previous = new byte[0];
+        private long position;
+        private long entries;
+        private int maxKeyLength;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16);
+        }
+
+        void add(byte[] key, long value) throws IOException {
+            if (entries > 0 && Arrays.compareUnsigned(previous, key) >= 0) {
+                throw new IllegalArgumentException("Checkpoint index keys must be added in ascending order");
+            }
+            int shared = 0;
+            if (entries % RESTART_INTERVAL == 0) {
+                restarts.add(position);
+            } else {
+                int max = Math.min(previous.length, key.length);
+                while (shared < max && previous[shared] == key[shared]) {
+                    shared++;
+                }
+            }
+            writeVarint(shared);
+            writeVarint(key.length - shared);
+            out.write(key, shared, key.length - shared);
+            position += key.length - shared;
+            writeVarint(value);
+            previous = key;
+            entries++;
+            maxKeyLength = Math.max(maxKeyLength, key.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            long restartTable = position;
+            byte[] eight = new byte[8];
+            for (long restart : restarts) {
+                putLong(eight, restart);
+                out.write(eight);
+            }
+            putLong(eight, entries);
+            out.write(eight);
+            putLong(eight, restarts.size());
+            out.write(eight);
+            putLong(eight, restartTable);
+            out.write(eight);
+            byte[] four = new byte[4];
+            for (int v : new int[] {maxKeyLength, VERSION, MAGIC}) {
+                four[0] = (byte) (v >>> 24);
+                four[1] = (byte) (v >>> 16);
+                four[2] = (byte) (v >>> 8);
+                four[3] = (byte) v;
+                out.write(four);
+            }
+            out.close();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /** Discards the partly written file; the existing index is left as it was. */
+        void abort() throws IOException {
+            out.close();
+            Files.deleteIfExists(temp);
+        }
+
+        private void writeVarint(long v) throws IOException {
+            while ((v & ~0x7FL) != 0) {
+                out.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+                position++;
+            }
+            out.write((int) v);
+            position++;
+        }
+
+        private static void putLong(byte[] b, long v) {
+            for (int i = 7; i >= 0; i--) {
+                b[i] = (byte) v;
+                v >>>= 8;
+            }
+        }
+    }
+
+    /** One key and line count, ordered by the unsigned bytes of the key. */
+    static final class Entry implements Comparable<Entry> {
+        final byte[] key;
+        final long value;
+
+        Entry(byte[] key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        Entry(String key, long value) {
+            this(key.getBytes(StandardCharsets.UTF_8), value);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Arrays.compareUnsigned(key, other.key);
+        }
+    }
+
+    /**
+     * Writes the union of several sorted sources into a new index. When a key appears in
+     * more than one source, the value from the later source wins.
+     */
+    static void merge(Path file, List<Iterator<Entry>> sources) throws IOException {
+        PriorityQueue<Head> heads = new PriorityQueue<>();
+        for (int i = 0; i < sources.size(); i++) {
+            Iterator<Entry> source = sources.get(i);
+            if (source.hasNext()) {
+                heads.add(new Head(source.next(), i, source));
+            }
+        }
+        Writer writer = new Writer(file);
+        try {
+            while (!heads.isEmpty()) {
+                Head head = heads.poll();
+                Entry winner = head.entry;
+                advance(heads, head);
+                while (!heads.isEmpty() && heads.peek().entry.compareTo(winner) == 0) {
+                    Head duplicate = heads.poll();
+                    winner = duplicate.entry; // polled in source order after the first
+                    advance(heads, duplicate);
+                }
+                writer.add(winner.key, winner.value);
+            }
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.close();
+    }
+
+    /** Entries of this index as an iterator, for {@link #merge}. */
+    Iterator<Entry> entries() {
+        Cursor cursor = cursor();
+        return new Iterator<Entry>() {
+            private Entry next = advance();
+
+            private Entry advance() {
+                return cursor.next() ? new Entry(cursor.key(), cursor.value()) : null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                Entry current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    private static void advance(PriorityQueue<Head> heads, Head head) {
+        if (head.source.hasNext()) {
+            heads.add(new Head(head.source.next(), head.order, head.source));
+        }
+    }
+
+    // Current entry of one merge source; ties go to the earlier source first
+    private static final class Head implements Comparable<Head> {
+        final Entry entry;
+        final int order;
+        final Iterator<Entry> source;
+
+        Head(Entry entry, int order, Iterator<Entry> source) {
+            this.entry = entry;
+            this.order = order;
+            this.source = source;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int c = entry.compareTo(other.entry);
+            return c != 0 ? c : Integer.compare(order, other.order);
+        }
+    }
+
+    // Compare `length` mapped bytes at pos with the target key
+    private int compare(long pos, int length, byte[] target) {
+        int n = Math.min(length, target.length);
+        for (int i = 0; i < n; i++) {
+            int c = Integer.compare(get(pos + i) & 0xFF, target[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        return Integer.compare(length, target.length);
+    }
+
+    private byte get(long pos) {
+        return regions[(int) (pos >>> REGION_SHIFT)].get((int) (pos & REGION_MASK));
+    }
+
+    private long readVarint(long[] cursor) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = get(cursor[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+        }
+    }
+
+    private long readLong(long pos) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (get(pos + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private int readInt(long pos) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (get(pos + i) & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.s3merge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of checkpoint changes, folded into the checkpoint
+ * snapshot in the background.
+ *
+ * Every change to the checkpoint map is appended as one record to the current journal
+ * segment (checkpoint.txt.journal.N) instead of rewriting the whole map. Records are
+ * buffered and a flusher writes and fsyncs them in groups every flushIntervalMs, so the
+ * cost of a change is independent of the size of the checkpoint. Once the segments hold
+ * compactBytes, a compactor rotates to a new segment, writes a snapshot of the map as
+ * it was at the rotation, and deletes the folded segments.
+ *
+ * The snapshot is the usual key=value checkpoint file plus a journalSegment entry naming
+ * the first segment it does not cover; replay applies those segments on top of it in
+ * order. Each record carries a CRC, so a torn tail left by a crash ends the replay of
+ * its segment instead of corrupting a value.
+ *
+ * With an index file, compaction also moves completed-file entries out of the map and
+ * the snapshot into that binary index (see {@link CheckpointIndex}). Completion is final,
+ * so an index that is ahead of the snapshot after a crash is still correct.
+ *
+ * Completed-file entries under a completed prefix marker add nothing once the marker
+ * exists; compaction drops them from the map and the snapshot, and rewrites the index
+ * without them the first time it sees the marker.
+ *
+ * Appending only takes a short lock to add to the pending buffer: a group commit swaps
+ * the buffer out under it and writes and fsyncs outside it, so checkpoint writers never
+ * wait for the disk. Group commits and segment rotation are serialized by a separate
+ * write lock, which keeps the segments in record order.
+ *
+ * Writers must hold the state lock while changing the map and appending the matching
+ * record, so the journal order is the order of the changes.
+ */
+final class CheckpointJournal implements Closeable {
+
+    static final String SEGMENT_KEY = "journalSegment";
+
+    private final Path snapshot;
+    private final Path index;               // null: completed files stay in the snapshot
+    private final Map<String, String> state;
+    private final Object stateLock;
+    private final long compactBytes;
+
+    // Lock order: writeLock, then the state lock, then journalLock. Appends never take writeLock
+    private final ReentrantLock writeLock = new ReentrantLock();   // held while records go to disk
+    private final Object journalLock = new Object();
+    private StringBuilder pending = new StringBuilder();           // guarded by journalLock
+    private FileChannel segment;                                   // guarded by journalLock; closed under writeLock
+    private long segmentNumber;                                    // guarded by journalLock
+    private long bytesSinceSnapshot;                               // guarded by journalLock
+    private boolean compacting;                                    // guarded by journalLock
+    private final Set<String> prefixesInIndex = new HashSet<>();   // completed prefixes already dropped from the index
+
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService compactor;
+
+    /**
+     * Opens a new segment after any left by earlier runs. The in-memory state must
+     * already include them (see {@link #replay}); they are folded by the first compaction.
+     */
+    CheckpointJournal(Path snapshot, Map<String, String> state, Object stateLock,
+                      long flushIntervalMs, long compactBytes) throws IOException {
+        this(snapshot, null, state, stateLock, flushIntervalMs, compactBytes);
+    }
+
+    CheckpointJournal(Path snapshot, Path index, Map<String, String> state, Object stateLock,
+                      long flushIntervalMs, long compactBytes) throws IOException {
+        this.snapshot = snapshot;
+        this.index = index;
+        this.state = state;
+        this.stateLock = stateLock;
+        this.compactBytes = compactBytes;
+
+        List<Long> existing = segmentNumbers(snapshot);
+        this.segmentNumber = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        this.segment = openSegment(segmentNumber);
+        if (!existing.isEmpty()) {
+            bytesSinceSnapshot = compactBytes; // fold leftovers at the first opportunity
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "checkpoint-journal-flusher"));
+        compactor = Executors.newSingleThreadExecutor(r -> daemon(r, "checkpoint-journal-compactor"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void put(String key, String value) {
+        append("+" + key + "=" + value);
+    }
+
+    void remove(String key) {
+        append("-" + key);
+    }
+
+    /**
+     * Runs changes whose records must reach the same group commit, so a crash never keeps
+     * some of them and loses the rest. The changes must not wait for the state lock.
+     */
+    void atomically(Runnable changes) {
+        synchronized (journalLock) {
+            changes.run();
+        }
+    }
+
+    /** Writes and fsyncs every record appended so far. */
+    void sync() throws IOException {
+        boolean compact;
+        writeLock.lock();
+        try {
+            StringBuilder records;
+            FileChannel target;
+            synchronized (journalLock) {
+                if (pending.length() == 0) return;
+                records = takePending();
+                target = segment;
+            }
+            long written = write(target, records);
+            synchronized (journalLock) {
+                bytesSinceSnapshot += written;
+                compact = bytesSinceSnapshot >= compactBytes && !compacting;
+                if (compact) {
+                    compacting = true;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (compact) {
+            compactor.execute(this::compactQuietly);
+        }
+    }
+
+    /**
+     * Folds everything journaled so far into the snapshot and deletes the folded segments.
+     * The map is copied under the state lock; the snapshot is written outside it.
+     */
+    void compact() throws IOException {
+        Map<String, String> copy;
+        long firstUncovered;
+        StringBuilder records;
+        FileChannel last;
+        writeLock.lock();
+        try {
+            synchronized (stateLock) {
+                // Records and the map are cut at the same point; the rest of the old segment is
+                // written after the state lock is released, and no group commit can overtake it
+                synchronized (journalLock) {
+                    records = takePending();
+                    last = segment;
+                    segmentNumber++;
+                    segment = openSegment(segmentNumber);
+                    firstUncovered = segmentNumber;
+                    bytesSinceSnapshot = 0;
+                }
+                copy = new HashMap<>(state);
+            }
+            try {
+                write(last, records);
+            } finally {
+                last.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        Set<String> completedPrefixes = S3SequentialJsonArrayMerger.completedPrefixes(copy);
+        if (!completedPrefixes.isEmpty()) {
+            dropCovered(copy, completedPrefixes);
+        }
+        if (index != null) {
+            copy = foldIntoIndex(copy, completedPrefixes);
+        }
+        writeSnapshot(snapshot, copy, firstUncovered);
+        for (long n : segmentNumbers(snapshot)) {
+            if (n < firstUncovered) {
+                Files.deleteIfExists(segmentPath(snapshot, n));
+            }
+        }
+    }
+
+    /** Final compaction: leaves a complete snapshot and no segments behind. */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        compactor.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+            compactor.awaitTermination(10, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compact();
+        writeLock.lock();
+        try {
+            synchronized (journalLock) {
+                segment.close();
+                Files.deleteIfExists(segmentPath(snapshot, segmentNumber));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the journal segments not covered by the snapshot to a map loaded from it.
+     * Removes the journalSegment marker from the map.
+     */
+    static void replay(Path snapshot, Map<String, String> into) throws IOException {
+        String marker = into.remove(SEGMENT_KEY);
+        long firstUncovered = marker != null ? Long.parseLong(marker) : 0;
+
+        for (long n : segmentNumbers(snapshot)) {
+            if (n < firstUncovered) continue;
+            try (BufferedReader reader = Files.newBufferedReader(segmentPath(snapshot, n), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String record = verified(line);
+                    if (record == null) break; // torn tail of a crashed run
+                    if (record.startsWith("+")) {
+                        int eq = record.indexOf('=');
+                        into.put(record.substring(1, eq), record.substring(eq + 1));
+                    } else {
+                        into.remove(record.substring(1));
+                    }
+                }
+            }
+        }
+    }
+
+    // Merge the completed files of the copy into the index; returns what is left for the snapshot.
+    // Folded entries are dropped from the live map too, unless they changed meanwhile.
+    private Map<String, String> foldIntoIndex(Map<String, String> copy, Set<String> completedPrefixes) throws IOException {
+        Map<String, String> rest = new HashMap<>();
+        Map<String, String> folded = new HashMap<>();
+        List<CheckpointIndex.Entry> completed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : copy.entrySet()) {
+            long lineCount = S3SequentialJsonArrayMerger.isCompletedFileEntry(entry.getKey())
+                ? lineCountOf(entry.getValue()) : -1;
+            if (lineCount < 0) {
+                rest.put(entry.getKey(), entry.getValue());
+            } else {
+                folded.put(entry.getKey(), entry.getValue());
+                completed.add(new CheckpointIndex.Entry(entry.getKey(), lineCount));
+            }
+        }
+        boolean newPrefixes = !prefixesInIndex.containsAll(completedPrefixes);
+        if (completed.isEmpty() && !newPrefixes) {
+            return rest;
+        }
+
+        Collections.sort(completed);
+        try (CheckpointIndex existing = CheckpointIndex.open(index)) {
+            Iterator<CheckpointIndex.Entry> kept = completedPrefixes.isEmpty()
+                ? existing.entries() : uncovered(existing.entries(), completedPrefixes);
+            CheckpointIndex.merge(index, Arrays.asList(kept, completed.iterator()));
+        }
+        prefixesInIndex.addAll(completedPrefixes);
+        synchronized (stateLock) {
+            for (Map.Entry<String, String> entry : folded.entrySet()) {
+                state.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        return rest;
+    }
+
+    // Drop completed-file entries under a completed prefix from the copy and from the live map
+    private void dropCovered(Map<String, String> copy, Set<String> completedPrefixes) {
+        Map<String, String> covered = new HashMap<>();
+        copy.entrySet().removeIf(entry -> {
+            boolean drop = S3SequentialJsonArrayMerger.isCompletedFileEntry(entry.getKey())
+                && BucketLister.isCovered(entry.getKey(), completedPrefixes);
+            if (drop) {
+                covered.put(entry.getKey(), entry.getValue());
+            }
+            return drop;
+        });
+        synchronized (stateLock) {
+            for (Map.Entry<String, String> entry : covered.entrySet()) {
+                state.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static Iterator<CheckpointIndex.Entry> uncovered(Iterator<CheckpointIndex.Entry> entries,
+                                                             Set<String> completedPrefixes) {
+        return new Iterator<CheckpointIndex.Entry>() {
+            private CheckpointIndex.Entry next = advance();
+
+            private CheckpointIndex.Entry advance() {
+                while (entries.hasNext()) {
+                    CheckpointIndex.Entry entry = entries.next();
+                    if (!BucketLister.isCovered(new String(entry.key, StandardCharsets.UTF_8), completedPrefixes)) {
+                        return entry;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public CheckpointIndex.Entry next() {
+                CheckpointIndex.Entry current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    // Line count of a completed-file entry, or -1 if the value is not one
+    static long lineCountOf(String value) {
+        try {
+            long lineCount = Long.parseLong(value);
+            return lineCount >= 0 ? lineCount : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void append(String record) {
+        synchronized (journalLock) {
+            pending.append(record).append('\t').append(Long.toHexString(crc(record))).append('\n');
+        }
+    }
+
+    // Swaps in a fresh buffer; appends carry on while the records taken are written (caller holds journalLock)
+    private StringBuilder takePending() {
+        StringBuilder records = pending;
+        pending = new StringBuilder(Math.max(16, records.length()));
+        return records;
+    }
+
+    // Group commit: one write and one fsync for everything appended since the last one (caller holds writeLock)
+    private static long write(FileChannel target, StringBuilder records) throws IOException {
+        if (records.length() == 0) return 0;
+        ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        target.force(false);
+        return written;
+    }
+
+    private void flushQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            S3SequentialJsonArrayMerger.log("ERROR writing checkpoint journal: " + e.getMessage());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException e) {
+            S3SequentialJsonArrayMerger.log("ERROR compacting checkpoint journal: " + e.getMessage());
+        } finally {
+            synchronized (journalLock) {
+                compacting = false;
+            }
+        }
+    }
+
+    private FileChannel openSegment(long n) throws IOException {
+        return FileChannel.open(segmentPath(snapshot, n),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Same layout and encoding as saveCheckpoint, fsynced before it replaces the old snapshot
+    private static void writeSnapshot(Path snapshot, Map<String, String> copy, long firstUncovered) throws IOException {
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (BufferedWriter bw = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            bw.write(SEGMENT_KEY + "=" + firstUncovered);
+            bw.newLine();
+            for (Map.Entry<String, String> entry : copy.entrySet()) {
+                bw.write(entry.getKey() + "=" + entry.getValue());
+                bw.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String verified(String line) {
+        int tab = line.lastIndexOf('\t');
+        if (tab <= 0) return null;
+        String record = line.substring(0, tab);
+        if (!(record.startsWith("+") && record.indexOf('=') > 0) && !record.startsWith("-")) return null;
+        try {
+            return Long.parseLong(line.substring(tab + 1), 16) == crc(record) ? record : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long crc(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    static Path segmentPath(Path snapshot, long n) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".journal." + n);
+    }
+
+    // Segment numbers present next to the snapshot, ascending
+    static List<Long> segmentNumbers(Path snapshot) throws IOException {
+        Path dir = snapshot.toAbsolutePath().getParent();
+        String prefix = snapshot.getFileName() + ".journal.";
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (var paths = Files.list(dir)) {
+            paths.forEach(p -> {
+                String name = p.getFileName().toString();
+                if (name.startsWith(prefix)) {
+                    try {
+                        found.put(Long.parseLong(name.substring(prefix.length())), p);
+                    } catch (NumberFormatException ignored) {
+                        // not a segment
+                    }
+                }
+            });
+        }
+        return new ArrayList<>(found.keySet());
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.s3merge;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams one merged chunk to the object store while the chunk is still being assembled.
+ *
+ * Lines are copied straight into a part-sized buffer ('\n'-separated, no trailing
+ * newline). As soon as the buffer is full it is shipped as the next part of a
+ * multipart upload on the upload pool and a fresh buffer takes its place, so a chunk
+ * never exists in memory as a whole. A chunk that never fills one part is
+ * written with a single put when it is finished.
+ *
+ * Part buffers come from a pool and go back to it once their request has completed,
+ * and string lines are encoded straight into the part, so a steady stream of chunks
+ * allocates no buffers of its own. With a direct pool the parts live off the heap and
+ * are handed to the store as they are.
+ *
+ * The multipart upload is created when the first part fills rather than when the
+ * chunk begins: small chunks then cost one request, and the target key of a small
+ * chunk can still take the name prefix chosen at finish.
+ *
+ * Up to maxPartsInFlight parts of one object upload concurrently; filling blocks
+ * once that many are on the wire. Parts may finish in any order, and their ETags are
+ * collected by part number for the completion request. Every request is retried on
+ * its own with the merger's unlimited backoff, so a failed part never restarts the
+ * whole upload.
+ *
+ * A writer is filled by a single thread; only its requests run on the executor.
+ */
+final class ChunkWriter {
+
+    private static final int ENCODE_SIZE = 8 * 1024;
+
+    /** Chooses the target key from the latest source key written and a name prefix. */
+    interface KeyNamer {
+        String targetKey(String lastSourceKey, String prefix);
+    }
+
+    /** Told the target of a finished chunk just before the object can become visible there. */
+    interface CommitListener {
+        void committing(String bucket, String key);
+    }
+
+    private final ObjectStore store;
+    private final String bucket;
+    private final int partSize;
+    private final Executor executor;
+    private final KeyNamer namer;
+    private final Semaphore partSlots;
+    private final BufferPool parts;
+
+    private ByteBuffer part;
+    private int partPos;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(256);  // the string line being encoded
+    private final ByteBuffer spill = ByteBuffer.allocate(4);
+    private ByteBuffer encoded;                           // staging for direct parts
+    private int lineCount;
+    private long bytesWritten;
+
+    private String lastSourceKey;
+    private final Map<String, Long> lastLines = new LinkedHashMap<>();
+    private final Map<String, Long> resumeOffsets = new LinkedHashMap<>();
+    private int restoredLines;
+
+    private String key;
+    private CompletableFuture<String> uploadId;
+    private final List<CompletableFuture<String>> partETags = new ArrayList<>();
+    private final long startTime = System.currentTimeMillis();
+
+    ChunkWriter(ObjectStore store, String bucket, int partSize, int maxPartsInFlight,
+                Executor executor, KeyNamer namer) {
+        this(store, bucket, new BufferPool(partSize, 0), maxPartsInFlight, executor, namer);
+    }
+
+    /**
+     * @param parts supplies the part buffers; its buffer size is the part size
+     */
+    ChunkWriter(ObjectStore store, String bucket, BufferPool parts, int maxPartsInFlight,
+                Executor executor, KeyNamer namer) {
+        this.store = store;
+        this.bucket = bucket;
+        this.parts = parts;
+        this.partSize = parts.bufferSize();
+        this.executor = executor;
+        this.namer = namer;
+        this.partSlots = new Semaphore(maxPartsInFlight);
+        nextPart();
+    }
+
+    /**
+     * Appends lines [from, to) of the batch. The bytes are copied, so the caller may
+     * release the batch as soon as this returns. Blocks while the writer already has
+     * its maximum number of parts in flight.
+     */
+    void write(LineBatch batch, int from, int to) throws InterruptedException {
+        // Set first: a part filled by this batch may open the object and name it
+        if (batch.sourceKey != null) {
+            lastSourceKey = batch.sourceKey;
+        }
+
+        for (int i = from; i < to; i++) {
+            if (lineCount > 0) {
+                writeByte('\n');
+            }
+            if (batch.isBytes()) {
+                int start = batch.lineStart(i);
+                writeBytes(batch.block(), start, batch.lineEnd(i) - start);
+            } else {
+                writeUtf8(batch.lines.get(i));
+            }
+            lineCount++;
+        }
+
+        if (batch.firstLine > 0) {
+            lastLines.put(batch.sourceKey, batch.firstLine + to - 1);
+            resumeOffsets.put(batch.sourceKey, batch.resumeOffset(to - 1));
+        } else {
+            restoredLines += to - from;
+        }
+    }
+
+    int lineCount() {
+        return lineCount;
+    }
+
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /** Last line number written from each source file, in the order the files were first seen. */
+    Map<String, Long> lastLines() {
+        return Collections.unmodifiableMap(lastLines);
+    }
+
+    /**
+     * Source offset just past the last line written from each source file, or -1 where the
+     * batch did not carry offsets (string mode).
+     */
+    Map<String, Long> resumeOffsets() {
+        return Collections.unmodifiableMap(resumeOffsets);
+    }
+
+    /** Lines written that did not come from a source file (restored checkpoint buffer). */
+    int restoredLines() {
+        return restoredLines;
+    }
+
+    String lastSourceKey() {
+        return lastSourceKey;
+    }
+
+    /** Target key; null until the object has been opened. */
+    String key() {
+        return key;
+    }
+
+    CompletableFuture<Void> finish(String prefix) throws InterruptedException {
+        return finish(prefix, (bucket, key) -> { });
+    }
+
+    /**
+     * Ships whatever is left and completes the object. The prefix only names the object
+     * if no part has been shipped yet. The listener runs on the upload pool once every
+     * part is up, before the put or completion request that makes the object visible;
+     * if it throws, the object is abandoned. The future completes once the object is durable.
+     */
+    CompletableFuture<Void> finish(String prefix, CommitListener listener) throws InterruptedException {
+        if (uploadId == null) {
+            key = namer.targetKey(lastSourceKey, prefix);
+            String target = key;
+            ByteBuffer data = part.limit(partPos).position(0);
+            part = null;
+            return CompletableFuture.runAsync(() -> {
+                listener.committing(bucket, target);
+                S3SequentialJsonArrayMerger.withRetries("uploading " + target, () -> {
+                    store.put(bucket, target, data);
+                    return null;
+                });
+            }, executor).whenComplete((ignored, error) -> parts.release(data));
+        }
+
+        if (partPos > 0) {
+            shipPart(part, partPos);
+        } else {
+            parts.release(part);
+        }
+        part = null;
+
+        String target = key;
+        CompletableFuture<String> id = uploadId;
+        List<CompletableFuture<String>> parts = new ArrayList<>(partETags);
+        CompletableFuture<Void> done = CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+            .thenCombine(id, (ignored, uploadIdValue) -> uploadIdValue)
+            .thenAcceptAsync(uploadIdValue -> {
+                List<String> eTags = new ArrayList<>(parts.size());
+                for (CompletableFuture<String> eTag : parts) {
+                    eTags.add(eTag.join());
+                }
+                listener.committing(bucket, target);
+                S3SequentialJsonArrayMerger.withRetries("completing multipart upload " + target, () -> {
+                    store.completeMultipartUpload(bucket, target, uploadIdValue, eTags);
+                    return null;
+                });
+            }, executor);
+
+        // Best effort: do not leave billed parts behind when the upload is abandoned
+        done.whenComplete((ignored, error) -> {
+            if (error != null && !id.isCompletedExceptionally()) {
+                try {
+                    store.abortMultipartUpload(bucket, target, id.join());
+                } catch (Exception abortEx) {
+                    S3SequentialJsonArrayMerger.log("Warning: Failed to abort multipart upload: " + abortEx.getMessage());
+                }
+            }
+        });
+        return done;
+    }
+
+    /** Milliseconds since the writer was opened. */
+    long elapsedMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private void writeByte(int b) throws InterruptedException {
+        part.put(partPos++, (byte) b);
+        bytesWritten++;
+        if (partPos == partSize) {
+            shipFullPart();
+        }
+    }
+
+    // Encodes as String.getBytes(UTF_8) would, unpaired surrogates included ('?'), without the copy
+    private void writeUtf8(String line) throws InterruptedException {
+        int length = line.length();
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        }
+        line.getChars(0, length, chars.array(), 0);
+        chars.limit(length).position(0);
+        encoder.reset();
+        if (part.isDirect()) {
+            // The encoder is only fast between arrays: encode on the heap, then copy off it
+            if (encoded == null) {
+                encoded = ByteBuffer.allocate(ENCODE_SIZE);
+            }
+            CoderResult result;
+            do {
+                encoded.clear();
+                result = encoder.encode(chars, encoded, true);
+                writeBytes(encoded, 0, encoded.position());
+            } while (result.isOverflow());
+            return;
+        }
+        while (true) {
+            part.limit(partSize).position(partPos);
+            CoderResult result = encoder.encode(chars, part, true);
+            advance(part.position() - partPos);
+            if (result.isUnderflow()) {
+                return;
+            }
+            // Too little room for the next character: carry it over byte by byte
+            spill.clear();
+            encoder.encode(chars, spill, true);
+            for (int i = 0; i < spill.position(); i++) {
+                writeByte(spill.get(i));
+            }
+        }
+    }
+
+    private void writeBytes(ByteBuffer src, int offset, int length) throws InterruptedException {
+        while (length > 0) {
+            int n = Math.min(length, partSize - partPos);
+            part.put(partPos, src, offset, n);
+            advance(n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void advance(int n) throws InterruptedException {
+        partPos += n;
+        bytesWritten += n;
+        if (partPos == partSize) {
+            shipFullPart();
+        }
+    }
+
+    private void shipFullPart() throws InterruptedException {
+        ByteBuffer full = part;
+        nextPart();
+        shipPart(full, partSize);
+    }
+
+    private void nextPart() {
+        part = parts.acquire();
+        partPos = 0;
+    }
+
+    // The buffer goes back to the pool once its request has completed, whether it succeeded or not,
+    // and before the part counts as done
+    private void shipPart(ByteBuffer buffer, int length) throws InterruptedException {
+        ByteBuffer data = buffer.limit(length).position(0);
+        if (uploadId == null) {
+            key = namer.targetKey(lastSourceKey, "merged-");
+            String target = key;
+            uploadId = CompletableFuture.supplyAsync(() -> S3SequentialJsonArrayMerger.withRetries(
+                "creating multipart upload " + target, () -> store.createMultipartUpload(bucket, target)), executor);
+        }
+
+        partSlots.acquire();
+        String target = key;
+        int partNumber = partETags.size() + 1;
+        CompletableFuture<String> eTag = uploadId.thenApplyAsync(id -> S3SequentialJsonArrayMerger.withRetries(
+            "uploading part " + partNumber + " of " + target,
+            () -> store.uploadPart(bucket, target, id, partNumber, data)), executor)
+            .whenComplete((ignored, error) -> {
+                parts.release(data);
+                partSlots.release();
+            });
+        partETags.add(eTag);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.s3merge;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keys of the files that are fully merged, consulted for every listed object.
+ *
+ * Implementations are safe to use from the listing thread while the upload side adds
+ * to them. Selected with completed.set in config.properties:
+ *   heap    the keys themselves in a HashSet (default)
+ *   digest  128-bit key digests in an off-heap table; no per-key heap objects
+ */
+interface CompletedSet {
+
+    boolean contains(String key);
+
+    void add(String key);
+
+    long size();
+
+    static CompletedSet create(String type, long expectedSize) {
+        if ("digest".equalsIgnoreCase(type)) {
+            return new DigestCompletedSet(expectedSize);
+        }
+        if (!"heap".equalsIgnoreCase(type)) {
+            throw new IllegalArgumentException("Unknown completed.set: " + type + " (expected heap or digest)");
+        }
+        return new HeapCompletedSet();
+    }
+
+    /** The keys as Strings, as the merger always kept them. */
+    final class HeapCompletedSet implements CompletedSet {
+        private final Set<String> keys = new HashSet<>();
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public synchronized void add(String key) {
+            keys.add(key);
+        }
+
+        @Override
+        public synchronized long size() {
+            return keys.size();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.s3merge;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Adapts how many downloads run at once (download.concurrency.adaptive=true), by additive
+ * increase and multiplicative decrease over fixed time windows.
+ *
+ * Downloads report the bytes they read, the time to their first byte and any throttling
+ * response (503 SlowDown, 429). At the end of each window:
+ *   - a throttled window halves the limit;
+ *   - a window whose p99 first-byte latency is more than LATENCY_TOLERANCE times the
+ *     best p99 seen so far cuts the limit by a fifth, since requests are queueing;
+ *   - otherwise a window with at least 5% more throughput than the previous one raises
+ *     the limit by INCREASE_STEP, and any other window keeps it.
+ * Small objects are latency-bound and keep gaining from more requests in flight, so the
+ * limit climbs; large ones saturate the link early and the limit levels off.
+ *
+ * The limit is read by the scheduler, which evaluates a window once it has elapsed; the
+ * reporting methods are safe to call from any download thread.
+ */
+final class ConcurrencyController {
+
+    static final int INCREASE_STEP = 4;
+    static final double THROTTLE_BACKOFF = 0.5;
+    static final double LATENCY_BACKOFF = 0.8;
+    static final double LATENCY_TOLERANCE = 2.0;
+    static final double MIN_GAIN = 1.05;
+    static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final int min;
+    private final int max;
+    private final long windowNanos;
+    private final IntConsumer onChange;
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicInteger throttles = new AtomicInteger();
+    private final List<Long> latencies = new ArrayList<>();     // guarded by itself
+
+    private int limit;                      // scheduler thread only
+    private int peak;
+    private long windowStart;
+    private double lastThroughput = -1;     // bytes per second of the previous window
+    private long bestP99 = Long.MAX_VALUE;  // nanoseconds
+
+    /**
+     * @param onChange told the new limit whenever it changes, e.g. to resize a thread pool
+     */
+    ConcurrencyController(int initial, int min, int max, long windowMillis, IntConsumer onChange) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.limit = Math.max(this.min, Math.min(this.max, initial));
+        this.peak = limit;
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.onChange = onChange;
+        this.windowStart = System.nanoTime();
+    }
+
+    /** Downloads that may run at once, after evaluating the current window if it has elapsed. */
+    synchronized int limit() {
+        long now = System.nanoTime();
+        if (now - windowStart >= windowNanos) {
+            evaluate(now);
+        }
+        return limit;
+    }
+
+    /** The current limit as a metric, without evaluating anything. */
+    synchronized int currentLimit() {
+        return limit;
+    }
+
+    /** The highest limit reached so far. */
+    synchronized int peakLimit() {
+        return peak;
+    }
+
+    void bytesRead(long n) {
+        bytes.add(n);
+    }
+
+    void firstByteLatency(long nanos) {
+        synchronized (latencies) {
+            latencies.add(nanos);
+        }
+    }
+
+    void throttled() {
+        throttles.incrementAndGet();
+    }
+
+    /**
+     * Reports what a download reads from in: its first byte latency, counted from
+     * startNanos when the first read returns, and every byte after that.
+     */
+    InputStream meter(InputStream in, long startNanos) {
+        return new FilterInputStream(in) {
+            private boolean started;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                counted(b < 0 ? -1 : 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                counted(n);
+                return n;
+            }
+
+            private void counted(int n) {
+                if (!started) {
+                    started = true;
+                    firstByteLatency(System.nanoTime() - startNanos);
+                }
+                if (n > 0) {
+                    bytesRead(n);
+                }
+            }
+        };
+    }
+
+    private void evaluate(long now) {
+        double throughput = bytes.sumThenReset() * 1e9 / Math.max(1, now - windowStart);
+        int throttled = throttles.getAndSet(0);
+        List<Long> samples;
+        synchronized (latencies) {
+            samples = new ArrayList<>(latencies);
+            latencies.clear();
+        }
+        windowStart = now;
+
+        long p99 = -1;
+        if (samples.size() >= MIN_LATENCY_SAMPLES) {
+            Collections.sort(samples);
+            p99 = samples.get((int) Math.ceil(samples.size() * 0.99) - 1);
+        }
+
+        int next = limit;
+        String reason = null;
+        if (throttled > 0) {
+            next = (int) (limit * THROTTLE_BACKOFF);
+            reason = throttled + " throttled requests";
+        } else if (p99 >= 0 && bestP99 != Long.MAX_VALUE && p99 > bestP99 * LATENCY_TOLERANCE) {
+            next = (int) (limit * LATENCY_BACKOFF);
+            reason = "p99 first byte " + p99 / 1_000_000 + " ms, best " + bestP99 / 1_000_000 + " ms";
+        } else if (lastThroughput >= 0 && throughput >= lastThroughput * MIN_GAIN && throughput > 0) {
+            next = limit + INCREASE_STEP;
+            reason = "throughput up to " + (long) throughput / 1024 + " KB/s";
+        }
+        if (p99 >= 0) {
+            bestP99 = Math.min(bestP99, p99);
+        }
+        lastThroughput = throughput;
+
+        next = Math.max(min, Math.min(max, next));
+        if (next != limit) {
+            S3SequentialJsonArrayMerger.log("Download concurrency: " + limit + " -> " + next + " (" + reason + ")");
+            limit = next;
+            peak = Math.max(peak, limit);
+            onChange.accept(limit);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.s3merge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Completed-file set holding only a 128-bit digest of each key, in an open-addressing
+ * table outside the Java heap.
+ *
+ * Each slot is 16 bytes (the two halves of the {@link KeyDigest}); an all-zero slot is
+ * empty, so a digest that happens to be zero is stored as 1. Collisions are resolved by
+ * linear probing and the table grows by half once it is 80% full, so a key costs 20-30
+ * bytes of direct memory and nothing on the heap. The table is split into direct buffers
+ * of at most 1 GB, so its size is bounded only by -XX:MaxDirectMemorySize.
+ *
+ * A lookup reports a key as present if another key has the same digest; with 128 bits
+ * that is not a practical concern (see KeyDigest).
+ */
+final class DigestCompletedSet implements CompletedSet {
+
+    private static final int SLOT_BYTES = 16;
+    private static final int SEGMENT_SHIFT = 26;                 // 64M slots = 1 GB per buffer
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final long MIN_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.8;
+
+    private ByteBuffer[] segments;
+    private long capacity;
+    private long size;
+
+    DigestCompletedSet(long expectedSize) {
+        allocate(Math.max(MIN_CAPACITY, (long) (expectedSize / MAX_LOAD) + 1));
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        KeyDigest digest = KeyDigest.of(key);
+        long low = storedLow(digest);
+        for (long slot = home(digest.high); ; slot = next(slot)) {
+            long high = high(slot);
+            long lo = low(slot);
+            if (high == 0 && lo == 0) return false;
+            if (high == digest.high && lo == low) return true;
+        }
+    }
+
+    @Override
+    public synchronized void add(String key) {
+        if (size + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        KeyDigest digest = KeyDigest.of(key);
+        if (insert(digest.high, storedLow(digest))) {
+            size++;
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    /** Direct memory held by the table. */
+    synchronized long capacityBytes() {
+        return capacity * SLOT_BYTES;
+    }
+
+    private boolean insert(long high, long low) {
+        for (long slot = home(high); ; slot = next(slot)) {
+            long h = high(slot);
+            long l = low(slot);
+            if (h == 0 && l == 0) {
+                put(slot, high, low);
+                return true;
+            }
+            if (h == high && l == low) return false;
+        }
+    }
+
+    private void grow() {
+        ByteBuffer[] old = segments;
+        long oldCapacity = capacity;
+        allocate(oldCapacity + oldCapacity / 2);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer segment = old[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) ((slot & SEGMENT_MASK) * SLOT_BYTES);
+            long high = segment.getLong(offset);
+            long low = segment.getLong(offset + 8);
+            if (high != 0 || low != 0) {
+                insert(high, low);
+            }
+        }
+    }
+
+    private void allocate(long slots) {
+        int count = (int) ((slots + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        ByteBuffer[] fresh = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long segmentSlots = Math.min(slots - ((long) i << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+            fresh[i] = ByteBuffer.allocateDirect((int) (segmentSlots * SLOT_BYTES)); // zero-filled
+        }
+        segments = fresh;
+        capacity = slots;
+    }
+
+    private long home(long high) {
+        return Long.remainderUnsigned(high, capacity);
+    }
+
+    private long next(long slot) {
+        return slot + 1 == capacity ? 0 : slot + 1;
+    }
+
+    private static long storedLow(KeyDigest digest) {
+        return digest.high == 0 && digest.low == 0 ? 1 : digest.low;
+    }
+
+    private long high(long slot) {
+        return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong((int) ((slot & SEGMENT_MASK) * SLOT_BYTES));
+    }
+
+    private long low(long slot) {
+        return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong((int) ((slot & SEGMENT_MASK) * SLOT_BYTES) + 8);
+    }
+
+    private void put(long slot, long high, long low) {
+        ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+        int offset = (int) ((slot & SEGMENT_MASK) * SLOT_BYTES);
+        segment.putLong(offset, high);
+        segment.putLong(offset + 8, low);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.s3merge;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
+
+/**
+ * Feeds an asynchronous response body into a {@link LineFramer}.
+ *
+ * One buffer is requested at a time and framed on the framing executor, never on the
+ * thread that delivered it (an SDK event loop must not block on a full line queue). The
+ * next buffer is only requested once the previous one is framed, so a stalled merge
+ * stops reading from the connection. Signals are framed in arrival order by chaining
+ * them; {@link #done()} completes with the framer's last line number.
+ */
+final class FramingSubscriber implements Subscriber<ByteBuffer> {
+
+    private final LineFramer framer;
+    private final Executor executor;
+    private final LongConsumer bytesRead;
+    private final CompletableFuture<Long> done = new CompletableFuture<>();
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);  // signals are serial
+    private Subscription subscription;
+
+    FramingSubscriber(LineFramer framer, Executor executor) {
+        this(framer, executor, n -> { });
+    }
+
+    /** bytesRead is told the size of every buffer as it arrives. */
+    FramingSubscriber(LineFramer framer, Executor executor, LongConsumer bytesRead) {
+        this.framer = framer;
+        this.executor = executor;
+        this.bytesRead = bytesRead;
+    }
+
+    /** Completes once the body is framed, or exceptionally if it failed. */
+    CompletableFuture<Long> done() {
+        return done;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        subscription = s;
+        framer.begin();
+        s.request(1);
+    }
+
+    @Override
+    public void onNext(ByteBuffer buffer) {
+        bytesRead.accept(buffer.remaining());
+        chain(() -> {
+            framer.feed(buffer);
+            subscription.request(1);
+        });
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        chain(() -> {
+            framer.abandon();
+            done.completeExceptionally(error);
+        });
+    }
+
+    @Override
+    public void onComplete() {
+        chain(() -> {
+            framer.end();
+            done.complete(framer.lineNumber());
+        });
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private void chain(Step step) {
+        tail = tail.thenRunAsync(() -> {
+            if (done.isDone()) return;
+            try {
+                step.run();
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                subscription.cancel();
+                framer.abandon();
+                done.completeExceptionally(e);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.s3merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * ObjectStore held entirely on the heap. Used to benchmark the merge pipeline at
+ * memory speed and to drive end-to-end tests without a bucket.
+ */
+public class InMemoryObjectStore implements ObjectStore {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final Map<String, ConcurrentSkipListMap<String, byte[]>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    private ConcurrentSkipListMap<String, byte[]> bucket(String bucket) {
+        return buckets.computeIfAbsent(bucket, b -> new ConcurrentSkipListMap<>());
+    }
+
+    /** Returns the stored bytes of an object, or null if it does not exist. */
+    public byte[] getBytes(String bucket, String key) {
+        return bucket(bucket).get(key);
+    }
+
+    /** Returns all keys currently stored in a bucket, in key order. */
+    public List<String> keys(String bucket) {
+        return new ArrayList<>(bucket(bucket).keySet());
+    }
+
+    @Override
+    public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+        NavigableMap<String, byte[]> view = bucket(bucket);
+        if (continuationToken != null) {
+            view = view.tailMap(continuationToken, false);
+        } else if (prefix != null) {
+            view = view.tailMap(prefix, true);
+        }
+
+        List<StoredObject> objects = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        String last = continuationToken;
+        for (Map.Entry<String, byte[]> entry : view.entrySet()) {
+            String key = entry.getKey();
+            if (prefix != null && !key.startsWith(prefix)) break;
+            String common = ObjectListing.commonPrefix(key, prefix, delimiter);
+            if (common != null && common.equals(last)) continue; // rest of a rolled-up prefix
+            if (objects.size() + prefixes.size() == PAGE_SIZE) {
+                return new ObjectListing(objects, prefixes, last);
+            }
+            if (common != null) {
+                prefixes.add(common);
+                last = common;
+            } else {
+                objects.add(new StoredObject(key, entry.getValue().length, null));
+                last = key;
+            }
+        }
+        return new ObjectListing(objects, prefixes, null);
+    }
+
+    @Override
+    public InputStream get(String bucket, String key) throws IOException {
+        return new ByteArrayInputStream(require(bucket, key));
+    }
+
+    @Override
+    public InputStream getRange(String bucket, String key, long start, long end) throws IOException {
+        byte[] data = require(bucket, key);
+        int from = (int) Math.min(start, data.length);
+        int to = (int) Math.min(end + 1, data.length);
+        return new ByteArrayInputStream(data, from, Math.max(0, to - from));
+    }
+
+    @Override
+    public void put(String bucket, String key, byte[] data) {
+        bucket(bucket).put(key, data.clone());
+    }
+
+    @Override
+    public void delete(String bucket, String key) {
+        bucket(bucket).remove(key);
+    }
+
+    @Override
+    public String createMultipartUpload(String bucket, String key) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) throws IOException {
+        requireUpload(uploadId).put(partNumber, data.clone());
+        return uploadId + "-" + partNumber;
+    }
+
+    @Override
+    public void completeMultipartUpload(String bucket, String key, String uploadId, List<String> partETags) throws IOException {
+        ConcurrentSkipListMap<Integer, byte[]> parts = requireUpload(uploadId);
+        int total = 0;
+        for (int i = 1; i <= partETags.size(); i++) {
+            byte[] part = parts.get(i);
+            if (part == null) {
+                throw new IOException("Missing part " + i + " for upload " + uploadId);
+            }
+            total += part.length;
+        }
+
+        byte[] data = new byte[total];
+        int offset = 0;
+        for (int i = 1; i <= partETags.size(); i++) {
+            byte[] part = parts.get(i);
+            System.arraycopy(part, 0, data, offset, part.length);
+            offset += part.length;
+        }
+        bucket(bucket).put(key, data);
+        uploads.remove(uploadId);
+    }
+
+    @Override
+    public void abortMultipartUpload(String bucket, String key, String uploadId) {
+        uploads.remove(uploadId);
+    }
+
+    private byte[] require(String bucket, String key) throws FileNotFoundException {
+        byte[] data = bucket(bucket).get(key);
+        if (data == null) {
+            throw new FileNotFoundException("No such key: " + bucket + "/" + key);
+        }
+        return data;
+    }
+
+    private ConcurrentSkipListMap<Integer, byte[]> requireUpload(String uploadId) throws IOException {
+        ConcurrentSkipListMap<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            throw new IOException("No such upload: " + uploadId);
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.s3merge;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An S3 Inventory report used as the list of objects to merge, so that a bucket with
+ * hundreds of millions of objects is never listed.
+ *
+ * The manifest.json names the source bucket, the CSV columns (fileSchema) and the data
+ * files. It is read either from a local path or, given as s3://bucket/key, through the
+ * configured ObjectStore. Data files of a stored manifest are read from its destination
+ * bucket; those of a local manifest are looked up by file name next to manifest.json,
+ * then in the data/ directory beside its parent (the layout "aws s3 sync" leaves behind).
+ * Data files may be gzip-compressed, as S3 writes them, or plain CSV.
+ *
+ * Keys in the report are URL-encoded. Rows for delete markers and noncurrent versions of
+ * versioned buckets are skipped. Only the CSV format is supported, and the report must
+ * include the Size field, which the ranged download needs.
+ */
+final class InventoryManifest {
+
+    static final String STORE_SCHEME = "s3://";
+    private static final String BUCKET_ARN_PREFIX = "arn:aws:s3:::";
+
+    /** Receives the objects of a data file in the order the report lists them. */
+    interface Sink {
+        void object(StoredObject object) throws InterruptedException;
+    }
+
+    // Opens a data file by its key in the manifest
+    private interface DataFiles {
+        InputStream open(String fileKey) throws IOException;
+    }
+
+    final String sourceBucket;
+    final List<String> files;
+    private final int keyColumn;
+    private final int sizeColumn;
+    private final int eTagColumn;           // -1 if not in the report
+    private final int latestColumn;         // -1 if not in the report
+    private final int deleteMarkerColumn;   // -1 if not in the report
+    private final DataFiles dataFiles;
+
+    private InventoryManifest(JsonNode manifest, DataFiles dataFiles) throws IOException {
+        String format = manifest.path("fileFormat").asText("");
+        if (!"CSV".equalsIgnoreCase(format)) {
+            throw new IOException("Unsupported inventory format: " + format + " (only CSV is supported)");
+        }
+        this.sourceBucket = manifest.path("sourceBucket").asText(null);
+        List<String> schema = new ArrayList<>();
+        for (String column : manifest.path("fileSchema").asText("").split(",")) {
+            schema.add(column.trim());
+        }
+        this.keyColumn = schema.indexOf("Key");
+        this.sizeColumn = schema.indexOf("Size");
+        this.eTagColumn = schema.indexOf("ETag");
+        this.latestColumn = schema.indexOf("IsLatest");
+        this.deleteMarkerColumn = schema.indexOf("IsDeleteMarker");
+        if (sourceBucket == null || keyColumn < 0 || sizeColumn < 0) {
+            throw new IOException("Inventory manifest needs sourceBucket and the Key and Size fields, got " +
+                                  manifest.path("fileSchema").asText(""));
+        }
+        List<String> keys = new ArrayList<>();
+        for (JsonNode file : manifest.path("files")) {
+            keys.add(file.path("key").asText());
+        }
+        this.files = Collections.unmodifiableList(keys);
+        this.dataFiles = dataFiles;
+    }
+
+    /** Reads a manifest from a local path or, as s3://bucket/key, from the store. */
+    static InventoryManifest load(String location, ObjectStore store) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        if (location.startsWith(STORE_SCHEME)) {
+            String path = location.substring(STORE_SCHEME.length());
+            int slash = path.indexOf('/');
+            if (slash <= 0) {
+                throw new IllegalArgumentException("Inventory manifest location needs a bucket and key: " + location);
+            }
+            JsonNode manifest;
+            try (InputStream in = store.get(path.substring(0, slash), path.substring(slash + 1))) {
+                manifest = mapper.readTree(in);
+            }
+            String destination = manifest.path("destinationBucket").asText("");
+            String bucket = destination.startsWith(BUCKET_ARN_PREFIX)
+                ? destination.substring(BUCKET_ARN_PREFIX.length()) : path.substring(0, slash);
+            return new InventoryManifest(manifest, fileKey -> store.get(bucket, fileKey));
+        }
+
+        Path file = Paths.get(location);
+        Path dir = file.toAbsolutePath().getParent();
+        return new InventoryManifest(mapper.readTree(file.toFile()), fileKey -> {
+            String name = fileKey.substring(fileKey.lastIndexOf('/') + 1);
+            Path beside = dir.resolve(name);
+            if (Files.exists(beside) || dir.getParent() == null) {
+                return Files.newInputStream(beside);
+            }
+            return Files.newInputStream(dir.getParent().resolve("data").resolve(name));
+        });
+    }
+
+    /** Streams the current objects of one data file into the sink and returns how many there were. */
+    long read(String fileKey, Sink sink) throws IOException, InterruptedException {
+        long objects = 0;
+        try (BufferedReader reader = new BufferedReader(
+                 new InputStreamReader(decompress(dataFiles.open(fileKey)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                List<String> row = parseCsvLine(line);
+                if (row.size() <= Math.max(keyColumn, sizeColumn) ||
+                    "true".equalsIgnoreCase(column(row, deleteMarkerColumn)) ||
+                    "false".equalsIgnoreCase(column(row, latestColumn)) ||
+                    row.get(sizeColumn).isEmpty()) {
+                    continue;
+                }
+                String eTag = column(row, eTagColumn);
+                sink.object(new StoredObject(URLDecoder.decode(row.get(keyColumn), StandardCharsets.UTF_8),
+                                             Long.parseLong(row.get(sizeColumn)),
+                                             eTag == null || eTag.isEmpty() ? null : eTag));
+                objects++;
+            }
+        }
+        return objects;
+    }
+
+    private static String column(List<String> row, int index) {
+        return index >= 0 && index < row.size() ? row.get(index) : null;
+    }
+
+    // Gzip data files are recognised by their magic number rather than the file name
+    private static InputStream decompress(InputStream raw) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw, 64 * 1024);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        return b1 == 0x1f && b2 == 0x8b ? new GZIPInputStream(in, 64 * 1024) : in;
+    }
+
+    /** Splits one CSV record; fields may be quoted, with "" standing for a quote inside. */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.s3merge;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A run of consecutive lines from one source file, handed from a download thread to
+ * the chunk assembler.
+ *
+ * In string mode the lines are decoded Strings. In byte mode they are [start, end)
+ * slices of one pooled block that was filled straight from the object stream, so a
+ * pure merge never decodes or re-encodes line content. A byte-mode batch has a single
+ * owner: the chunk assembler copies its lines into the open chunk and then releases it,
+ * which hands the block back to its pool.
+ *
+ * firstLine is the 1-based line number of the first line within its source file, so
+ * the uploader can tell how far into each file its output has reached. Lines that do
+ * not come from a source file (a buffer restored from the checkpoint) use 0. Byte-mode
+ * batches also know where each line ends in the source object, so progress can be
+ * resumed with a ranged read instead of re-reading and skipping lines.
+ *
+ * An empty batch is the end-of-stream marker.
+ */
+final class LineBatch {
+
+    private static final int STRING_OVERHEAD = 56;  // String and its array headers, plus the list slot
+
+    final List<String> lines;   // string mode; null in byte mode
+    final String sourceKey;
+    final long firstLine;
+    private final long blockOffset; // source offset of block position 0; -1 if unknown
+    private final long endOffset;   // source offset just past the last line's terminator; -1 if unknown
+
+    private final ByteBuffer block;
+    private final int[] bounds; // start/end pairs into block, two ints per line
+    private final int count;
+    private final BufferPool pool;
+    private volatile long stringBytes = -1;  // heapBytes() of a string batch, once computed
+
+    LineBatch(List<String> lines, String sourceKey, long firstLine) {
+        this.lines = lines;
+        this.sourceKey = sourceKey;
+        this.firstLine = firstLine;
+        this.blockOffset = -1;
+        this.endOffset = -1;
+        this.block = null;
+        this.bounds = null;
+        this.count = lines.size();
+        this.pool = null;
+    }
+
+    LineBatch(ByteBuffer block, int[] bounds, int count, BufferPool pool, String sourceKey, long firstLine,
+              long blockOffset, long endOffset) {
+        this.lines = null;
+        this.sourceKey = sourceKey;
+        this.firstLine = firstLine;
+        this.blockOffset = blockOffset;
+        this.endOffset = endOffset;
+        this.block = block;
+        this.bounds = bounds;
+        this.count = count;
+        this.pool = pool;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isBytes() {
+        return block != null;
+    }
+
+    /**
+     * Memory this batch keeps alive while queued: its whole block in byte mode (off the heap
+     * for a direct block), an estimate of the Strings (one byte per char plus object headers)
+     * in string mode.
+     */
+    long heapBytes() {
+        if (block != null) {
+            return block.capacity();
+        }
+        long bytes = stringBytes;
+        if (bytes < 0) {
+            bytes = 0;
+            for (String line : lines) {
+                bytes += STRING_OVERHEAD + line.length();
+            }
+            stringBytes = bytes;  // every thread computes the same value, so a race is harmless
+        }
+        return bytes;
+    }
+
+    /** Block holding the line bytes; byte mode only. */
+    ByteBuffer block() {
+        return block;
+    }
+
+    /** Offset of line i within block(). */
+    int lineStart(int i) {
+        return bounds[2 * i];
+    }
+
+    /** Offset just past the last byte of line i within block(). */
+    int lineEnd(int i) {
+        return bounds[2 * i + 1];
+    }
+
+    /** Source offset where the line after line i starts, or -1 if offsets are not known. */
+    long resumeOffset(int i) {
+        if (blockOffset < 0) return -1;
+        return i + 1 < count ? blockOffset + bounds[2 * (i + 1)] : endOffset;
+    }
+
+    /** Done with the lines: a byte-mode block and its bounds go back to their pool. Call once. */
+    void release() {
+        if (pool != null) {
+            pool.release(block);
+            pool.releaseBounds(bounds);
+        }
+    }
+}
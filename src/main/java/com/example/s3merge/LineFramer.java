@@ -0,0 +1,276 @@
+package com.example.s3merge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits a byte stream into lines without decoding it.
+ *
+ * The stream is read straight into pooled blocks and scanned for '\n'. Every complete
+ * line is recorded as an offset/length slice of the block; when a block is full, its
+ * lines are emitted as one byte-mode LineBatch and the trailing partial line is
+ * carried into the next block. A line longer than a whole block grows the block.
+ *
+ * Line boundaries follow BufferedReader.readLine for '\n' and "\r\n" terminators:
+ * the terminator is stripped, a final line without a terminator is still a line, and
+ * a trailing terminator does not produce an empty last line. A lone '\r' is kept as
+ * line content.
+ *
+ * A framer can start part-way into an object (a ranged read from a recorded resume
+ * point): lines and byte offsets are then numbered from that point, so every batch
+ * carries its true source line numbers and offsets.
+ *
+ * The framer either pulls a whole InputStream ({@link #frame}) or is pushed the buffers
+ * of an asynchronous response ({@link #begin}, {@link #feed}, {@link #end}); both frame
+ * identically.
+ *
+ * A batch takes the block and the bounds array of its lines; both come from the pool
+ * and go back to it when the batch is released, so steady-state framing allocates
+ * neither.
+ *
+ * Blocks may be off-heap (a direct pool). A pulled stream, which can only read into an
+ * array, then goes through a small transfer array, and the bytes are scanned there
+ * before they are copied into the block; pushed heap buffers are scanned the same way.
+ */
+final class LineFramer {
+
+    /** Receives each batch as soon as its block is full. */
+    interface Sink {
+        void accept(LineBatch batch) throws InterruptedException;
+    }
+
+    private static final int INITIAL_BOUNDS = 256;
+    private static final int TRANSFER_SIZE = 64 * 1024;
+
+    private final BufferPool pool;
+    private final String sourceKey;
+    private final long skipLines;
+    private final long startOffset;
+    private final Sink sink;
+
+    private ByteBuffer block;
+    private int lineStart;      // start of the line currently being scanned
+    private int scanPos;        // first byte not yet scanned
+    private int[] bounds;       // pooled; null outside begin() .. end() or abandon()
+    private int count;
+    private long firstLine;     // line number of the first line in the current batch
+    private long blockOffset;   // source offset of the current block's position 0
+
+    private long lineNumber;    // lines seen in the stream, including skipped ones
+    private long linesEmitted;
+    private byte[] transfer;    // stream reads into direct blocks
+
+    /**
+     * @param skipLines number of leading lines to drop (already processed in an earlier run)
+     */
+    LineFramer(BufferPool pool, String sourceKey, long skipLines, Sink sink) {
+        this(pool, sourceKey, 0, 0, skipLines, sink);
+    }
+
+    /**
+     * @param startLine   number of lines before the first byte of the stream
+     * @param startOffset source offset of the first byte of the stream
+     * @param skipLines   number of leading lines of the stream to drop
+     */
+    LineFramer(BufferPool pool, String sourceKey, long startLine, long startOffset, long skipLines, Sink sink) {
+        this.pool = pool;
+        this.sourceKey = sourceKey;
+        this.lineNumber = startLine;
+        this.startOffset = startOffset;
+        this.skipLines = startLine + skipLines;
+        this.sink = sink;
+    }
+
+    /** Frames the whole stream and emits every line; returns the number of lines emitted. */
+    long frame(InputStream in) throws IOException, InterruptedException {
+        begin();
+        try {
+            while (true) {
+                if (!block.hasRemaining()) {
+                    rollBlock();
+                }
+                if (block.hasArray()) {
+                    int n = in.read(block.array(), block.arrayOffset() + block.position(), block.remaining());
+                    if (n < 0) break;
+                    block.position(block.position() + n);
+                    scan(block.array(), block.arrayOffset(), 0);
+                } else {
+                    if (transfer == null) {
+                        transfer = new byte[TRANSFER_SIZE];
+                    }
+                    int n = in.read(transfer, 0, Math.min(transfer.length, block.remaining()));
+                    if (n < 0) break;
+                    append(transfer, 0, n);
+                }
+            }
+            return end();
+        } finally {
+            abandon();
+        }
+    }
+
+    /** Starts framing a stream whose bytes are pushed with {@link #feed}. */
+    void begin() {
+        block = pool.acquire();
+        bounds = pool.acquireBounds(2 * INITIAL_BOUNDS);
+        blockOffset = startOffset;
+    }
+
+    /** Frames the next bytes of the stream; the buffer is consumed but not retained. */
+    void feed(ByteBuffer data) throws InterruptedException {
+        while (data.hasRemaining()) {
+            if (!block.hasRemaining()) {
+                rollBlock();
+            }
+            int n = Math.min(data.remaining(), block.remaining());
+            if (!block.hasArray() && data.hasArray()) {
+                append(data.array(), data.arrayOffset() + data.position(), n);
+            } else {
+                block.put(block.position(), data, data.position(), n);
+                block.position(block.position() + n);
+                scan();
+            }
+            data.position(data.position() + n);
+        }
+    }
+
+    /** Ends the stream and emits the last lines; returns the number of lines emitted. */
+    long end() throws InterruptedException {
+        finish();
+        return linesEmitted;
+    }
+
+    /** Returns the current block to the pool when a stream is given up part-way. */
+    void abandon() {
+        if (block != null) {
+            pool.release(block);
+            block = null;
+        }
+        releaseBounds();
+    }
+
+    /** Line number of the last line seen, including skipped lines and lines before the start. */
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    long linesEmitted() {
+        return linesEmitted;
+    }
+
+    // Copies bytes into a direct block, scanning them in the source array where reads are cheap
+    private void append(byte[] src, int offset, int n) {
+        int at = block.position();
+        block.put(at, src, offset, n);
+        block.position(at + n);
+        scan(src, offset - at, at);
+    }
+
+    private void scan() {
+        if (block.hasArray()) {
+            scan(block.array(), block.arrayOffset(), 0);
+            return;
+        }
+        int end = block.position();
+        for (int i = scanPos; i < end; i++) {
+            if (block.get(i) == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && block.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                addLine(lineStart, lineEnd);
+                lineStart = i + 1;
+            }
+        }
+        scanPos = end;
+    }
+
+    // Scans the unscanned bytes of the block, where block byte i >= from is a[i + shift]; the
+    // bytes before from were copied from elsewhere and are read from the block itself
+    private void scan(byte[] a, int shift, int from) {
+        int end = block.position();
+        for (int i = scanPos; i < end; i++) {
+            if (a[i + shift] == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && (lineEnd - 1 >= from ? a[lineEnd - 1 + shift] : block.get(lineEnd - 1)) == '\r') {
+                    lineEnd--;
+                }
+                addLine(lineStart, lineEnd);
+                lineStart = i + 1;
+            }
+        }
+        scanPos = end;
+    }
+
+    private void addLine(int start, int end) {
+        lineNumber++;
+        if (lineNumber <= skipLines) return;
+
+        if (count == 0) {
+            firstLine = lineNumber;
+        }
+        if (2 * count + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[2 * count] = start;
+        bounds[2 * count + 1] = end;
+        count++;
+    }
+
+    // Block is full: emit its complete lines and carry the partial line into a new block
+    private void rollBlock() throws InterruptedException {
+        ByteBuffer full = block;
+        int partial = full.position() - lineStart;
+
+        // A single line filled the whole block: grow instead of emitting
+        ByteBuffer next = count == 0 && lineStart == 0
+                ? pool.acquire(full.capacity() * 2)
+                : pool.acquire(Math.max(pool.bufferSize(), partial * 2));
+        next.put(0, full, lineStart, partial);
+        next.position(partial);
+
+        block = next;
+        long nextOffset = blockOffset + lineStart;
+        emit(full, nextOffset);
+        blockOffset = nextOffset;
+        lineStart = 0;
+        scanPos = partial;
+    }
+
+    // End of stream: a trailing line without '\n' is still a line
+    private void finish() throws InterruptedException {
+        int end = block.position();
+        if (lineStart < end) {
+            int lineEnd = end;
+            if (block.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            addLine(lineStart, lineEnd);
+        }
+        ByteBuffer last = block;
+        block = null;
+        emit(last, blockOffset + end);
+        releaseBounds();
+    }
+
+    private void releaseBounds() {
+        if (bounds != null) {
+            pool.releaseBounds(bounds);
+            bounds = null;
+        }
+    }
+
+    private void emit(ByteBuffer full, long endOffset) throws InterruptedException {
+        if (count == 0) {
+            pool.release(full);
+            return;
+        }
+        LineBatch batch = new LineBatch(full, bounds, count, pool, sourceKey, firstLine, blockOffset, endOffset);
+        linesEmitted += count;
+        bounds = pool.acquireBounds(Math.max(2 * INITIAL_BOUNDS, 2 * count));
+        count = 0;
+        sink.accept(batch);
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.s3merge;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The line queue as a pre-allocated ring of slots (queue.type=ring): many download
+ * threads put, one chunk assembler takes.
+ *
+ * Producers claim a slot with a CAS on the tail sequence and publish it by advancing
+ * the slot's own sequence, so a put allocates nothing and takes no lock. The ring is
+ * bounded twice: by its slots and by the heap the queued batches keep alive
+ * ({@link LineBatch#heapBytes()}). A batch larger than the byte bound is let in when the
+ * ring is empty, so it is delayed rather than refused.
+ *
+ * Waiting never spins for long, since there are usually far more download threads than
+ * cores: a producer that finds no room parks on a waiter list. Every take, or drain of
+ * several batches, wakes one waiter, and a producer that gets in after waiting wakes the
+ * next, so waiters are woken one at a time rather than all at once. The consumer parks
+ * when the ring is empty and the first producer to publish wakes it.
+ *
+ * Only one thread may take at a time (take, poll, drainTo, peek). There is no
+ * iterator, since the consumer owns the slots it has not yet taken.
+ */
+final class LineRing extends AbstractQueue<LineBatch> implements BlockingQueue<LineBatch> {
+
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+
+    private final LineBatch[] slots;
+    private final AtomicLongArray sequences;  // per slot: the position it is next free (== pos) or full (== pos + 1) for
+    private final int mask;
+    private final long byteCapacity;
+    private final AtomicLong tail = new AtomicLong();    // next position to claim
+    private final AtomicLong bytes = new AtomicLong();   // heap of the batches queued
+    private volatile long head;                          // next position to take; written by the consumer only
+    private final AtomicReference<Thread> waitingConsumer = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+    private volatile long peakBytes;
+
+    /**
+     * @param slots        batches the ring holds at most, rounded up to a power of two
+     * @param byteCapacity heap the queued batches may keep alive at most
+     */
+    LineRing(int slots, long byteCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.slots = new LineBatch[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.byteCapacity = Math.max(1, byteCapacity);
+    }
+
+    /** Slots in the ring. */
+    int slots() {
+        return slots.length;
+    }
+
+    long byteCapacity() {
+        return byteCapacity;
+    }
+
+    /** Heap of the batches queued right now. */
+    long queuedBytes() {
+        return bytes.get();
+    }
+
+    /** The most heap queued at any one time. */
+    long peakBytes() {
+        return peakBytes;
+    }
+
+    // ---- producers
+
+    @Override
+    public void put(LineBatch batch) throws InterruptedException {
+        offer(batch, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean offer(LineBatch batch) {
+        long n = batch.heapBytes();
+        if (!tryReserve(n)) {
+            return false;
+        }
+        if (!tryPublish(batch)) {
+            bytes.addAndGet(-n);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(LineBatch batch, long timeout, TimeUnit unit) throws InterruptedException {
+        long n = batch.heapBytes();
+        long deadline = deadline(timeout, unit);
+        if (!tryReserve(n) && !awaitRoom(() -> tryReserve(n), deadline)) {
+            return false;
+        }
+        boolean published = false;
+        try {
+            published = tryPublish(batch) || awaitRoom(() -> tryPublish(batch), deadline);
+        } finally {
+            if (!published) {
+                bytes.addAndGet(-n);
+            }
+        }
+        return published;
+    }
+
+    private interface Attempt {
+        boolean succeeded();
+    }
+
+    // The slow path of a put: spin briefly, then park on the waiter list until the consumer frees room
+    private boolean awaitRoom(Attempt attempt, long deadline) throws InterruptedException {
+        for (int i = 0; i < SPINS; i++) {
+            Thread.onSpinWait();
+            if (attempt.succeeded()) {
+                return true;
+            }
+        }
+        Thread current = Thread.currentThread();
+        while (true) {
+            waitingProducers.add(current);
+            if (attempt.succeeded()) {  // checked after registering, so a wake-up cannot be missed
+                if (!waitingProducers.remove(current)) {
+                    wakeProducer();  // the consumer picked this thread; pass its wake-up on
+                }
+                return true;
+            }
+            long remaining = remaining(deadline);
+            if (remaining <= 0) {
+                waitingProducers.remove(current);
+                return false;
+            }
+            LockSupport.parkNanos(this, remaining);
+            if (attempt.succeeded()) {
+                waitingProducers.remove(current);
+                wakeProducer();  // there may be room for the next one too
+                return true;
+            }
+            if (Thread.interrupted()) {
+                waitingProducers.remove(current);
+                wakeProducer();  // pass on a wake-up this thread may have taken
+                throw new InterruptedException();
+            }
+            waitingProducers.remove(current);  // woken but beaten to the room; register afresh
+        }
+    }
+
+    // Wakes the longest waiting producer
+    private void wakeProducer() {
+        Thread producer = waitingProducers.poll();
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    private boolean tryReserve(long n) {
+        while (true) {
+            long queued = bytes.get();
+            if (queued > 0 && queued + n > byteCapacity) {
+                return false;
+            }
+            if (bytes.compareAndSet(queued, queued + n)) {
+                if (queued + n > peakBytes) {
+                    peakBytes = queued + n;  // racy, but only ever a statistic
+                }
+                return true;
+            }
+        }
+    }
+
+    private boolean tryPublish(LineBatch batch) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) pos & mask;
+            long sequence = sequences.get(index);
+            if (sequence < pos) {
+                return false;  // the slot still holds the batch from one lap ago
+            }
+            if (sequence == pos && tail.compareAndSet(pos, pos + 1)) {
+                slots[index] = batch;
+                sequences.set(index, pos + 1);  // publishes the slot
+                Thread consumer = waitingConsumer.get();
+                if (consumer != null && waitingConsumer.compareAndSet(consumer, null)) {
+                    LockSupport.unpark(consumer);
+                }
+                return true;
+            }
+        }
+    }
+
+    // ---- consumer
+
+    @Override
+    public LineBatch poll() {
+        long pos = head;
+        int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        LineBatch batch = slots[index];
+        slots[index] = null;
+        sequences.set(index, pos + slots.length);  // free for the next lap
+        head = pos + 1;
+        bytes.addAndGet(-batch.heapBytes());
+        wakeProducer();
+        return batch;
+    }
+
+    @Override
+    public LineBatch take() throws InterruptedException {
+        return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public LineBatch poll(long timeout, TimeUnit unit) throws InterruptedException {
+        LineBatch batch = poll();
+        if (batch != null) {
+            return batch;
+        }
+        for (int i = 0; i < SPINS; i++) {
+            Thread.onSpinWait();
+            if ((batch = poll()) != null) {
+                return batch;
+            }
+        }
+        long deadline = deadline(timeout, unit);
+        Thread current = Thread.currentThread();
+        try {
+            while (true) {
+                waitingConsumer.set(current);
+                if ((batch = poll()) != null) {  // checked after registering, so a wake-up cannot be missed
+                    return batch;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long remaining = remaining(deadline);
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waitingConsumer.set(null);
+        }
+    }
+
+    @Override
+    public LineBatch peek() {
+        long pos = head;
+        int index = (int) pos & mask;
+        return sequences.get(index) == pos + 1 ? slots[index] : null;
+    }
+
+    @Override
+    public int drainTo(Collection<? super LineBatch> sink) {
+        return drainTo(sink, Integer.MAX_VALUE);
+    }
+
+    // Frees the slots as it goes, but settles the byte count and wakes a producer once per call
+    @Override
+    public int drainTo(Collection<? super LineBatch> sink, int maxElements) {
+        long pos = head;
+        long freed = 0;
+        int drained = 0;
+        while (drained < maxElements) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) {
+                break;
+            }
+            LineBatch batch = slots[index];
+            slots[index] = null;
+            sequences.set(index, pos + slots.length);
+            pos++;
+            freed += batch.heapBytes();
+            sink.add(batch);
+            drained++;
+        }
+        if (drained > 0) {
+            head = pos;
+            bytes.addAndGet(-freed);
+            wakeProducer();
+        }
+        return drained;
+    }
+
+    // ---- either side
+
+    @Override
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return slots.length - size();
+    }
+
+    @Override
+    public Iterator<LineBatch> iterator() {
+        throw new UnsupportedOperationException("LineRing cannot be iterated");
+    }
+
+    // Long.MAX_VALUE stands for no deadline at all
+    private static long deadline(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        return nanos >= Long.MAX_VALUE / 2 ? Long.MAX_VALUE : System.nanoTime() + nanos;
+    }
+
+    private static long remaining(long deadline) {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.s3merge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local record of the bucket listing, written as pages arrive, so that a restarted run
+ * takes the objects from disk and only lists what the crashed run had not reached.
+ *
+ * The file starts with a header naming the bucket and partition depth, followed by one
+ * block per listed page:
+ *   O &lt;partition&gt; &lt;key&gt; &lt;size&gt; &lt;eTag&gt;      one line per object on the page
+ *   P &lt;partition&gt; &lt;continuation token&gt;        after the last object; "-" if the partition is done
+ * Fields are tab-separated, with tab, newline and backslash escaped. A block is written
+ * in one piece, and replay only accepts objects once their page line has been read, so
+ * a page torn by a crash is listed again rather than half-used.
+ *
+ * A manifest written for another bucket or depth is discarded. The merger deletes the
+ * manifest after a run that finishes, so the next run sees the bucket as it is then.
+ */
+final class ListingManifest implements Closeable {
+
+    private static final String HEADER = "s3merge-listing-manifest 1";
+    private static final String DONE = "-";
+
+    /** How far an earlier run had listed one partition. */
+    static final class Progress {
+        long objects;
+        String token;           // where to continue listing; null once complete
+        boolean complete;
+    }
+
+    /** Receives the objects recorded in the manifest, in the order they were listed. */
+    interface Sink {
+        void object(String partition, StoredObject object) throws InterruptedException;
+    }
+
+    private final Path file;
+    private final String header;
+    private BufferedWriter writer;      // guarded by this
+
+    ListingManifest(Path file, String bucket, int depth) {
+        this.file = file;
+        this.header = HEADER + "\t" + escape(bucket) + "\t" + depth;
+    }
+
+    /**
+     * Replays a manifest left by an earlier run into the sink and returns the progress of
+     * each partition it mentions. Returns an empty map, and starts a new manifest, when
+     * there is none or it was written for another bucket or depth.
+     */
+    synchronized Map<String, Progress> replay(Sink sink) throws IOException, InterruptedException {
+        Map<String, Progress> progress = new HashMap<>();
+        boolean usable = false;
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                usable = header.equals(reader.readLine());
+                if (usable) {
+                    replayPages(reader, sink, progress);
+                }
+            }
+        }
+        if (usable) {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } else {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            writer.write(header);
+            writer.newLine();
+            writer.flush();
+        }
+        return progress;
+    }
+
+    /** Appends one listed page of a partition; nextToken is null on its last page. */
+    synchronized void page(String partition, List<StoredObject> objects, String nextToken) throws IOException {
+        if (writer == null) {
+            throw new IOException("Listing manifest is not open: " + file);
+        }
+        String p = escape(partition);
+        for (StoredObject obj : objects) {
+            writer.write("O\t" + p + "\t" + escape(obj.key()) + "\t" + obj.size() + "\t" +
+                         (obj.eTag() != null ? escape(obj.eTag()) : ""));
+            writer.newLine();
+        }
+        writer.write("P\t" + p + "\t" + (nextToken != null ? escape(nextToken) : DONE));
+        writer.newLine();
+        writer.flush();
+    }
+
+    /** Removes the manifest once the listing it records has been fully merged. */
+    synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private static void replayPages(BufferedReader reader, Sink sink, Map<String, Progress> progress)
+            throws IOException, InterruptedException {
+        List<String[]> page = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t", -1);
+            if (fields[0].equals("O") && fields.length == 5) {
+                page.add(fields);
+            } else if (fields[0].equals("P") && fields.length == 3) {
+                String partition = unescape(fields[1]);
+                Progress p = progress.computeIfAbsent(partition, k -> new Progress());
+                for (String[] o : page) {
+                    if (!o[1].equals(fields[1])) {
+                        throw new IOException("Listing manifest mixes pages of " + o[1] + " and " + fields[1]);
+                    }
+                    sink.object(partition, new StoredObject(unescape(o[2]), Long.parseLong(o[3]),
+                                                            o[4].isEmpty() ? null : unescape(o[4])));
+                    p.objects++;
+                }
+                page.clear();
+                p.complete = fields[2].equals(DONE);
+                p.token = p.complete ? null : unescape(fields[2]);
+            } else {
+                break; // torn tail
+            }
+        }
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : null;
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (sb != null) {
+                if (replacement != null) {
+                    sb.append(replacement);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb != null ? sb.toString() : value;
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.s3merge;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * ObjectStore over a local directory tree: each bucket is a directory under the
+ * root and each key is a relative path inside it. Used for on-prem staging
+ * directories and for benchmarking the pipeline at disk speed.
+ *
+ * Multipart parts are staged under {@code <root>/.multipart/<uploadId>/} and
+ * concatenated into place on completion, so a partially written object is never
+ * visible under its final key.
+ */
+public class LocalObjectStore implements ObjectStore {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final String MULTIPART_DIR = ".multipart";
+
+    private final Path root;
+
+    public LocalObjectStore(Path root) {
+        this.root = root;
+    }
+
+    private Path bucketDir(String bucket) {
+        return root.resolve(bucket);
+    }
+
+    private Path objectPath(String bucket, String key) {
+        return bucketDir(bucket).resolve(key);
+    }
+
+    private Path uploadDir(String uploadId) {
+        return root.resolve(MULTIPART_DIR).resolve(uploadId);
+    }
+
+    /**
+     * Walks only the directory the prefix names and keeps just the first page past the
+     * continuation token, so each page costs one walk of the prefix's subtree and no
+     * sort of everything in it. Directories that cannot contribute to the page (outside
+     * the prefix, wholly before the token, rolled up into a prefix already listed, or
+     * past a full page) are not entered. Staging files of in-flight puts are not listed.
+     */
+    @Override
+    public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) throws IOException {
+        Path dir = bucketDir(bucket);
+        String from = prefix != null ? prefix : "";
+        int slash = from.lastIndexOf('/');
+        Path start = slash < 0 ? dir : dir.resolve(from.substring(0, slash));
+        if (!Files.isDirectory(start)) {
+            return new ObjectListing(new ArrayList<>(), null);
+        }
+
+        // The first PAGE_SIZE + 1 entries past the token; a null value is a common prefix
+        TreeMap<String, StoredObject> page = new TreeMap<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                if (d.equals(start)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String dirKey = keyOf(d) + "/";  // every key below starts with this, so sorts at or after it
+                if (!dirKey.startsWith(from) && !from.startsWith(dirKey)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (continuationToken != null && continuationToken.compareTo(dirKey) > 0
+                        && !continuationToken.startsWith(dirKey)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                String common = dirKey.length() >= from.length() ? ObjectListing.commonPrefix(dirKey, from, delimiter) : null;
+                if (common != null) {
+                    // The whole subtree rolls up into one prefix, which its first file lists
+                    if ((continuationToken != null && common.compareTo(continuationToken) <= 0)
+                            || page.containsKey(common) || pastFullPage(common)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                } else if (pastFullPage(dirKey)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || file.getFileName().toString().contains(".tmp-")) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String key = keyOf(file);
+                if (!key.startsWith(from)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String common = ObjectListing.commonPrefix(key, prefix, delimiter);
+                String entry = common != null ? common : key;
+                if ((continuationToken != null && entry.compareTo(continuationToken) <= 0) || pastFullPage(entry)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                page.put(entry, common != null ? null : new StoredObject(key, attrs.size(), null));
+                if (page.size() > PAGE_SIZE + 1) {
+                    page.pollLastEntry();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;  // deleted or renamed into place mid-walk
+                }
+                throw e;
+            }
+
+            private String keyOf(Path p) {
+                return dir.relativize(p).toString().replace('\\', '/');
+            }
+
+            private boolean pastFullPage(String entry) {
+                return page.size() > PAGE_SIZE && entry.compareTo(page.lastKey()) > 0;
+            }
+        });
+
+        List<StoredObject> objects = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        String last = null;
+        for (Map.Entry<String, StoredObject> entry : page.entrySet()) {
+            if (objects.size() + prefixes.size() == PAGE_SIZE) {
+                return new ObjectListing(objects, prefixes, last);
+            }
+            if (entry.getValue() == null) {
+                prefixes.add(entry.getKey());
+            } else {
+                objects.add(entry.getValue());
+            }
+            last = entry.getKey();
+        }
+        return new ObjectListing(objects, prefixes, null);
+    }
+
+    @Override
+    public InputStream get(String bucket, String key) throws IOException {
+        return Files.newInputStream(objectPath(bucket, key));
+    }
+
+    @Override
+    public InputStream getRange(String bucket, String key, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(objectPath(bucket, key), StandardOpenOption.READ);
+        channel.position(start);
+        return new LimitedInputStream(Channels.newInputStream(channel), end - start + 1);
+    }
+
+    @Override
+    public void put(String bucket, String key, byte[] data) throws IOException {
+        put(bucket, key, data, data.length);
+    }
+
+    @Override
+    public void put(String bucket, String key, byte[] data, int length) throws IOException {
+        put(bucket, key, ByteBuffer.wrap(data, 0, length));
+    }
+
+    @Override
+    public void put(String bucket, String key, ByteBuffer data) throws IOException {
+        Path target = objectPath(bucket, key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + UUID.randomUUID());
+        write(temp, data);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void delete(String bucket, String key) throws IOException {
+        Files.deleteIfExists(objectPath(bucket, key));
+    }
+
+    @Override
+    public String createMultipartUpload(String bucket, String key) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Files.createDirectories(uploadDir(uploadId));
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) throws IOException {
+        return uploadPart(bucket, key, uploadId, partNumber, data, data.length);
+    }
+
+    @Override
+    public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data, int length) throws IOException {
+        return uploadPart(bucket, key, uploadId, partNumber, ByteBuffer.wrap(data, 0, length));
+    }
+
+    @Override
+    public String uploadPart(String bucket, String key, String uploadId, int partNumber, ByteBuffer data) throws IOException {
+        Path dir = uploadDir(uploadId);
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("No such upload: " + uploadId);
+        }
+        write(dir.resolve(String.valueOf(partNumber)), data);
+        return uploadId + "-" + partNumber;
+    }
+
+    // Off-heap buffers go to the file without a heap copy
+    private static void write(Path path, ByteBuffer data) throws IOException {
+        ByteBuffer remaining = data.duplicate();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (remaining.hasRemaining()) {
+                channel.write(remaining);
+            }
+        }
+    }
+
+    @Override
+    public void completeMultipartUpload(String bucket, String key, String uploadId, List<String> partETags) throws IOException {
+        Path dir = uploadDir(uploadId);
+        Path target = objectPath(bucket, key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + uploadId);
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int i = 1; i <= partETags.size(); i++) {
+                Path part = dir.resolve(String.valueOf(i));
+                if (!Files.exists(part)) {
+                    throw new IOException("Missing part " + i + " for upload " + uploadId);
+                }
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long copied = 0;
+                    while (copied < size) {
+                        copied += in.transferTo(copied, size - copied, out);
+                    }
+                }
+            }
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteUploadDir(dir);
+    }
+
+    @Override
+    public void abortMultipartUpload(String bucket, String key, String uploadId) throws IOException {
+        deleteUploadDir(uploadDir(uploadId));
+    }
+
+    private static void deleteUploadDir(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> parts = Files.list(dir)) {
+            for (Path part : (Iterable<Path>) parts::iterator) {
+                Files.deleteIfExists(part);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // Caps a stream at a fixed number of bytes for ranged reads
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.s3merge;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a bucket listing: the objects on the page, the common prefixes rolled up
+ * by a delimiter listing, and the token for the next page (null when the listing is
+ * complete).
+ */
+public final class ObjectListing {
+
+    private final List<StoredObject> objects;
+    private final List<String> commonPrefixes;
+    private final String nextContinuationToken;
+
+    public ObjectListing(List<StoredObject> objects, String nextContinuationToken) {
+        this(objects, Collections.emptyList(), nextContinuationToken);
+    }
+
+    public ObjectListing(List<StoredObject> objects, List<String> commonPrefixes, String nextContinuationToken) {
+        this.objects = Collections.unmodifiableList(objects);
+        this.commonPrefixes = Collections.unmodifiableList(commonPrefixes);
+        this.nextContinuationToken = nextContinuationToken;
+    }
+
+    public List<StoredObject> contents() {
+        return objects;
+    }
+
+    /** Prefixes ending at the first delimiter after the listed prefix; empty without a delimiter. */
+    public List<String> commonPrefixes() {
+        return commonPrefixes;
+    }
+
+    public String nextContinuationToken() {
+        return nextContinuationToken;
+    }
+
+    /**
+     * The common prefix a key is rolled up into by a delimiter listing, or null if the key
+     * is listed as an object. Shared by the backends that emulate S3 delimiter listings.
+     */
+    static String commonPrefix(String key, String prefix, String delimiter) {
+        if (delimiter == null || delimiter.isEmpty()) return null;
+        int from = prefix != null ? prefix.length() : 0;
+        int at = key.indexOf(delimiter, from);
+        return at < 0 ? null : key.substring(0, at + delimiter.length());
+    }
+}
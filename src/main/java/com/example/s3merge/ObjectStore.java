@@ -0,0 +1,106 @@
+package com.example.s3merge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage backend used by the merger for every listing, download and upload call.
+ *
+ * The S3 implementation is used in production; the local-directory and in-memory
+ * backends let the same pipeline run against on-prem staging directories or at
+ * memory speed for profiling and load tests. A "bucket" maps to whatever top-level
+ * container the backend has (an S3 bucket, a directory under the root, a map).
+ */
+public interface ObjectStore extends Closeable {
+
+    /**
+     * Lists one page of objects in key order.
+     *
+     * @param prefix            only keys starting with this prefix, or null for all keys
+     * @param continuationToken token from the previous page, or null for the first page
+     */
+    default ObjectListing list(String bucket, String prefix, String continuationToken) throws IOException {
+        return list(bucket, prefix, null, continuationToken);
+    }
+
+    /**
+     * Lists one page of objects in key order, rolling keys that contain the delimiter after
+     * the prefix up into common prefixes, as S3 does. Objects and common prefixes together
+     * fill the page.
+     *
+     * @param delimiter         usually "/", or null to list every key under the prefix
+     */
+    ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) throws IOException;
+
+    /** Opens the full object for sequential reading. */
+    InputStream get(String bucket, String key) throws IOException;
+
+    /** Opens the byte range [start, end] (inclusive, like an HTTP Range header) of an object. */
+    InputStream getRange(String bucket, String key, long start, long end) throws IOException;
+
+    /** Writes a whole object in one request. */
+    void put(String bucket, String key, byte[] data) throws IOException;
+
+    /**
+     * Writes the first length bytes of data as a whole object. The array may be reused
+     * once this returns, so it must not be retained.
+     */
+    default void put(String bucket, String key, byte[] data, int length) throws IOException {
+        put(bucket, key, length == data.length ? data : Arrays.copyOf(data, length));
+    }
+
+    /**
+     * Writes the remaining bytes of data, on or off the heap, as a whole object. The
+     * buffer's position is left alone, and it may be reused once this returns.
+     */
+    default void put(String bucket, String key, ByteBuffer data) throws IOException {
+        if (data.hasArray() && data.arrayOffset() + data.position() == 0) {
+            put(bucket, key, data.array(), data.limit());
+        } else {
+            put(bucket, key, bytes(data));
+        }
+    }
+
+    /** Deletes an object; deleting a key that does not exist is not an error. */
+    void delete(String bucket, String key) throws IOException;
+
+    /** Starts a multipart upload and returns its upload id. */
+    String createMultipartUpload(String bucket, String key) throws IOException;
+
+    /** Uploads one part (1-based part number) and returns its ETag. */
+    String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) throws IOException;
+
+    /** Uploads the first length bytes of data as one part; the array must not be retained. */
+    default String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data, int length) throws IOException {
+        return uploadPart(bucket, key, uploadId, partNumber, length == data.length ? data : Arrays.copyOf(data, length));
+    }
+
+    /** Uploads the remaining bytes of data as one part, as {@link #put(String, String, ByteBuffer)} does. */
+    default String uploadPart(String bucket, String key, String uploadId, int partNumber, ByteBuffer data) throws IOException {
+        if (data.hasArray() && data.arrayOffset() + data.position() == 0) {
+            return uploadPart(bucket, key, uploadId, partNumber, data.array(), data.limit());
+        }
+        return uploadPart(bucket, key, uploadId, partNumber, bytes(data));
+    }
+
+    /** Completes a multipart upload; partETags.get(i) is the ETag of part i + 1. */
+    void completeMultipartUpload(String bucket, String key, String uploadId, List<String> partETags) throws IOException;
+
+    /** Discards a multipart upload and any parts uploaded so far. */
+    void abortMultipartUpload(String bucket, String key, String uploadId) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    // A heap copy of the remaining bytes, for stores that only take arrays
+    private static byte[] bytes(ByteBuffer data) {
+        byte[] copy = new byte[data.remaining()];
+        data.get(data.position(), copy);
+        return copy;
+    }
+}
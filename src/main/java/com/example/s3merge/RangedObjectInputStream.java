@@ -0,0 +1,152 @@
+package com.example.s3merge;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads one object as a sequence of ranged GETs fetched in parallel.
+ *
+ * The object is cut into fixed-size ranges. Up to `parallelism` ranges are fetched
+ * ahead on the executor while the caller consumes the current one, and the ranges
+ * are handed out strictly in order, so the caller sees exactly the bytes of a single
+ * sequential GET. Lines that straddle a range edge are stitched by whoever reads the
+ * stream, as with any other read boundary.
+ *
+ * Each range is retried on its own with the merger's unlimited backoff. An object that
+ * is gone or a range that comes back short means the object changed under the read, which
+ * retrying cannot fix: the range fails at once and the reader gets the error, so the
+ * whole file attempt is retried instead. Closing the stream interrupts the ranges still
+ * in flight and stops their retries, so abandoned ranges do not hold executor threads.
+ */
+final class RangedObjectInputStream extends InputStream {
+
+    private final ObjectStore store;
+    private final String bucket;
+    private final String key;
+    private final long end;             // exclusive
+    private final int rangeSize;
+    private final int parallelism;
+    private final Executor executor;
+
+    private final ArrayDeque<FutureTask<byte[]>> window = new ArrayDeque<>();
+    private volatile boolean closed;
+    private long nextRangeStart;
+    private byte[] current = new byte[0];
+    private int pos;
+
+    /**
+     * @param start first byte to read
+     * @param size  total object size; reading stops there
+     */
+    RangedObjectInputStream(ObjectStore store, String bucket, String key, long start, long size,
+                            int rangeSize, int parallelism, Executor executor) {
+        this.store = store;
+        this.bucket = bucket;
+        this.key = key;
+        this.end = size;
+        this.rangeSize = rangeSize;
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.nextRangeStart = start;
+        fillWindow();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) return -1;
+        return current[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!ensureData()) return -1;
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - pos;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (FutureTask<byte[]> range : window) {
+            range.cancel(true);
+        }
+        window.clear();
+        current = new byte[0];
+        pos = 0;
+    }
+
+    private boolean ensureData() throws IOException {
+        while (pos == current.length) {
+            FutureTask<byte[]> next = window.poll();
+            if (next == null) return false;
+            fillWindow();
+            current = await(next);
+            pos = 0;
+        }
+        return true;
+    }
+
+    private void fillWindow() {
+        while (window.size() < parallelism && nextRangeStart < end) {
+            long rangeStart = nextRangeStart;
+            long rangeEnd = Math.min(rangeStart + rangeSize, end) - 1;
+            nextRangeStart = rangeEnd + 1;
+            // A FutureTask, unlike a CompletableFuture, interrupts its thread when cancelled
+            FutureTask<byte[]> range = new FutureTask<>(() -> S3SequentialJsonArrayMerger.withRetries(
+                "downloading bytes " + rangeStart + "-" + rangeEnd + " of " + key, () -> fetch(rangeStart, rangeEnd),
+                e -> closed || e instanceof EOFException || S3SequentialJsonArrayMerger.isNotFoundException(e)));
+            window.add(range);
+            executor.execute(range);
+        }
+    }
+
+    private byte[] fetch(long rangeStart, long rangeEnd) throws IOException {
+        if (closed) {
+            throw new InterruptedIOException("Stream closed before reading bytes " + rangeStart + "-" + rangeEnd + " of " + key);
+        }
+        try (InputStream in = store.getRange(bucket, key, rangeStart, rangeEnd)) {
+            byte[] data = in.readAllBytes();
+            if (data.length != rangeEnd - rangeStart + 1) {
+                throw new EOFException("Short range read for " + key + ": expected " + (rangeEnd - rangeStart + 1) +
+                                       " bytes at " + rangeStart + ", got " + data.length);
+            }
+            return data;
+        }
+    }
+
+    private static byte[] await(FutureTask<byte[]> range) throws IOException {
+        try {
+            return range.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a range");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Range cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.s3merge;
+
+import org.reactivestreams.Publisher;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncObjectStore backed by an S3AsyncClient. The response body is handed over as the
+ * SDK's publisher, so bytes are pulled off the connection only as fast as the line
+ * framer takes them. SDK exceptions complete the future (or the publisher) unchanged.
+ */
+public class S3AsyncObjectStore implements AsyncObjectStore {
+
+    private final S3AsyncClient s3;
+
+    public S3AsyncObjectStore(S3AsyncClient s3) {
+        this.s3 = s3;
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> get(String bucket, String key) {
+        return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build(),
+                            AsyncResponseTransformer.toPublisher())
+                 .thenApply(body -> body);
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> getRange(String bucket, String key, long start, long end) {
+        return s3.getObject(GetObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .range("bytes=" + start + "-" + end)
+                                .build(),
+                            AsyncResponseTransformer.toPublisher())
+                 .thenApply(body -> body);
+    }
+
+    @Override
+    public void close() {
+        s3.close();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.s3merge;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ObjectStore backed by a synchronous S3Client. SDK exceptions are propagated
+ * unchanged so the merger's retry classification keeps working.
+ */
+public class S3ObjectStore implements ObjectStore {
+
+    private final S3Client s3;
+
+    public S3ObjectStore(S3Client s3) {
+        this.s3 = s3;
+    }
+
+    @Override
+    public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+        ListObjectsV2Response response = s3.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(prefix)
+                .delimiter(delimiter)
+                .continuationToken(continuationToken)
+                .build());
+
+        List<StoredObject> objects = new ArrayList<>(response.contents().size());
+        for (S3Object obj : response.contents()) {
+            objects.add(new StoredObject(obj.key(), obj.size(), obj.eTag()));
+        }
+        List<String> prefixes = new ArrayList<>(response.commonPrefixes().size());
+        for (CommonPrefix common : response.commonPrefixes()) {
+            prefixes.add(common.prefix());
+        }
+        return new ObjectListing(objects, prefixes, response.nextContinuationToken());
+    }
+
+    @Override
+    public InputStream get(String bucket, String key) {
+        return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build());
+    }
+
+    @Override
+    public InputStream getRange(String bucket, String key, long start, long end) {
+        return s3.getObject(GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .build());
+    }
+
+    @Override
+    public void put(String bucket, String key, byte[] data) {
+        put(bucket, key, data, data.length);
+    }
+
+    @Override
+    public void put(String bucket, String key, byte[] data, int length) {
+        put(bucket, key, ByteBuffer.wrap(data, 0, length));
+    }
+
+    // The body is streamed from the caller's buffer rather than copied (RequestBody.fromBytes and
+    // fromByteBuffer both copy), so an off-heap part never passes through a heap array of its size
+    @Override
+    public void put(String bucket, String key, ByteBuffer data) {
+        s3.putObject(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentType("binary/octet-stream")
+                        .build(),
+                body(data));
+    }
+
+    @Override
+    public void delete(String bucket, String key) {
+        s3.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build());
+    }
+
+    @Override
+    public String createMultipartUpload(String bucket, String key) {
+        return s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .contentType("binary/octet-stream")
+                .build()).uploadId();
+    }
+
+    @Override
+    public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) {
+        return uploadPart(bucket, key, uploadId, partNumber, data, data.length);
+    }
+
+    @Override
+    public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data, int length) {
+        return uploadPart(bucket, key, uploadId, partNumber, ByteBuffer.wrap(data, 0, length));
+    }
+
+    @Override
+    public String uploadPart(String bucket, String key, String uploadId, int partNumber, ByteBuffer data) {
+        return s3.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .build(),
+                body(data)).eTag();
+    }
+
+    // A fresh stream per attempt, so the SDK can replay the body on a retry
+    private static RequestBody body(ByteBuffer data) {
+        return RequestBody.fromContentProvider(() -> new BufferInputStream(data.duplicate()), data.remaining(), "binary/octet-stream");
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    @Override
+    public void completeMultipartUpload(String bucket, String key, String uploadId, List<String> partETags) {
+        List<CompletedPart> completedParts = new ArrayList<>(partETags.size());
+        for (int i = 0; i < partETags.size(); i++) {
+            completedParts.add(CompletedPart.builder()
+                    .partNumber(i + 1)
+                    .eTag(partETags.get(i))
+                    .build());
+        }
+
+        s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder()
+                        .parts(completedParts)
+                        .build())
+                .build());
+    }
+
+    @Override
+    public void abortMultipartUpload(String bucket, String key, String uploadId) {
+        s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .build());
+    }
+
+    @Override
+    public void close() {
+        s3.close();
+    }
+}
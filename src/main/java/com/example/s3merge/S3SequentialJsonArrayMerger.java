@@ -2,19 +2,25 @@ package com.example.s3merge;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.sync.RequestBody;
+import org.reactivestreams.Publisher;
 import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 public class S3SequentialJsonArrayMerger {
 
@@ -25,25 +31,176 @@ public class S3SequentialJsonArrayMerger {
     
     // Phase 2: Concurrency configuration
     private static final int DOWNLOAD_THREADS = 25;
-    private static final int QUEUE_CAPACITY = 500;
+    static final int QUEUE_CAPACITY = 500;
     private static ExecutorService downloadExecutor;
     private static ExecutorService uploadExecutor;
+    private static ExecutorService chunkAssemblyExecutor;
+    private static ExecutorService rangeExecutor;
     private static BlockingQueue<LineBatch> lineQueue;
+    private static final AtomicLong lastChunkStamp = new AtomicLong();
+    
+    // Phase 3: Parallel upload workers (upload.threads in config.properties)
+    static final int DEFAULT_UPLOAD_THREADS = 4;
+    static int uploadThreads = DEFAULT_UPLOAD_THREADS;
+    
+    // Phase 4: Line framing mode (line.mode in config.properties). Byte mode forwards raw line
+    // slices of pooled blocks to the output; string mode decodes every line and is only worth
+    // enabling when lines must be inspected or transformed as text.
+    static final int BLOCK_SIZE = 256 * 1024;
+    static boolean byteLineMode = true;
+    static BufferPool blockPool = new BufferPool(BLOCK_SIZE, QUEUE_CAPACITY);
+    
+    // Phase 5: Streaming chunk upload (upload.part.size.mb in config.properties). Each part is
+    // shipped as soon as it fills, so a chunk is never held in memory as a whole.
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    static final int MAX_PART_SIZE = 64 * 1024 * 1024;
+    static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    static int partSize = DEFAULT_PART_SIZE;
+    // Phase 24: Part buffers are recycled across chunks, one pooled per chunk in flight
+    static BufferPool partPool;
+    
+    // Phase 6: Parts of one chunk uploaded concurrently (upload.part.concurrency in config.properties)
+    static final int DEFAULT_PART_CONCURRENCY = 4;
+    static int partConcurrency = DEFAULT_PART_CONCURRENCY;
+    
+    // Phase 5: Checkpoint entry holding the last line of a partially merged file that is already
+    // in the target bucket; a restart resumes the file after that line.
+    // Phase 8: The value is "<line>:<offset>" when the byte offset just past that line is known,
+    // so the restart reads only the rest of the object with a ranged GET.
+    static final String PROGRESS_PREFIX = "progress_";
+    
+    // Phase 5: Checkpoint entry "committing_<target key>=<target bucket>", made durable before a
+    // chunk becomes visible in the target bucket and removed in the same group commit as the
+    // progress the chunk makes durable. A restart deletes the chunks still listed, whose lines
+    // are read again, so a crash never leaves a line in the target bucket twice.
+    static final String COMMITTING_PREFIX = "committing_";
+    
+    // Phase 7: Objects of at least download.range.threshold.mb are read as parallel ranged GETs
+    // (download.range.size.mb each, download.range.parallelism ahead per object)
+    private static final int RANGE_THREADS = 16;
+    static final long DEFAULT_RANGE_THRESHOLD = 64L * 1024 * 1024;
+    static final int DEFAULT_RANGE_SIZE = 8 * 1024 * 1024;
+    static final int DEFAULT_RANGE_PARALLELISM = 4;
+    static long rangeThreshold = DEFAULT_RANGE_THRESHOLD;
+    static int rangeSize = DEFAULT_RANGE_SIZE;
+    static int rangeParallelism = DEFAULT_RANGE_PARALLELISM;
     
     // Phase 1: Thread-safe checkpoint lock
     private static final Object checkpointLock = new Object();
     
+    // Phase 10: Checkpoint changes are appended to a journal, fsynced in groups every
+    // checkpoint.journal.flush.ms and folded into checkpoint.txt once checkpoint.compact.mb
+    // of journal has built up. Null outside a run, where saveCheckpoint rewrites the file.
+    static final long DEFAULT_JOURNAL_FLUSH_MS = 100;
+    static final long DEFAULT_COMPACT_BYTES = 64L * 1024 * 1024;
+    static long journalFlushMs = DEFAULT_JOURNAL_FLUSH_MS;
+    static long compactBytes = DEFAULT_COMPACT_BYTES;
+    private static CheckpointJournal checkpointJournal;
+    
+    // Phase 11: Completed files kept in a memory-mapped binary index instead of checkpoint.txt
+    // (checkpoint.format=indexed in config.properties). Compaction folds new completions into it;
+    // an existing index is always consulted, whatever the format setting.
+    static final String CHECKPOINT_INDEX_FILE = "checkpoint.idx";
+    static boolean indexedCheckpoint = false;
+    
+    // Phase 12: How completed files are held in memory (completed.set=heap|digest), and the bits
+    // per key of an optional Bloom filter in front of checkpoint.idx (completed.bloom.bits.per.key,
+    // 0 = no filter)
+    static String completedSetType = "heap";
+    static int bloomBitsPerKey = 0;
+    
+    // Phase 13: The bucket is listed as partitions at listing.prefix.depth levels of "/" (0 = one
+    // flat listing). A partition whose objects are all merged collapses into one checkpoint entry,
+    // "prefix_<partition>=<objects>", and is never listed again; the last listing.open.prefixes
+    // partitions in key order are still being written to and are never collapsed.
+    static final String PREFIX_MARKER = "prefix_";
+    static final int DEFAULT_OPEN_PREFIXES = 1;
+    static int listingDepth = 0;
+    static int openPrefixes = DEFAULT_OPEN_PREFIXES;
+    
+    // Phase 14: Listing threads (listing.threads in config.properties) and how many listed objects
+    // may wait in the work queue for the scheduler
+    static final int DEFAULT_LISTING_THREADS = 8;
+    static final int LISTING_QUEUE_CAPACITY = 10000;
+    static int listingThreads = DEFAULT_LISTING_THREADS;
+    
+    // Phase 15: Pages each partition keeps fetched ahead of the page it is queueing
+    // (listing.prefetch.pages in config.properties)
+    static final int DEFAULT_LISTING_PREFETCH_PAGES = 2;
+    static int listingPrefetchPages = DEFAULT_LISTING_PREFETCH_PAGES;
+    
+    // Phase 16: Listed pages are recorded in listing.manifest (listing.manifest=true in
+    // config.properties) so a restart replays them instead of listing the bucket again.
+    // The manifest is deleted once a run completes.
+    static final String LISTING_MANIFEST_FILE = "listing.manifest";
+    static boolean listingManifest = false;
+    
+    // Phase 17: Objects to merge taken from an S3 Inventory report instead of listing the bucket
+    // (inventory.manifest in config.properties: a local manifest.json, or s3://bucket/key)
+    static String inventoryManifest = null;
+    
+    // Phase 18: Downloads as non-blocking GETs (download.engine=async in config.properties), up to
+    // download.async.concurrency in flight, their bodies framed on a few framing threads. main sets
+    // asyncObjectStore for S3; any other store is read through the download pool.
+    static final int DEFAULT_ASYNC_CONCURRENCY = 256;
+    private static final int FRAMING_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    static boolean asyncDownloads = false;
+    static int asyncConcurrency = DEFAULT_ASYNC_CONCURRENCY;
+    static AsyncObjectStore asyncObjectStore;
+    private static ExecutorService framingExecutor;
+    private static ScheduledExecutorService retryScheduler;
+    
+    // Phase 19: Each download and each upload request on a virtual thread of its own
+    // (execution.mode=virtual in config.properties, Java 21+), bounded by semaphores of
+    // virtual.download.concurrency and virtual.upload.concurrency instead of pool sizes
+    static final int DEFAULT_VIRTUAL_DOWNLOAD_CONCURRENCY = 1000;
+    static final int DEFAULT_VIRTUAL_UPLOAD_CONCURRENCY = 64;
+    static boolean virtualThreads = false;
+    static int virtualDownloadConcurrency = DEFAULT_VIRTUAL_DOWNLOAD_CONCURRENCY;
+    static int virtualUploadConcurrency = DEFAULT_VIRTUAL_UPLOAD_CONCURRENCY;
+    
+    // Phase 20: How many downloads run at once adapted to throughput, latency and throttling
+    // (download.concurrency.adaptive=true in config.properties), starting at
+    // download.concurrency.initial within [min, max]. The pool is resized to the limit in platform
+    // mode; the async and virtual engines keep their own concurrency as a ceiling.
+    static final int DEFAULT_INITIAL_DOWNLOAD_CONCURRENCY = DOWNLOAD_THREADS;
+    static final int DEFAULT_MIN_DOWNLOAD_CONCURRENCY = 4;
+    static final int DEFAULT_MAX_DOWNLOAD_CONCURRENCY = 512;
+    static final long CONCURRENCY_WINDOW_MS = 1000;
+    private static final int DOWNLOADS_QUEUED_PER_THREAD = 3;
+    static boolean adaptiveConcurrency = false;
+    static int initialDownloadConcurrency = DEFAULT_INITIAL_DOWNLOAD_CONCURRENCY;
+    static int minDownloadConcurrency = DEFAULT_MIN_DOWNLOAD_CONCURRENCY;
+    static int maxDownloadConcurrency = DEFAULT_MAX_DOWNLOAD_CONCURRENCY;
+    static ConcurrencyController downloadConcurrency;
+    
+    // Phase 22: Admission by bytes as well as by count (download.budget.mb and queue.budget.mb in
+    // config.properties, 0 = off). A download reserves what it can hold at once before it starts,
+    // and every queued batch the heap it keeps alive until the chunk assembler takes it.
+    static long downloadBudgetBytes = 0;
+    static long queueBudgetBytes = 0;
+    static ByteBudget downloadBudget;
+    static ByteBudget queueBudget;
+    
+    // Phase 23: The line queue as a lock-free ring bounded by slots and bytes (queue.type=ring in
+    // config.properties) instead of a LinkedBlockingQueue bounded by batches. The byte bound is
+    // queue.budget.mb, or as many full blocks as the queue has batches.
+    static boolean ringQueue = false;
+    private static final int DRAIN_BATCHES = 64;
+    
+    // Phase 25: Download blocks and upload parts off the Java heap (buffer.direct=true in
+    // config.properties). Both pools recycle their buffers, since direct memory is slow to allocate
+    // and only freed by GC; large parts and chunk sizes then no longer weigh on the heap.
+    static boolean directBuffers = false;
+    
     // Auto-resume configuration for network failures
     private static final int INITIAL_RETRY_DELAY_MS = 1000; // Start with 1 second
     private static final int MAX_RETRY_DELAY_MS = 300000; // Max 5 minutes between retries
     private static final double BACKOFF_MULTIPLIER = 2.0; // Exponential backoff
     
     // Helper method for exponential backoff with unlimited retries
-    private static void waitWithExponentialBackoff(int attemptNumber) {
-        int delayMs = (int) Math.min(
-            INITIAL_RETRY_DELAY_MS * Math.pow(BACKOFF_MULTIPLIER, attemptNumber - 1),
-            MAX_RETRY_DELAY_MS
-        );
+    static void waitWithExponentialBackoff(int attemptNumber) {
+        int delayMs = retryDelayMs(attemptNumber);
         
         log("Network issue detected. Waiting " + (delayMs / 1000) + " seconds before retry (attempt " + attemptNumber + ")...");
         
@@ -55,8 +212,15 @@ public class S3SequentialJsonArrayMerger {
         }
     }
     
+    static int retryDelayMs(int attemptNumber) {
+        return (int) Math.min(
+            INITIAL_RETRY_DELAY_MS * Math.pow(BACKOFF_MULTIPLIER, attemptNumber - 1),
+            MAX_RETRY_DELAY_MS
+        );
+    }
+    
     // Check if exception is network-related
-    private static boolean isNetworkException(Exception e) {
+    static boolean isNetworkException(Exception e) {
         String message = e.getMessage();
         if (message == null) return false;
         
@@ -70,6 +234,40 @@ public class S3SequentialJsonArrayMerger {
                e instanceof software.amazon.awssdk.core.exception.SdkClientException;
     }
 
+    // Phase 20: Check if the store asked us to slow down (S3 503 SlowDown, 429), anywhere in the cause chain
+    static boolean isThrottlingException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof software.amazon.awssdk.core.exception.SdkServiceException) {
+                software.amazon.awssdk.core.exception.SdkServiceException service =
+                    (software.amazon.awssdk.core.exception.SdkServiceException) t;
+                if (service.isThrottlingException() || service.statusCode() == 503) {
+                    return true;
+                }
+            }
+            String message = t.getMessage();
+            if (message != null && (message.contains("SlowDown") || message.contains("Slow Down"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Phase 7: Check if the object is gone (S3 NoSuchKey/404, or a missing local file)
+    static boolean isNotFoundException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof software.amazon.awssdk.services.s3.model.NoSuchKeyException ||
+                t instanceof FileNotFoundException ||
+                t instanceof java.nio.file.NoSuchFileException) {
+                return true;
+            }
+            if (t instanceof software.amazon.awssdk.core.exception.SdkServiceException &&
+                ((software.amazon.awssdk.core.exception.SdkServiceException) t).statusCode() == 404) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static void main(String[] args) {
         try {
             // Initialize log file
@@ -99,53 +297,99 @@ public class S3SequentialJsonArrayMerger {
             props.load(input);
             input.close();
 
-            String accessKey = props.getProperty("aws.accessKey");
-            String secretKey = props.getProperty("aws.secretKey");
             String regionStr = props.getProperty("aws.region");
+            String storeType = props.getProperty("store.type", "s3");
             String sourceBucket = props.getProperty("source.bucket");
             String targetBucket = props.getProperty("target.bucket");
             int chunkSize = Integer.parseInt(props.getProperty("chunk.size", "25500"));
+            uploadThreads = Math.max(1, Integer.parseInt(props.getProperty("upload.threads", String.valueOf(DEFAULT_UPLOAD_THREADS))));
+            byteLineMode = !"string".equalsIgnoreCase(props.getProperty("line.mode", "bytes"));
+            int partSizeMb = Integer.parseInt(props.getProperty("upload.part.size.mb", String.valueOf(DEFAULT_PART_SIZE / (1024 * 1024))));
+            partSize = Math.max(MIN_PART_SIZE, Math.min(MAX_PART_SIZE, partSizeMb * 1024 * 1024));
+            partConcurrency = Math.max(1, Integer.parseInt(props.getProperty("upload.part.concurrency", String.valueOf(DEFAULT_PART_CONCURRENCY))));
+            rangeThreshold = Long.parseLong(props.getProperty("download.range.threshold.mb", String.valueOf(DEFAULT_RANGE_THRESHOLD / (1024 * 1024)))) * 1024 * 1024;
+            rangeSize = Math.max(1, Integer.parseInt(props.getProperty("download.range.size.mb", String.valueOf(DEFAULT_RANGE_SIZE / (1024 * 1024))))) * 1024 * 1024;
+            rangeParallelism = Math.max(1, Integer.parseInt(props.getProperty("download.range.parallelism", String.valueOf(DEFAULT_RANGE_PARALLELISM))));
+            journalFlushMs = Math.max(1, Long.parseLong(props.getProperty("checkpoint.journal.flush.ms", String.valueOf(DEFAULT_JOURNAL_FLUSH_MS))));
+            indexedCheckpoint = "indexed".equalsIgnoreCase(props.getProperty("checkpoint.format", "text"));
+            completedSetType = props.getProperty("completed.set", "heap");
+            bloomBitsPerKey = Math.max(0, Integer.parseInt(props.getProperty("completed.bloom.bits.per.key", "0")));
+            compactBytes = Math.max(1, Long.parseLong(props.getProperty("checkpoint.compact.mb", String.valueOf(DEFAULT_COMPACT_BYTES / (1024 * 1024))))) * 1024 * 1024;
+            listingDepth = Math.max(0, Integer.parseInt(props.getProperty("listing.prefix.depth", "0")));
+            openPrefixes = Math.max(0, Integer.parseInt(props.getProperty("listing.open.prefixes", String.valueOf(DEFAULT_OPEN_PREFIXES))));
+            listingThreads = Math.max(1, Integer.parseInt(props.getProperty("listing.threads", String.valueOf(DEFAULT_LISTING_THREADS))));
+            listingPrefetchPages = Math.max(1, Integer.parseInt(props.getProperty("listing.prefetch.pages", String.valueOf(DEFAULT_LISTING_PREFETCH_PAGES))));
+            listingManifest = Boolean.parseBoolean(props.getProperty("listing.manifest", "false"));
+            inventoryManifest = props.getProperty("inventory.manifest", "").trim();
+            if (inventoryManifest.isEmpty()) {
+                inventoryManifest = null;
+            }
+            asyncDownloads = "async".equalsIgnoreCase(props.getProperty("download.engine", "blocking"));
+            asyncConcurrency = Math.max(1, Integer.parseInt(props.getProperty("download.async.concurrency", String.valueOf(DEFAULT_ASYNC_CONCURRENCY))));
+            virtualThreads = "virtual".equalsIgnoreCase(props.getProperty("execution.mode", "platform"));
+            virtualDownloadConcurrency = Math.max(1, Integer.parseInt(props.getProperty("virtual.download.concurrency", String.valueOf(DEFAULT_VIRTUAL_DOWNLOAD_CONCURRENCY))));
+            virtualUploadConcurrency = Math.max(1, Integer.parseInt(props.getProperty("virtual.upload.concurrency", String.valueOf(DEFAULT_VIRTUAL_UPLOAD_CONCURRENCY))));
+            adaptiveConcurrency = Boolean.parseBoolean(props.getProperty("download.concurrency.adaptive", "false"));
+            initialDownloadConcurrency = Math.max(1, Integer.parseInt(props.getProperty("download.concurrency.initial", String.valueOf(DEFAULT_INITIAL_DOWNLOAD_CONCURRENCY))));
+            minDownloadConcurrency = Math.max(1, Integer.parseInt(props.getProperty("download.concurrency.min", String.valueOf(DEFAULT_MIN_DOWNLOAD_CONCURRENCY))));
+            maxDownloadConcurrency = Math.max(minDownloadConcurrency, Integer.parseInt(props.getProperty("download.concurrency.max", String.valueOf(DEFAULT_MAX_DOWNLOAD_CONCURRENCY))));
+            downloadBudgetBytes = Math.max(0, Long.parseLong(props.getProperty("download.budget.mb", "0"))) * 1024 * 1024;
+            queueBudgetBytes = Math.max(0, Long.parseLong(props.getProperty("queue.budget.mb", "0"))) * 1024 * 1024;
+            ringQueue = "ring".equalsIgnoreCase(props.getProperty("queue.type", "linked"));
+            directBuffers = Boolean.parseBoolean(props.getProperty("buffer.direct", "false"));
 
             log("Configuration loaded:");
+            log("  Store: " + storeType);
             log("  Region: " + regionStr);
             log("  Source Bucket: " + sourceBucket);
             log("  Target Bucket: " + targetBucket);
             log("  Chunk Size: " + chunkSize);
-            log("  Download Threads: " + DOWNLOAD_THREADS);
-
-            AwsBasicCredentials awsCreds = AwsBasicCredentials.create(accessKey, secretKey);
-            Region region = Region.of(regionStr);
-
-            // Phase 1: Enhanced S3Client with connection pooling
-            S3Client s3 = S3Client.builder()
-                    .region(region)
-                    .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
-                    .httpClientBuilder(ApacheHttpClient.builder()
-                        .maxConnections(100)
-                        .connectionTimeout(Duration.ofSeconds(30))
-                        .socketTimeout(Duration.ofSeconds(60))
-                        .tcpKeepAlive(true))
-                    .build();
-
-            log("S3 Client initialized with connection pooling (max 100 connections)");
-            
-            // Phase 2: Initialize thread pools
-            downloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREADS);
-            uploadExecutor = Executors.newSingleThreadExecutor();
-            lineQueue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
-            log("Thread pools initialized: " + DOWNLOAD_THREADS + " download threads, 1 upload thread");
-            
-            log("Starting bucket processing...");
+            log("  Download Threads: " + (virtualThreads
+                ? "virtual, " + virtualDownloadConcurrency + " downloads and " + virtualUploadConcurrency + " upload requests at a time"
+                : String.valueOf(DOWNLOAD_THREADS)));
+            if (asyncDownloads) {
+                log("  Download Engine: async, " + asyncConcurrency + " GETs in flight on " + FRAMING_THREADS +
+                    " framing threads" + (byteLineMode ? "" : " (lines are framed as bytes)"));
+            }
+            if (adaptiveConcurrency) {
+                log("  Download Concurrency: adaptive, starting at " + initialDownloadConcurrency + " within [" +
+                    minDownloadConcurrency + ", " + maxDownloadConcurrency + "]");
+            }
+            if (downloadBudgetBytes > 0 || queueBudgetBytes > 0) {
+                log("  Memory Budget: " + (downloadBudgetBytes > 0 ? formatBytes(downloadBudgetBytes) : "unbounded") +
+                    " for downloads, " + (queueBudgetBytes > 0 ? formatBytes(queueBudgetBytes) : "unbounded") + " for queued lines");
+            }
+            log("  Line Queue: " + (ringQueue ? "ring" : "linked"));
+            log("  Buffers: " + (directBuffers ? "direct (off-heap)" : "heap"));
+            log("  Upload Threads: " + uploadThreads);
+            log("  Line Mode: " + (byteLineMode ? "bytes" : "string"));
+            log("  Upload Part Size: " + formatBytes(partSize));
+            log("  Upload Part Concurrency: " + partConcurrency);
+            log("  Ranged Download: objects >= " + formatBytes(rangeThreshold) + " in " + formatBytes(rangeSize) +
+                " ranges, " + rangeParallelism + " ahead");
+            log("  Checkpoint Journal: fsync every " + journalFlushMs + " ms, compact at " + formatBytes(compactBytes));
+            log("  Checkpoint Format: " + (indexedCheckpoint ? "indexed" : "text"));
+            log("  Completed Set: " + completedSetType +
+                (bloomBitsPerKey > 0 ? ", Bloom filter " + bloomBitsPerKey + " bits/key on " + CHECKPOINT_INDEX_FILE : ""));
+            log("  Listing: " + (listingDepth > 0
+                ? "partitions at prefix depth " + listingDepth + ", last " + openPrefixes + " kept open"
+                : "whole bucket") + ", " + listingThreads + " threads, " + listingPrefetchPages + " pages prefetched" +
+                (listingManifest ? ", manifest in " + LISTING_MANIFEST_FILE : ""));
+            if (inventoryManifest != null) {
+                log("  Inventory: " + inventoryManifest + " (no bucket listing)");
+            }
 
-            processBucket(s3, sourceBucket, targetBucket, chunkSize);
-            
-            // Shutdown thread pools gracefully
-            downloadExecutor.shutdown();
-            uploadExecutor.shutdown();
-            downloadExecutor.awaitTermination(5, TimeUnit.MINUTES);
-            uploadExecutor.awaitTermination(5, TimeUnit.MINUTES);
+            ObjectStore store = createObjectStore(props, storeType);
+            if (asyncDownloads && "s3".equalsIgnoreCase(storeType)) {
+                asyncObjectStore = createAsyncObjectStore(props);
+            }
+
+            run(store, sourceBucket, targetBucket, chunkSize);
             
-            s3.close();
+            store.close();
+            if (asyncObjectStore != null) {
+                asyncObjectStore.close();
+            }
             log("=== Processing Completed Successfully ===");
             
         } catch (Exception e) {
@@ -157,6 +401,8 @@ public class S3SequentialJsonArrayMerger {
             
             // Ensure thread pools are shut down
             if (downloadExecutor != null) downloadExecutor.shutdownNow();
+            if (chunkAssemblyExecutor != null) chunkAssemblyExecutor.shutdownNow();
+            if (rangeExecutor != null) rangeExecutor.shutdownNow();
             if (uploadExecutor != null) uploadExecutor.shutdownNow();
             
             System.exit(1);
@@ -167,13 +413,160 @@ public class S3SequentialJsonArrayMerger {
         }
     }
 
+    // Build the storage backend selected by store.type (s3 or local)
+    private static ObjectStore createObjectStore(Properties props, String storeType) {
+        if ("local".equalsIgnoreCase(storeType)) {
+            String root = props.getProperty("store.local.root", ".");
+            log("Local object store initialized at: " + Paths.get(root).toAbsolutePath());
+            return new LocalObjectStore(Paths.get(root));
+        }
+        if (!"s3".equalsIgnoreCase(storeType)) {
+            throw new IllegalArgumentException("Unknown store.type: " + storeType + " (expected s3 or local)");
+        }
+
+        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(
+                props.getProperty("aws.accessKey"), props.getProperty("aws.secretKey"));
+        Region region = Region.of(props.getProperty("aws.region"));
+
+        // Phase 1: Enhanced S3Client with connection pooling
+        S3Client s3 = S3Client.builder()
+                .region(region)
+                .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
+                .httpClientBuilder(ApacheHttpClient.builder()
+                    .maxConnections(100)
+                    .connectionTimeout(Duration.ofSeconds(30))
+                    .socketTimeout(Duration.ofSeconds(60))
+                    .tcpKeepAlive(true))
+                .build();
+
+        log("S3 Client initialized with connection pooling (max 100 connections)");
+        return new S3ObjectStore(s3);
+    }
+
+    // Phase 18: S3AsyncClient for the async download engine, one connection per GET in flight
+    private static AsyncObjectStore createAsyncObjectStore(Properties props) {
+        S3AsyncClient s3 = S3AsyncClient.builder()
+                .region(Region.of(props.getProperty("aws.region")))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                    props.getProperty("aws.accessKey"), props.getProperty("aws.secretKey"))))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                    .maxConcurrency(asyncConcurrency)
+                    .connectionTimeout(Duration.ofSeconds(30))
+                    .readTimeout(Duration.ofSeconds(60))
+                    .tcpKeepAlive(true))
+                .build();
+
+        log("S3 async client initialized (max " + asyncConcurrency + " concurrent requests)");
+        return new S3AsyncObjectStore(s3);
+    }
+
+    // Run the full merge against any store: set up thread pools, process, shut down
+    static void run(ObjectStore store, String sourceBucket, String targetBucket, int chunkSize) throws Exception {
+        // Phase 2: Initialize thread pools
+        // Phase 19: or thread-per-task executors on virtual threads
+        if (virtualThreads) {
+            downloadExecutor = VirtualThreads.newExecutor("download", virtualDownloadConcurrency);
+            uploadExecutor = VirtualThreads.newExecutor("upload", virtualUploadConcurrency);
+        } else {
+            downloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREADS);
+            uploadExecutor = Executors.newFixedThreadPool(uploadThreads);
+        }
+        chunkAssemblyExecutor = Executors.newSingleThreadExecutor();
+        // Phase 25: on or off the heap
+        blockPool = new BufferPool(BLOCK_SIZE, QUEUE_CAPACITY, directBuffers);
+        partPool = new BufferPool(partSize, uploadThreads * 2, directBuffers);
+        rangeExecutor = Executors.newFixedThreadPool(RANGE_THREADS);
+        // Phase 23: or a ring that enforces the queue's byte bound itself
+        lineQueue = ringQueue
+            ? new LineRing(QUEUE_CAPACITY, queueBudgetBytes > 0 ? queueBudgetBytes : (long) QUEUE_CAPACITY * BLOCK_SIZE)
+            : new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        if (virtualThreads) {
+            log("Thread-per-task executors initialized on " + (VirtualThreads.available() ? "virtual" : "platform (no Java 21 runtime)") +
+                " threads: " + virtualDownloadConcurrency + " downloads, " + virtualUploadConcurrency + " upload requests at a time");
+        } else {
+            log("Thread pools initialized: " + DOWNLOAD_THREADS + " download threads, " + uploadThreads + " upload threads");
+        }
+        AsyncObjectStore asyncStore = null;
+        if (asyncDownloads) {
+            framingExecutor = Executors.newFixedThreadPool(FRAMING_THREADS);
+            retryScheduler = Executors.newSingleThreadScheduledExecutor();
+            asyncStore = asyncObjectStore != null ? asyncObjectStore : AsyncObjectStore.of(store, downloadExecutor);
+            log("Async downloads: up to " + asyncConcurrency + " in flight, " + FRAMING_THREADS + " framing threads");
+        }
+        downloadBudget = downloadBudgetBytes > 0 ? new ByteBudget(downloadBudgetBytes) : null;
+        queueBudget = queueBudgetBytes > 0 && !ringQueue ? new ByteBudget(queueBudgetBytes) : null;
+        downloadConcurrency = null;
+        if (adaptiveConcurrency) {
+            // Phase 20: Only a fixed pool has to follow the limit; the other engines start one task per download
+            ThreadPoolExecutor pool = asyncDownloads || virtualThreads ? null : (ThreadPoolExecutor) downloadExecutor;
+            int ceiling = downloadCeiling();
+            downloadConcurrency = new ConcurrencyController(Math.min(initialDownloadConcurrency, ceiling),
+                Math.min(minDownloadConcurrency, ceiling), ceiling, CONCURRENCY_WINDOW_MS,
+                limit -> {
+                    if (pool != null) {
+                        resizePool(pool, limit);
+                    }
+                });
+            if (pool != null) {
+                resizePool(pool, downloadConcurrency.currentLimit());
+            }
+            log("Adaptive download concurrency: " + downloadConcurrency.currentLimit() + " to start, at most " + ceiling);
+        }
+        
+        log("Starting bucket processing...");
+
+        try {
+            processBucket(store, asyncStore, sourceBucket, targetBucket, chunkSize);
+        } finally {
+            // Shutdown thread pools gracefully
+            downloadExecutor.shutdown();
+            chunkAssemblyExecutor.shutdown();
+            uploadExecutor.shutdown();
+            rangeExecutor.shutdown();
+            downloadExecutor.awaitTermination(5, TimeUnit.MINUTES);
+            chunkAssemblyExecutor.awaitTermination(5, TimeUnit.MINUTES);
+            uploadExecutor.awaitTermination(5, TimeUnit.MINUTES);
+            rangeExecutor.awaitTermination(5, TimeUnit.MINUTES);
+            if (framingExecutor != null) {
+                retryScheduler.shutdownNow();
+                framingExecutor.shutdown();
+                framingExecutor.awaitTermination(5, TimeUnit.MINUTES);
+                framingExecutor = null;
+                retryScheduler = null;
+            }
+            closeCheckpointJournal();
+        }
+    }
+
+    // Phase 20: The most downloads the adaptive limit may allow on this engine
+    private static int downloadCeiling() {
+        int ceiling = maxDownloadConcurrency;
+        if (asyncDownloads) {
+            ceiling = Math.min(ceiling, asyncConcurrency);
+        } else if (virtualThreads) {
+            ceiling = Math.min(ceiling, virtualDownloadConcurrency);
+        }
+        return Math.max(1, ceiling);
+    }
+
+    // Resize a fixed pool, keeping core <= maximum at every step
+    static void resizePool(ThreadPoolExecutor pool, int size) {
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
     private static void initializeLogger() throws IOException {
         String logFileName = "s3-merger-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".log";
         logWriter = new PrintWriter(new FileWriter(logFileName, true), true);
         log("Log file created: " + logFileName);
     }
 
-    private static void log(String message) {
+    static void log(String message) {
         String timestamp = LOG_DATE_FORMAT.format(new Date());
         String logMessage = "[" + timestamp + "] " + message;
         System.out.println(logMessage);
@@ -182,20 +575,39 @@ public class S3SequentialJsonArrayMerger {
         }
     }
 
-    private static void processBucket(S3Client s3, String sourceBucket, String targetBucket, int chunkSize) throws IOException, InterruptedException, ExecutionException {
-        String continuationToken = null;
+    private static void processBucket(ObjectStore store, AsyncObjectStore asyncStore, String sourceBucket, String targetBucket, int chunkSize) throws IOException, InterruptedException, ExecutionException {
         Map<String, String> checkpoint = loadCheckpoint();
+        checkpointJournal = new CheckpointJournal(Paths.get(CHECKPOINT_FILE),
+                                                  indexedCheckpoint ? Paths.get(CHECKPOINT_INDEX_FILE) : null,
+                                                  checkpoint, checkpointLock, journalFlushMs, compactBytes);
+        CheckpointIndex completedIndex = CheckpointIndex.open(Paths.get(CHECKPOINT_INDEX_FILE));
+        discardUncommittedChunks(store, checkpoint);
 
-        // OPTIMIZATION: Build a HashSet of completed file keys for O(1) lookup
-        Set<String> completedFiles = new HashSet<>();
+        // OPTIMIZATION: Build a set of completed file keys for O(1) lookup
+        CompletedSet completedFiles = CompletedSet.create(completedSetType, checkpoint.size());
         for (Map.Entry<String, String> entry : checkpoint.entrySet()) {
             String key = entry.getKey();
-            // Only add actual file keys (not buffer entries)
-            if (!key.startsWith("buffer") && !key.equals("bufferCount") && !key.equals("lastSourceKey")) {
+            // Only add actual file keys (not buffer or progress entries)
+            if (isCompletedFileEntry(key)) {
                 completedFiles.add(key);
             }
         }
-        log("Loaded checkpoint with " + completedFiles.size() + " completed files");
+        log("Loaded checkpoint with " + completedFiles.size() + " completed files" +
+            (completedIndex.size() > 0 ? " (+ " + completedIndex.size() + " in " + CHECKPOINT_INDEX_FILE + ")" : ""));
+        
+        // Phase 12: Objects that were never completed are the common case after a restart; the filter
+        // answers most of them without a lookup in the mapped index
+        BloomFilter indexFilter = null;
+        if (bloomBitsPerKey > 0 && completedIndex.size() > 0) {
+            indexFilter = BloomFilter.of(completedIndex, bloomBitsPerKey);
+            log("Built Bloom filter over " + CHECKPOINT_INDEX_FILE + " (" + formatBytes(indexFilter.sizeBytes()) + ")");
+        }
+        
+        // Phase 13: Completed prefixes are left out of the listing altogether
+        Set<String> completedPrefixes = completedPrefixes(checkpoint);
+        if (!completedPrefixes.isEmpty()) {
+            log("Skipping " + completedPrefixes.size() + " completed prefixes");
+        }
 
         int bufferCount = checkpoint.containsKey("bufferCount") ? Integer.parseInt(checkpoint.get("bufferCount")) : 0;
         List<String> restoredBuffer = new ArrayList<>();
@@ -217,93 +629,120 @@ public class S3SequentialJsonArrayMerger {
 
         long lastCheckpointTime = System.currentTimeMillis();
         int filesProcessed = 0;
-        int filesSkipped = 0;
-        int totalFilesListed = 0;
+        int filesScheduled = 0;
         long totalLinesProcessed = 0;
         int chunksUploaded = 0;
 
-        log("Listing objects in source bucket: " + sourceBucket);
-        
         // Phase 2: Start async upload worker WITH restored buffer and lastSourceKey
         AtomicInteger uploadedChunks = new AtomicInteger(0);
-        Future<?> uploadWorker = uploadExecutor.submit(() -> 
-            uploadWorkerTask(s3, targetBucket, lineQueue, chunkSize, uploadedChunks, checkpoint, restoredBuffer, restoredLastSourceKey)
+        PrefixLedger prefixLedger = new PrefixLedger(checkpoint, listingDepth);
+        ChunkLedger ledger = new ChunkLedger(checkpoint, completedFiles, prefixLedger, uploadThreads * 2, restoredBuffer.size());
+        Future<?> uploadWorker = chunkAssemblyExecutor.submit(() -> 
+            uploadWorkerTask(store, targetBucket, lineQueue, chunkSize, uploadedChunks, checkpoint, ledger, restoredBuffer, restoredLastSourceKey)
         );
 
         // Phase 2: Track download futures for concurrency control
-        List<Future<FileProcessResult>> downloadFutures = new ArrayList<>();
+        // Phase 21: in the order they finish, so a slow object only holds up its own slot
+        BlockingQueue<Future<FileProcessResult>> finishedDownloads = new LinkedBlockingQueue<>();
+        CompletionService<FileProcessResult> downloads = new ExecutorCompletionService<>(downloadExecutor, finishedDownloads);
+        int downloadsInFlight = 0;
+        int maxDownloadsInFlight = asyncStore != null ? asyncConcurrency
+                                 : virtualThreads ? virtualDownloadConcurrency : DOWNLOAD_THREADS * DOWNLOADS_QUEUED_PER_THREAD;
+        // Phase 20: or as many as the adaptive limit allows, with a queue ahead of a platform pool
+        ConcurrencyController concurrency = downloadConcurrency;
+        ByteBudget budget = downloadBudget;
+        int queuedPerDownload = asyncStore == null && !virtualThreads ? DOWNLOADS_QUEUED_PER_THREAD : 1;
 
-        do {
-            int listAttemptNumber = 0;
-            ListObjectsV2Response listRes = null;
-            
-            // Retry S3 listing with exponential backoff for network resilience
-            while (listRes == null) {
-                listAttemptNumber++;
-                try {
-                    ListObjectsV2Request listReq = ListObjectsV2Request.builder()
-                            .bucket(sourceBucket)
-                            .continuationToken(continuationToken)
-                            .build();
-
-                    listRes = s3.listObjectsV2(listReq);
-                    
-                } catch (Exception e) {
-                    if (isNetworkException(e)) {
-                        log("⚠ Network error listing bucket objects: " + e.getMessage());
-                        
-                        // Save checkpoint before long wait
-                        synchronized (checkpointLock) {
-                            saveCheckpoint(checkpoint);
-                        }
-                        
-                        waitWithExponentialBackoff(listAttemptNumber);
-                        log("↻ Retrying bucket listing...");
-                    } else {
-                        log("ERROR listing bucket: " + e.getMessage());
-                        e.printStackTrace();
-                        if (logWriter != null) {
-                            e.printStackTrace(logWriter);
-                        }
-                        waitWithExponentialBackoff(listAttemptNumber);
-                    }
+        // Phase 14: Partitions are listed concurrently into a shared work queue; the listing threads
+        // drop completed objects, so only work to do reaches this loop
+        BloomFilter filter = indexFilter;
+        BucketLister lister = new BucketLister(store, sourceBucket,
+            key -> completedFiles.contains(key) || BucketLister.isCovered(key, completedPrefixes) ||
+                   ((filter == null || filter.mightContain(key)) && completedIndex.contains(key)),
+            listingThreads, LISTING_QUEUE_CAPACITY, listingPrefetchPages);
+        ListingManifest manifest = listingManifest && inventoryManifest == null
+            ? new ListingManifest(Paths.get(LISTING_MANIFEST_FILE), sourceBucket, listingDepth) : null;
+        try {
+            if (inventoryManifest != null) {
+                // Phase 17: The inventory report is the work list; the bucket is never listed
+                InventoryManifest inventory = InventoryManifest.load(inventoryManifest, store);
+                if (!inventory.sourceBucket.equals(sourceBucket)) {
+                    throw new IllegalArgumentException("Inventory " + inventoryManifest + " is for bucket " +
+                                                       inventory.sourceBucket + ", not " + sourceBucket);
                 }
+                log("Reading " + inventory.files.size() + " inventory files of " + sourceBucket +
+                    " (" + listingThreads + " threads)");
+                lister.start(inventory);
+            } else {
+                log("Listing objects in source bucket: " + sourceBucket + " (" + listingThreads + " listing threads)");
+                List<BucketLister.Partition> partitions = lister.partitions(listingDepth, openPrefixes, completedPrefixes);
+                if (listingDepth > 0) {
+                    log("Found " + partitions.size() + " partitions to list at prefix depth " + listingDepth);
+                }
+                lister.start(partitions, manifest);
             }
-            
-            continuationToken = listRes.nextContinuationToken();
-
-            for (S3Object obj : listRes.contents()) {
-                String key = obj.key();
-                totalFilesListed++;
-
-                // OPTIMIZATION: Check if file is in completed set - O(1) operation, NO S3 download!
-                if (completedFiles.contains(key)) {
-                    filesSkipped++;
-                    // Log progress every 1000 skipped files
-                    if (filesSkipped % 1000 == 0) {
-                        log("Fast-skipped " + filesSkipped + " completed files (checkpoint-only check, no downloads)...");
+
+            for (BucketLister.Listed listed = lister.take(); listed != BucketLister.END; listed = lister.take()) {
+                BucketLister.Partition partition = listed.partition;
+                if (listed.object == null) {
+                    if (partition.sealable) {
+                        prefixLedger.listingDone(partition.prefix, listed.objects);
                     }
-                    continue; // Skip to next file WITHOUT downloading from S3
+                    continue;
                 }
 
                 // File is not in checkpoint OR partially processed - process it
-                long fileSize = obj.size();
-                long lastLineProcessed = checkpoint.containsKey(key) ? Long.parseLong(checkpoint.get(key)) : 0;
+                String key = listed.object.key();
+                long fileSize = listed.object.size();
+                String progress = checkpoint.get(PROGRESS_PREFIX + key);
+                long lastLineProcessed = progress != null ? progressLine(progress) : 0;
+                long resumeOffset = progress != null ? progressOffset(progress) : 0;
+                if (partition.sealable) {
+                    prefixLedger.scheduled(partition.prefix);
+                }
+                filesScheduled++;
 
-                log("Processing file [" + (filesProcessed + 1) + "/" + (totalFilesListed - filesSkipped) + " new]: " + key + 
+                log("Processing file [" + (filesProcessed + 1) + "/" + filesScheduled + " new]: " + key + 
                     " (Size: " + formatBytes(fileSize) + ")" +
                     (lastLineProcessed > 0 ? " [Resuming from line " + lastLineProcessed + "]" : ""));
 
                 // Phase 2: Submit download task to thread pool
-                Future<FileProcessResult> future = downloadExecutor.submit(() -> 
-                    downloadAndProcessFile(s3, sourceBucket, key, fileSize, lastLineProcessed, lineQueue, checkpoint, completedFiles)
-                );
-                downloadFutures.add(future);
+                // Phase 18: or start it as a non-blocking GET
+                // Phase 22: once what it will hold fits in the budget; the download gives it back when done
+                long reserved = budget != null ? downloadReservation(fileSize, resumeOffset, asyncStore != null) : 0;
+                if (budget != null) {
+                    budget.acquire(reserved);
+                }
+                if (asyncStore != null) {
+                    CompletableFuture<FileProcessResult> future = downloadAndProcessFileAsync(asyncStore, sourceBucket, key, fileSize,
+                        lastLineProcessed, resumeOffset, lineQueue, checkpoint, ledger);
+                    future.whenComplete((result, error) -> {
+                        if (budget != null) {
+                            budget.release(reserved);
+                        }
+                        finishedDownloads.add(future);
+                    });
+                } else {
+                    downloads.submit(() -> {
+                        try {
+                            return downloadAndProcessFile(store, sourceBucket, key, fileSize, lastLineProcessed, resumeOffset, lineQueue, checkpoint, ledger);
+                        } finally {
+                            if (budget != null) {
+                                budget.release(reserved);
+                            }
+                        }
+                    });
+                }
+                downloadsInFlight++;
                 
-                // Limit in-flight downloads to prevent memory overflow
-                if (downloadFutures.size() >= DOWNLOAD_THREADS * 3) {
-                    FileProcessResult result = downloadFutures.get(0).get();
-                    downloadFutures.remove(0);
+                // Limit in-flight downloads to prevent memory overflow: collect whatever has finished,
+                // and wait for the next download to finish, whichever it is, only while at the limit
+                Future<FileProcessResult> finished;
+                while ((finished = downloadsInFlight >=
+                            (concurrency != null ? concurrency.limit() * queuedPerDownload : maxDownloadsInFlight)
+                        ? finishedDownloads.take() : finishedDownloads.poll()) != null) {
+                    downloadsInFlight--;
+                    FileProcessResult result = finished.get();
                     
                     if (result != null && result.success) {
                         filesProcessed++;
@@ -312,21 +751,26 @@ public class S3SequentialJsonArrayMerger {
                         // Periodic checkpoint save
                         if (filesProcessed % 100 == 0 || 
                             System.currentTimeMillis() - lastCheckpointTime > CHECKPOINT_SAVE_INTERVAL_MS) {
-                            saveCheckpoint(checkpoint);
+                            syncCheckpoint(checkpoint);
                             lastCheckpointTime = System.currentTimeMillis();
                             log("Checkpoint saved. Processed: " + filesProcessed + 
-                                ", Skipped: " + filesSkipped + ", Chunks uploaded: " + uploadedChunks.get());
+                                ", Skipped: " + lister.skippedCount() + ", Chunks uploaded: " + uploadedChunks.get() +
+                                (concurrency != null ? ", Download concurrency: " + concurrency.currentLimit() : ""));
                         }
                     }
                 }
             }
-
-        } while (continuationToken != null);
+        } finally {
+            lister.close();
+            if (manifest != null) {
+                manifest.close();
+            }
+        }
 
         // Wait for all downloads to complete
         log("Waiting for all downloads to complete...");
-        for (Future<FileProcessResult> future : downloadFutures) {
-            FileProcessResult result = future.get();
+        for (; downloadsInFlight > 0; downloadsInFlight--) {
+            FileProcessResult result = finishedDownloads.take().get();
             if (result != null && result.success) {
                 filesProcessed++;
                 totalLinesProcessed += result.linesRead;
@@ -334,22 +778,49 @@ public class S3SequentialJsonArrayMerger {
         }
         
         // Signal upload worker to finish
-        lineQueue.put(new LineBatch(Collections.emptyList(), null)); // Poison pill
+        lineQueue.put(new LineBatch(Collections.emptyList(), null, 0)); // Poison pill
         uploadWorker.get(); // Wait for upload worker
         
-        saveCheckpoint(checkpoint);
+        closeCheckpointJournal();
+        // Phase 5: Nothing after a failed chunk was applied, so the run is incomplete; the listing
+        // manifest stays so the next run resumes this listing and merges the rest
+        List<String> abandonedChunks = ledger.abandonedChunks();
+        if (!abandonedChunks.isEmpty()) {
+            log("✗ ERROR: " + abandonedChunks.size() + " chunk(s) failed to upload: " + abandonedChunks);
+            log("  Progress was recorded up to the first of them; run again to merge the remaining lines");
+            throw new IOException(abandonedChunks.size() + " chunk(s) failed to upload: " + abandonedChunks);
+        }
+        if (manifest != null) {
+            manifest.delete(); // everything listed is merged; the next run lists afresh
+        }
         log("=== Summary ===");
-        log("Total files listed: " + totalFilesListed);
-        log("Files skipped (already complete): " + filesSkipped);
+        log("Total files listed: " + lister.listedCount());
+        log("Files skipped (already complete): " + lister.skippedCount());
         log("Files processed: " + filesProcessed);
         log("Total lines processed: " + totalLinesProcessed);
         log("Total chunks uploaded: " + uploadedChunks.get());
         log("Average lines per file: " + (filesProcessed > 0 ? totalLinesProcessed / filesProcessed : 0));
-        log("Final checkpoint size: " + formatBytes(new File(CHECKPOINT_FILE).length()));
+        if (concurrency != null) {
+            log("Download concurrency: " + concurrency.currentLimit() + " at the end, " + concurrency.peakLimit() + " at peak");
+        }
+        if (budget != null) {
+            log("Download budget: " + formatBytes(budget.peak()) + " of " + formatBytes(budget.capacity()) + " at peak");
+        }
+        if (queueBudget != null) {
+            log("Queue budget: " + formatBytes(queueBudget.peak()) + " of " + formatBytes(queueBudget.capacity()) + " at peak");
+        }
+        if (lineQueue instanceof LineRing) {
+            LineRing ring = (LineRing) lineQueue;
+            log("Line ring: " + formatBytes(ring.peakBytes()) + " of " + formatBytes(ring.byteCapacity()) + " at peak, " +
+                ring.slots() + " slots");
+        }
+        log("Final checkpoint size: " + formatBytes(new File(CHECKPOINT_FILE).length()) +
+            (new File(CHECKPOINT_INDEX_FILE).exists()
+                ? " (+ " + formatBytes(new File(CHECKPOINT_INDEX_FILE).length()) + " index)" : ""));
     }
 
     // Phase 2: File processing result class
-    private static class FileProcessResult {
+    static class FileProcessResult {
         boolean success;
         String key;
         long linesRead;
@@ -361,81 +832,107 @@ public class S3SequentialJsonArrayMerger {
         }
     }
 
-    // Wrapper class to pass lines with source file key
-    private static class LineBatch {
-        List<String> lines;
-        String sourceKey;
-        
-        LineBatch(List<String> lines, String sourceKey) {
-            this.lines = lines;
-            this.sourceKey = sourceKey;
-        }
-    }
-
     // Phase 2: Download and process file in parallel with unlimited retries
-    private static FileProcessResult downloadAndProcessFile(S3Client s3, String sourceBucket, String key, 
-                                                            long fileSize, long lastLineProcessed,
+    // Phase 5: The file only counts as complete once the ledger has seen its last line uploaded
+    // Phase 8: resumeOffset is the byte offset just past lastLineProcessed (-1 if unknown); when known,
+    // only the rest of the object is downloaded
+    static FileProcessResult downloadAndProcessFile(ObjectStore store, String sourceBucket, String key, 
+                                                            long fileSize, long lastLineProcessed, long resumeOffset,
                                                             BlockingQueue<LineBatch> queue,
                                                             Map<String, String> checkpoint,
-                                                            Set<String> completedFiles) {
+                                                            ChunkLedger ledger) {
         log("Processing file: " + key + " (Size: " + formatBytes(fileSize) + ")" +
-            (lastLineProcessed > 0 ? " [Resuming from line " + lastLineProcessed + "]" : ""));
+            (lastLineProcessed > 0 ? " [Resuming from line " + lastLineProcessed + 
+                                     (resumeOffset >= 0 ? " at byte " + resumeOffset : "") + "]" : ""));
 
         int attemptNumber = 0;
+        // Where the next attempt starts: the last line already handed to the queue and, when known, the
+        // byte offset just past it. A retry must not send those lines again.
+        AtomicLong linesQueued = new AtomicLong();
+        AtomicLong queuedThroughLine = new AtomicLong(lastLineProcessed);
+        AtomicLong queuedThroughOffset = new AtomicLong(lastLineProcessed == 0 ? 0 : resumeOffset);
         
         // Unlimited retries with exponential backoff for network resilience
         while (true) {
             attemptNumber++;
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(
-                    s3.getObject(GetObjectRequest.builder().bucket(sourceBucket).key(key).build()),
-                    StandardCharsets.UTF_8))) {
-
-                long lineNum = 0;
-                String line;
-                long linesInThisFile = 0;
-                List<String> batch = new ArrayList<>();
+            long startLine = queuedThroughLine.get();
+            long startOffset = queuedThroughOffset.get();
+            boolean ranged = startOffset >= 0;
+            long started = System.nanoTime();
+            try (InputStream in = metered(openSource(store, sourceBucket, key, fileSize, ranged ? startOffset : 0), started)) {
+
+                // A ranged read starts right after startLine; otherwise lines up to startLine are skipped
+                long lineNum = ranged ? startLine : 0;
                 
-                while ((line = br.readLine()) != null) {
-                    lineNum++;
-                    if (lineNum <= lastLineProcessed) continue;
+                if (byteLineMode) {
+                    // Phase 4: Frame lines on raw bytes and forward block slices, never decoding
+                    LineFramer framer = new LineFramer(blockPool, key, lineNum, ranged ? startOffset : 0, startLine - lineNum, batch -> {
+                        long throughLine = batch.firstLine + batch.size() - 1;
+                        long throughOffset = batch.resumeOffset(batch.size() - 1);
+                        enqueue(queue, batch);
+                        linesQueued.addAndGet(batch.size());
+                        queuedThroughLine.set(throughLine);
+                        queuedThroughOffset.set(throughOffset);
+                    });
+                    framer.frame(in);
+                    lineNum = framer.lineNumber();
+                } else {
+                    BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                    String line;
+                    List<String> batch = new ArrayList<>(1000);
+                    
+                    while ((line = br.readLine()) != null) {
+                        lineNum++;
+                        if (lineNum <= startLine) continue;
 
-                    batch.add(line);
-                    linesInThisFile++;
+                        batch.add(line);
+                        
+                        // Send batches to upload queue
+                        // Phase 24: The list is handed over as is rather than copied
+                        if (batch.size() >= 1000) {
+                            int size = batch.size();
+                            enqueue(queue, new LineBatch(batch, key, lineNum - size + 1));
+                            batch = new ArrayList<>(1000);
+                            linesQueued.addAndGet(size);
+                            queuedThroughLine.set(lineNum);
+                            queuedThroughOffset.set(-1); // readLine does not expose byte offsets
+                        }
+                    }
                     
-                    // Send batches to upload queue
-                    if (batch.size() >= 1000) {
-                        queue.put(new LineBatch(new ArrayList<>(batch), key));
-                        batch.clear();
+                    // Send remaining lines
+                    if (!batch.isEmpty()) {
+                        enqueue(queue, new LineBatch(batch, key, lineNum - batch.size() + 1));
+                        linesQueued.addAndGet(batch.size());
+                        queuedThroughLine.set(lineNum);
+                        queuedThroughOffset.set(-1);
                     }
                 }
                 
-                // Send remaining lines
-                if (!batch.isEmpty()) {
-                    queue.put(new LineBatch(new ArrayList<>(batch), key));
-                }
+                ledger.fileRead(key, lastLineProcessed, lineNum);
                 
-                // Mark file as complete (thread-safe)
-                synchronized (checkpointLock) {
-                    checkpoint.put(key, String.valueOf(lineNum));
-                    completedFiles.add(key);
-                }
-                
-                log("  Completed: " + linesInThisFile + " new lines from " + key);
-                return new FileProcessResult(true, key, linesInThisFile);
+                log("  Completed: " + linesQueued.get() + " new lines from " + key);
+                return new FileProcessResult(true, key, linesQueued.get());
                 
             } catch (Exception e) {
-                if (isNetworkException(e)) {
+                if (isThrottlingException(e)) {
+                    // Phase 20: Fewer downloads at once from the next window on
+                    log("⚠ Throttled downloading " + key + ": " + e.getMessage());
+                    if (downloadConcurrency != null) {
+                        downloadConcurrency.throttled();
+                    }
+                    syncCheckpoint(checkpoint);
+                    waitWithExponentialBackoff(attemptNumber);
+                    log("↻ Retrying download for: " + key);
+                } else if (isNetworkException(e)) {
                     log("⚠ Network error downloading " + key + ": " + e.getMessage());
                     
                     // Save checkpoint before long wait to prevent data loss on power cuts
-                    synchronized (checkpointLock) {
-                        saveCheckpoint(checkpoint);
-                    }
+                    syncCheckpoint(checkpoint);
                     
                     waitWithExponentialBackoff(attemptNumber);
                     log("↻ Retrying download for: " + key);
                     // Continue loop for retry
-                } else if (e instanceof InterruptedException) {
+                } else if (e instanceof InterruptedException || e instanceof InterruptedIOException) {
                     Thread.currentThread().interrupt();
                     log("Download interrupted for: " + key);
                     return new FileProcessResult(false, key, 0);
@@ -447,9 +944,7 @@ public class S3SequentialJsonArrayMerger {
                     }
                     
                     // Save checkpoint before retry wait
-                    synchronized (checkpointLock) {
-                        saveCheckpoint(checkpoint);
-                    }
+                    syncCheckpoint(checkpoint);
                     
                     // For non-network errors, wait and retry
                     waitWithExponentialBackoff(attemptNumber);
@@ -458,59 +953,246 @@ public class S3SequentialJsonArrayMerger {
         }
     }
 
+    // Phase 18: The non-blocking counterpart of downloadAndProcessFile. Each attempt is one GET whose
+    // body is framed as it arrives; a failed attempt is rescheduled after the same backoff instead of
+    // sleeping on a thread, and resumes after the last line already queued. Lines are always framed
+    // as bytes, and large objects are read as one stream rather than parallel ranges.
+    static CompletableFuture<FileProcessResult> downloadAndProcessFileAsync(AsyncObjectStore store, String sourceBucket,
+                                                                           String key, long fileSize,
+                                                                           long lastLineProcessed, long resumeOffset,
+                                                                           BlockingQueue<LineBatch> queue,
+                                                                           Map<String, String> checkpoint,
+                                                                           ChunkLedger ledger) {
+        log("Processing file: " + key + " (Size: " + formatBytes(fileSize) + ")" +
+            (lastLineProcessed > 0 ? " [Resuming from line " + lastLineProcessed + 
+                                     (resumeOffset >= 0 ? " at byte " + resumeOffset : "") + "]" : ""));
+        AsyncDownload download = new AsyncDownload(store, sourceBucket, key, fileSize, lastLineProcessed, resumeOffset,
+                                                   queue, checkpoint, ledger);
+        download.attempt(1);
+        return download.result;
+    }
+
+    private static final class AsyncDownload {
+        final AsyncObjectStore store;
+        final String sourceBucket;
+        final String key;
+        final long fileSize;
+        final long lastLineProcessed;
+        final BlockingQueue<LineBatch> queue;
+        final Map<String, String> checkpoint;
+        final ChunkLedger ledger;
+        final CompletableFuture<FileProcessResult> result = new CompletableFuture<>();
+        // Where the next attempt starts, as in downloadAndProcessFile
+        final AtomicLong linesQueued = new AtomicLong();
+        final AtomicLong queuedThroughLine;
+        final AtomicLong queuedThroughOffset;
+
+        AsyncDownload(AsyncObjectStore store, String sourceBucket, String key, long fileSize,
+                      long lastLineProcessed, long resumeOffset, BlockingQueue<LineBatch> queue,
+                      Map<String, String> checkpoint, ChunkLedger ledger) {
+            this.store = store;
+            this.sourceBucket = sourceBucket;
+            this.key = key;
+            this.fileSize = fileSize;
+            this.lastLineProcessed = lastLineProcessed;
+            this.queue = queue;
+            this.checkpoint = checkpoint;
+            this.ledger = ledger;
+            this.queuedThroughLine = new AtomicLong(lastLineProcessed);
+            this.queuedThroughOffset = new AtomicLong(lastLineProcessed == 0 ? 0 : resumeOffset);
+        }
+
+        void attempt(int attemptNumber) {
+            long startLine = queuedThroughLine.get();
+            long startOffset = queuedThroughOffset.get();
+            boolean ranged = startOffset >= 0;
+            long lineNum = ranged ? startLine : 0;
+            LineFramer framer = new LineFramer(blockPool, key, lineNum, ranged ? startOffset : 0, startLine - lineNum, batch -> {
+                long throughLine = batch.firstLine + batch.size() - 1;
+                long throughOffset = batch.resumeOffset(batch.size() - 1);
+                enqueue(queue, batch);
+                linesQueued.addAndGet(batch.size());
+                queuedThroughLine.set(throughLine);
+                queuedThroughOffset.set(throughOffset);
+            });
+
+            CompletableFuture<Long> framed;
+            if (ranged && startOffset > 0 && startOffset >= fileSize) {
+                framed = CompletableFuture.completedFuture(startLine);
+            } else {
+                long started = System.nanoTime();
+                CompletableFuture<Publisher<ByteBuffer>> body = ranged && startOffset > 0
+                    ? store.getRange(sourceBucket, key, startOffset, fileSize - 1)
+                    : store.get(sourceBucket, key);
+                ConcurrencyController concurrency = downloadConcurrency;
+                framed = body.thenCompose(publisher -> {
+                    // Phase 20: The response has started, so this is the first byte latency
+                    if (concurrency != null) {
+                        concurrency.firstByteLatency(System.nanoTime() - started);
+                    }
+                    FramingSubscriber subscriber = concurrency != null
+                        ? new FramingSubscriber(framer, framingExecutor, concurrency::bytesRead)
+                        : new FramingSubscriber(framer, framingExecutor);
+                    publisher.subscribe(subscriber);
+                    return subscriber.done();
+                });
+            }
+
+            framed.whenCompleteAsync((lineNumber, error) -> {
+                if (error == null) {
+                    ledger.fileRead(key, lastLineProcessed, lineNumber);
+                    log("  Completed: " + linesQueued.get() + " new lines from " + key);
+                    result.complete(new FileProcessResult(true, key, linesQueued.get()));
+                    return;
+                }
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof InterruptedException || cause instanceof InterruptedIOException) {
+                    log("Download interrupted for: " + key);
+                    result.complete(new FileProcessResult(false, key, 0));
+                    return;
+                }
+                if (isThrottlingException(cause)) {
+                    log("⚠ Throttled downloading " + key + ": " + cause.getMessage());
+                    if (downloadConcurrency != null) {
+                        downloadConcurrency.throttled();
+                    }
+                } else if (cause instanceof Exception && isNetworkException((Exception) cause)) {
+                    log("⚠ Network error downloading " + key + ": " + cause.getMessage());
+                } else {
+                    log("ERROR processing file: " + key + " - " + cause.getMessage());
+                    cause.printStackTrace();
+                    if (logWriter != null) {
+                        cause.printStackTrace(logWriter);
+                    }
+                }
+                syncCheckpoint(checkpoint);
+
+                int delayMs = retryDelayMs(attemptNumber);
+                log("Network issue detected. Waiting " + (delayMs / 1000) + " seconds before retry (attempt " + attemptNumber + ")...");
+                retryScheduler.schedule(() -> {
+                    log("↻ Retrying download for: " + key);
+                    attempt(attemptNumber + 1);
+                }, delayMs, TimeUnit.MILLISECONDS);
+            }, framingExecutor);
+        }
+    }
+
+    // Phase 22: Hand a batch to the chunk assembler once the heap it keeps alive fits in the queue budget
+    static void enqueue(BlockingQueue<LineBatch> queue, LineBatch batch) throws InterruptedException {
+        ByteBudget budget = queueBudget;
+        if (budget != null) {
+            budget.acquire(batch.heapBytes());
+        }
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            if (budget != null) {
+                budget.release(batch.heapBytes());
+            }
+            throw e;
+        }
+    }
+
+    // Phase 22: The most a download of the rest of an object holds at once. Objects are streamed, so
+    // that is one block being framed (string mode: a batch of up to 1000 lines, as much as the whole
+    // object) plus, for ranged downloads, the range being read and those fetched ahead; never more
+    // than the object itself.
+    static long downloadReservation(long fileSize, long resumeOffset, boolean async) {
+        long remaining = Math.max(0, fileSize - Math.max(0, resumeOffset));
+        if (!async && remaining >= rangeThreshold && remaining > rangeSize) {
+            return (long) rangeSize * (rangeParallelism + 1) + BLOCK_SIZE;
+        }
+        return async || byteLineMode ? Math.min(remaining, BLOCK_SIZE) : remaining;
+    }
+
+    // Phase 20: Downloads report their first byte latency and bytes read to the adaptive limit
+    private static InputStream metered(InputStream in, long startNanos) {
+        ConcurrencyController concurrency = downloadConcurrency;
+        return concurrency != null ? concurrency.meter(in, startNanos) : in;
+    }
+
+    // Phase 7: Large objects are fetched as parallel ranges but still read as one ordered stream,
+    // so line framing and resume logic are the same for both
+    // Phase 8: Reading starts at offset, so a resumed file only downloads what is left
+    private static InputStream openSource(ObjectStore store, String sourceBucket, String key,
+                                          long fileSize, long offset) throws IOException {
+        long remaining = fileSize - offset;
+        if (offset > 0 && remaining <= 0) {
+            return InputStream.nullInputStream();
+        }
+        if (remaining >= rangeThreshold && remaining > rangeSize) {
+            return new RangedObjectInputStream(store, sourceBucket, key, offset, fileSize, rangeSize, rangeParallelism, rangeExecutor);
+        }
+        if (offset > 0) {
+            return store.getRange(sourceBucket, key, offset, fileSize - 1);
+        }
+        return store.get(sourceBucket, key);
+    }
+    
+    // Phase 8: Progress entries are "<line>:<offset>", or just "<line>" when the offset is unknown
+    static String progressValue(long line, long offset) {
+        return offset >= 0 ? line + ":" + offset : String.valueOf(line);
+    }
+    
+    static long progressLine(String value) {
+        int separator = value.indexOf(':');
+        return Long.parseLong(separator < 0 ? value : value.substring(0, separator));
+    }
+    
+    static long progressOffset(String value) {
+        int separator = value.indexOf(':');
+        return separator < 0 ? -1 : Long.parseLong(value.substring(separator + 1));
+    }
+
     // Phase 2: Async upload worker
-    private static void uploadWorkerTask(S3Client s3, String targetBucket, 
+    // Phase 3: Assembles chunks on one thread and hands each full chunk to the upload pool
+    // Phase 5: Streams every chunk through a ChunkWriter, so its parts upload while it is still filling
+    private static void uploadWorkerTask(ObjectStore store, String targetBucket, 
                                          BlockingQueue<LineBatch> queue, int chunkSize,
                                          AtomicInteger uploadedChunks,
                                          Map<String, String> checkpoint,
+                                         ChunkLedger ledger,
                                          List<String> restoredBuffer,
                                          String restoredLastSourceKey) {
-        List<String> buffer = new ArrayList<>(restoredBuffer);
-        String lastSourceKey = restoredLastSourceKey; // Track the last source file key
-        
         try {
-            while (true) {
-                LineBatch batch = queue.take();
-                
-                if (batch.lines.isEmpty()) break; // Poison pill
-                
-                buffer.addAll(batch.lines);
-                if (batch.sourceKey != null) {
-                    lastSourceKey = batch.sourceKey; // Update the source key
-                }
+            // Lines restored from an older checkpoint go out first, under their original directory
+            ChunkWriter writer = writeBatch(store, targetBucket, new LineBatch(restoredBuffer, restoredLastSourceKey, 0),
+                                            null, chunkSize, ledger, uploadedChunks);
+            
+            // Phase 23: Wait for one batch, then take whatever else is queued in the same call
+            List<LineBatch> drained = new ArrayList<>(DRAIN_BATCHES);
+            boolean finished = false;
+            while (!finished) {
+                drained.add(queue.take());
+                queue.drainTo(drained, DRAIN_BATCHES - 1);
                 
-                if (buffer.size() >= chunkSize) {
-                    // Extract directory path from source key
-                    String targetKey = buildTargetKey(lastSourceKey, "merged-" + System.currentTimeMillis());
-                    uploadChunk(s3, new ArrayList<>(buffer.subList(0, chunkSize)), targetBucket, targetKey);
-                    uploadedChunks.incrementAndGet();
-                    
-                    buffer = new ArrayList<>(buffer.subList(chunkSize, buffer.size()));
-                    
-                    // Save checkpoint after successful upload (thread-safe)
-                    synchronized (checkpointLock) {
-                        clearBufferFromCheckpoint(checkpoint);
-                        updateBufferInCheckpoint(checkpoint, buffer, buffer.size());
-                        updateLastSourceKeyInCheckpoint(checkpoint, lastSourceKey); // Save lastSourceKey
-                        saveCheckpoint(checkpoint);
+                for (LineBatch batch : drained) {
+                    if (batch.size() == 0) { // Poison pill
+                        finished = true;
+                        break;
+                    }
+                    if (queueBudget != null) {
+                        queueBudget.release(batch.heapBytes());
                     }
                     
-                    log("  Progress: " + uploadedChunks.get() + " chunks uploaded");
+                    writer = writeBatch(store, targetBucket, batch, writer, chunkSize, ledger, uploadedChunks);
+                    batch.release();
                 }
+                drained.clear();
             }
             
-            // Upload remaining buffer
-            if (!buffer.isEmpty()) {
-                String targetKey = buildTargetKey(lastSourceKey, "final-merged-" + System.currentTimeMillis());
-                uploadChunk(s3, buffer, targetBucket, targetKey);
-                uploadedChunks.incrementAndGet();
-                
-                synchronized (checkpointLock) {
-                    clearBufferFromCheckpoint(checkpoint);
-                    checkpoint.put("bufferCount", "0");
-                    saveCheckpoint(checkpoint);
-                }
+            // Upload remaining lines
+            if (writer != null) {
+                finishChunk(writer, "final-merged-", ledger, uploadedChunks);
+            }
+            
+            ledger.awaitAll();
+            
+            synchronized (checkpointLock) {
+                clearBufferFromCheckpoint(checkpoint);
+                putCheckpoint(checkpoint, "bufferCount", "0");
             }
+            syncCheckpoint(checkpoint);
             
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -523,6 +1205,269 @@ public class S3SequentialJsonArrayMerger {
             }
         }
     }
+    
+    // Phase 5: Copy a batch into the open chunk, finishing each chunk as it reaches chunkSize lines.
+    // Returns the chunk left open afterwards, or null if the batch ended exactly on a chunk boundary.
+    // Opening a chunk blocks while the maximum number of chunks is already in flight.
+    private static ChunkWriter writeBatch(ObjectStore store, String targetBucket, LineBatch batch,
+                                          ChunkWriter writer, int chunkSize, ChunkLedger ledger,
+                                          AtomicInteger uploadedChunks) throws InterruptedException {
+        int from = 0;
+        while (from < batch.size()) {
+            if (writer == null) {
+                ledger.acquireSlot();
+                writer = new ChunkWriter(store, targetBucket, partPool, partConcurrency, uploadExecutor,
+                                         (sourceKey, prefix) -> buildTargetKey(sourceKey, nextChunkName(prefix)));
+            }
+            int n = Math.min(batch.size() - from, chunkSize - writer.lineCount());
+            writer.write(batch, from, from + n);
+            from += n;
+            
+            if (writer.lineCount() >= chunkSize) {
+                finishChunk(writer, "merged-", ledger, uploadedChunks);
+                writer = null;
+            }
+        }
+        return writer;
+    }
+    
+    // Phase 5: Ship the rest of a chunk and record it in the ledger once the object is durable
+    private static void finishChunk(ChunkWriter writer, String prefix, ChunkLedger ledger,
+                                    AtomicInteger uploadedChunks) throws InterruptedException {
+        long seq = ledger.nextSeq();
+        writer.finish(prefix, ledger::committing).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log("✗ ERROR uploading: " + writer.key() + " - " + error.getMessage());
+                ledger.abandoned(seq, writer.key());
+                return;
+            }
+            uploadedChunks.incrementAndGet();
+            log("✓ Uploaded: " + writer.key() + 
+                " (" + writer.lineCount() + " records, " + 
+                formatBytes(writer.bytesWritten()) + ", " + 
+                writer.elapsedMillis() + "ms)");
+            ledger.uploaded(seq, writer);
+            log("  Progress: " + uploadedChunks.get() + " chunks uploaded");
+        });
+    }
+    
+    // Phase 5: Delete the chunks a crash left in the target bucket before their lines were recorded
+    // as durable. Their lines are read again, so keeping them would merge those lines twice.
+    static void discardUncommittedChunks(ObjectStore store, Map<String, String> checkpoint) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : checkpoint.keySet()) {
+            if (entry.startsWith(COMMITTING_PREFIX)) {
+                entries.add(entry);
+            }
+        }
+        for (String entry : entries) {
+            String bucket = checkpoint.get(entry);
+            String key = entry.substring(COMMITTING_PREFIX.length());
+            withRetries("deleting uncommitted chunk " + key, () -> {
+                store.delete(bucket, key);
+                return null;
+            });
+            log("Deleted uncommitted chunk from previous session: " + key);
+            synchronized (checkpointLock) {
+                removeCheckpoint(checkpoint, entry);
+            }
+        }
+        if (!entries.isEmpty()) {
+            syncCheckpoint(checkpoint);
+        }
+    }
+    
+    // Phase 5: Turns finished chunk uploads into checkpoint progress. Chunks finish out of order on
+    // the upload pool, but they are applied strictly in chunk order: once every chunk up to N is in
+    // the target bucket, a source file's progress is the last of its lines in those chunks, and a
+    // file whose download has finished is marked complete as soon as its last line is applied.
+    // Lines that had not reached the target bucket are simply read again after a restart, and so
+    // are the lines of chunks that had reached it but were not applied yet: those chunks are still
+    // listed as committing and the restart deletes them first (discardUncommittedChunks).
+    static class ChunkLedger {
+        private final Map<String, String> checkpoint;
+        private final CompletedSet completedFiles;
+        private final PrefixLedger prefixLedger;                                // null: no partitions tracked
+        private final int maxInFlight;
+        private final Semaphore slots;
+        private long nextSeq;                                                   // assembler thread only
+        private long nextToApply;                                               // guarded by checkpointLock
+        private final TreeMap<Long, ChunkWriter> uploaded = new TreeMap<>();    // guarded by checkpointLock
+        private final Map<String, Long> durableLines = new HashMap<>();         // guarded by checkpointLock
+        private final Map<String, Long> durableOffsets = new HashMap<>();       // guarded by checkpointLock
+        private final Map<String, Long> fileLineCounts = new HashMap<>();       // guarded by checkpointLock
+        private long restoredLinesPending;                                      // guarded by checkpointLock
+        private final List<String> abandoned = new ArrayList<>();               // guarded by checkpointLock
+        
+        ChunkLedger(Map<String, String> checkpoint, CompletedSet completedFiles, int maxInFlight, long restoredLines) {
+            this(checkpoint, completedFiles, null, maxInFlight, restoredLines);
+        }
+        
+        ChunkLedger(Map<String, String> checkpoint, CompletedSet completedFiles, PrefixLedger prefixLedger,
+                    int maxInFlight, long restoredLines) {
+            this.checkpoint = checkpoint;
+            this.completedFiles = completedFiles;
+            this.prefixLedger = prefixLedger;
+            this.maxInFlight = maxInFlight;
+            this.slots = new Semaphore(maxInFlight);
+            this.restoredLinesPending = restoredLines;
+        }
+        
+        void acquireSlot() throws InterruptedException {
+            slots.acquire();
+        }
+        
+        long nextSeq() {
+            return nextSeq++;
+        }
+        
+        // A download has read the whole file; lines up to lastLineProcessed were durable before this run
+        void fileRead(String key, long lastLineProcessed, long lineCount) {
+            synchronized (checkpointLock) {
+                durableLines.merge(key, lastLineProcessed, Math::max);
+                fileLineCounts.put(key, lineCount);
+                completeIfDurable(key);
+            }
+        }
+        
+        // The chunk's object is about to become visible: record it durably first
+        void committing(String bucket, String key) {
+            synchronized (checkpointLock) {
+                putCheckpoint(checkpoint, COMMITTING_PREFIX + key, bucket);
+            }
+            syncCheckpoint(checkpoint);
+        }
+        
+        void uploaded(long seq, ChunkWriter chunk) {
+            synchronized (checkpointLock) {
+                uploaded.put(seq, chunk);
+                inOneCommit(() -> {
+                    while (!uploaded.isEmpty() && uploaded.firstKey() == nextToApply) {
+                        apply(uploaded.pollFirstEntry().getValue());
+                        nextToApply++;
+                    }
+                });
+                if (checkpointJournal == null) {
+                    saveCheckpoint(checkpoint);
+                }
+            }
+            slots.release();
+        }
+        
+        // The chunk will never be durable: later chunks stay unapplied and their lines are re-read on restart
+        void abandoned(long seq, String key) {
+            synchronized (checkpointLock) {
+                abandoned.add(key);
+            }
+            slots.release();
+        }
+        
+        // Chunks that failed to upload; progress stopped at the first of them
+        List<String> abandonedChunks() {
+            synchronized (checkpointLock) {
+                return new ArrayList<>(abandoned);
+            }
+        }
+        
+        void awaitAll() throws InterruptedException {
+            slots.acquire(maxInFlight);
+            slots.release(maxInFlight);
+        }
+        
+        private void apply(ChunkWriter chunk) {
+            removeCheckpoint(checkpoint, COMMITTING_PREFIX + chunk.key());
+            for (Map.Entry<String, Long> entry : chunk.lastLines().entrySet()) {
+                String key = entry.getKey();
+                long line = entry.getValue();
+                if (line >= durableLines.getOrDefault(key, 0L)) {
+                    durableLines.put(key, line);
+                    durableOffsets.put(key, chunk.resumeOffsets().get(key));
+                }
+                putCheckpoint(checkpoint, PROGRESS_PREFIX + key, progressValue(durableLines.get(key), durableOffsets.get(key)));
+                completeIfDurable(key);
+            }
+            
+            if (chunk.restoredLines() > 0) {
+                restoredLinesPending -= chunk.restoredLines();
+                if (restoredLinesPending <= 0) {
+                    clearBufferFromCheckpoint(checkpoint);
+                    putCheckpoint(checkpoint, "bufferCount", "0");
+                }
+            }
+        }
+        
+        private void completeIfDurable(String key) {
+            Long lineCount = fileLineCounts.get(key);
+            if (lineCount == null || durableLines.getOrDefault(key, 0L) < lineCount) return;
+            
+            removeCheckpoint(checkpoint, PROGRESS_PREFIX + key);
+            putCheckpoint(checkpoint, key, String.valueOf(lineCount));
+            completedFiles.add(key);
+            fileLineCounts.remove(key);
+            durableLines.remove(key);
+            durableOffsets.remove(key);
+            if (prefixLedger != null) {
+                prefixLedger.completed(key);
+            }
+        }
+    }
+    
+    // Phase 13: Collapses a fully merged partition into one checkpoint marker. Counts, per sealable
+    // partition, the scheduled objects that still have to complete; once the partition is listed to
+    // the end and that count is zero, "prefix_<partition>=<objects listed>" is written. Later runs never
+    // list the prefix again, and journal compaction drops the per-file entries the marker covers.
+    static class PrefixLedger {
+        private final Map<String, String> checkpoint;
+        private final int depth;
+        private final Map<String, long[]> partitions = new HashMap<>();   // {objects, pending}; guarded by checkpointLock
+        private final Set<String> listingDone = new HashSet<>();          // guarded by checkpointLock
+        
+        PrefixLedger(Map<String, String> checkpoint, int depth) {
+            this.checkpoint = checkpoint;
+            this.depth = depth;
+        }
+        
+        // An object of the partition is about to be merged
+        void scheduled(String partition) {
+            synchronized (checkpointLock) {
+                partitions.computeIfAbsent(partition, p -> new long[2])[1]++;
+            }
+        }
+        
+        // Every object of the partition has been scheduled or skipped
+        void listingDone(String partition, long objects) {
+            synchronized (checkpointLock) {
+                partitions.computeIfAbsent(partition, p -> new long[2])[0] = objects;
+                listingDone.add(partition);
+                sealIfDone(partition);
+            }
+        }
+        
+        // A file is complete (caller holds checkpointLock)
+        void completed(String key) {
+            String partition = BucketLister.partitionOf(key, depth);
+            long[] counts = partition != null ? partitions.get(partition) : null;
+            if (counts == null) return;
+            counts[1]--;
+            sealIfDone(partition);
+        }
+        
+        private void sealIfDone(String partition) {
+            long[] counts = partitions.get(partition);
+            if (counts[1] > 0 || !listingDone.contains(partition)) return;
+            
+            putCheckpoint(checkpoint, PREFIX_MARKER + partition, String.valueOf(counts[0]));
+            partitions.remove(partition);
+            listingDone.remove(partition);
+            log("✓ Prefix complete: " + partition + " (" + counts[0] + " files)");
+        }
+    }
+
+    // Timestamp-based chunk name that never repeats, even when chunks finish within the same millisecond
+    private static String nextChunkName(String prefix) {
+        long now = System.currentTimeMillis();
+        return prefix + lastChunkStamp.updateAndGet(last -> Math.max(now, last + 1));
+    }
 
     // Helper method to build target key with source folder structure
     private static String buildTargetKey(String sourceKey, String mergedFileName) {
@@ -540,175 +1485,161 @@ public class S3SequentialJsonArrayMerger {
         return mergedFileName; // No directory structure, use root
     }
 
-    // Phase 1: Enhanced upload with multi-part support and unlimited retries
-    private static void uploadChunk(S3Client s3, List<String> buffer, String targetBucket, String key) {
-        String content = String.join("\n", buffer);
-        byte[] data = content.getBytes(StandardCharsets.UTF_8);
-        
+    // Run one store request until it succeeds, with the same unlimited backoff as every other
+    // request. Only gives up if the thread is interrupted while waiting to retry.
+    static <T> T withRetries(String description, Callable<T> request) {
+        return withRetries(description, request, e -> false);
+    }
+
+    // As above, but an error that retrying cannot fix is thrown at once, wrapped in a CompletionException
+    static <T> T withRetries(String description, Callable<T> request, Predicate<Exception> fatal) {
         int attemptNumber = 0;
         
-        // Unlimited retries with exponential backoff for network resilience
         while (true) {
             attemptNumber++;
             try {
-                long startTime = System.currentTimeMillis();
-                
-                // Use multi-part upload for large files (>5MB)
-                if (data.length > 5 * 1024 * 1024) {
-                    uploadMultipartWithRetry(s3, buffer, targetBucket, key, data);
-                } else {
-                    uploadSinglePartWithRetry(s3, buffer, targetBucket, key, content);
-                }
-                
-                long uploadTime = System.currentTimeMillis() - startTime;
-                log("✓ Uploaded: " + key + 
-                    " (" + buffer.size() + " records, " + 
-                    formatBytes(data.length) + ", " + 
-                    uploadTime + "ms)");
-                
-                return; // Success, exit retry loop
-                
+                return request.call();
             } catch (Exception e) {
+                if (fatal.test(e)) {
+                    throw new CompletionException(e);
+                }
                 if (isNetworkException(e)) {
-                    log("⚠ Network error uploading " + key + ": " + e.getMessage());
-                    waitWithExponentialBackoff(attemptNumber);
-                    log("↻ Retrying upload for: " + key);
-                    // Continue loop for retry
+                    log("⚠ Network error " + description + ": " + e.getMessage());
                 } else {
-                    log("✗ ERROR uploading: " + key + " - " + e.getMessage());
+                    log("✗ ERROR " + description + " - " + e.getMessage());
                     e.printStackTrace();
                     if (logWriter != null) {
                         e.printStackTrace(logWriter);
                     }
-                    // For non-network errors, also retry after backoff
-                    waitWithExponentialBackoff(attemptNumber);
                 }
+                waitWithExponentialBackoff(attemptNumber);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Interrupted while " + description);
+                }
+                log("↻ Retrying " + description);
             }
         }
     }
 
-    // Single-part upload with exception propagation for retry logic
-    private static void uploadSinglePartWithRetry(S3Client s3, List<String> buffer, String targetBucket, String key, String content) throws Exception {
-        PutObjectRequest putReq = PutObjectRequest.builder()
-                .bucket(targetBucket)
-                .key(key)
-                .contentType("binary/octet-stream")
-                .build();
-
-        s3.putObject(putReq, RequestBody.fromString(content, StandardCharsets.UTF_8));
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
+        if (bytes < 1024 * 1024 * 1024) return String.format("%.2f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
     }
 
-    // Multi-part upload with exception propagation for retry logic
-    private static void uploadMultipartWithRetry(S3Client s3, List<String> buffer, String targetBucket, String key, byte[] data) throws Exception {
-        CreateMultipartUploadResponse initResponse = s3.createMultipartUpload(
-            CreateMultipartUploadRequest.builder()
-                .bucket(targetBucket)
-                .key(key)
-                .contentType("binary/octet-stream")
-                .build());
-        
-        String uploadId = initResponse.uploadId();
-        List<CompletedPart> completedParts = new ArrayList<>();
-        
-        int partSize = 5 * 1024 * 1024; // 5MB parts
-        int partNumber = 1;
-        
-        try {
-            for (int i = 0; i < data.length; i += partSize) {
-                int end = Math.min(i + partSize, data.length);
-                byte[] partData = Arrays.copyOfRange(data, i, end);
-                
-                UploadPartResponse uploadPartResponse = s3.uploadPart(
-                    UploadPartRequest.builder()
-                        .bucket(targetBucket)
-                        .key(key)
-                        .uploadId(uploadId)
-                        .partNumber(partNumber)
-                        .build(),
-                    RequestBody.fromBytes(partData));
-                
-                completedParts.add(CompletedPart.builder()
-                    .partNumber(partNumber)
-                    .eTag(uploadPartResponse.eTag())
-                    .build());
-                
-                partNumber++;
+    private static void clearBufferFromCheckpoint(Map<String, String> checkpoint) {
+        // Remove all buffer-related keys
+        checkpoint.entrySet().removeIf(entry -> {
+            boolean buffer = entry.getKey().startsWith("buffer_") || entry.getKey().equals("bufferCount");
+            if (buffer && checkpointJournal != null) {
+                checkpointJournal.remove(entry.getKey());
             }
-            
-            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
-                .bucket(targetBucket)
-                .key(key)
-                .uploadId(uploadId)
-                .multipartUpload(CompletedMultipartUpload.builder()
-                    .parts(completedParts)
-                    .build())
-                .build());
-                
-        } catch (Exception e) {
-            // Abort multipart upload on failure
-            try {
-                s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
-                    .bucket(targetBucket)
-                    .key(key)
-                    .uploadId(uploadId)
-                    .build());
-            } catch (Exception abortEx) {
-                log("Warning: Failed to abort multipart upload: " + abortEx.getMessage());
+            return buffer;
+        });
+    }
+
+    // Phase 11: Checkpoint entries that record a completed file, as opposed to progress markers,
+    // chunks being committed, legacy buffer state and the journal marker
+    static boolean isCompletedFileEntry(String key) {
+        return !key.startsWith("buffer") && !key.equals("lastSourceKey") && !key.startsWith(PROGRESS_PREFIX)
+            && !key.startsWith(COMMITTING_PREFIX) && !key.startsWith(PREFIX_MARKER)
+            && !key.equals(CheckpointJournal.SEGMENT_KEY);
+    }
+    
+    // Phase 13: Prefixes recorded as complete by their marker entries
+    static Set<String> completedPrefixes(Map<String, String> checkpoint) {
+        Set<String> prefixes = new HashSet<>();
+        for (String key : checkpoint.keySet()) {
+            if (key.startsWith(PREFIX_MARKER)) {
+                prefixes.add(key.substring(PREFIX_MARKER.length()));
             }
-            throw e;
         }
+        return prefixes;
     }
 
-    private static String formatBytes(long bytes) {
-        if (bytes < 1024) return bytes + " B";
-        if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
-        if (bytes < 1024 * 1024 * 1024) return String.format("%.2f MB", bytes / (1024.0 * 1024));
-        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    // Phase 10: Change one checkpoint entry and journal the change (caller holds checkpointLock)
+    private static void putCheckpoint(Map<String, String> checkpoint, String key, String value) {
+        checkpoint.put(key, value);
+        if (checkpointJournal != null) {
+            checkpointJournal.put(key, value);
+        }
     }
 
-    private static void updateBufferInCheckpoint(Map<String, String> checkpoint, List<String> buffer, int bufferCount) {
-        // Clear old buffer entries first
-        clearBufferFromCheckpoint(checkpoint);
-        
-        // Save current buffer
-        checkpoint.put("bufferCount", String.valueOf(bufferCount));
-        for (int i = 0; i < buffer.size(); i++) {
-            checkpoint.put("buffer_" + i, buffer.get(i));
+    private static void removeCheckpoint(Map<String, String> checkpoint, String key) {
+        checkpoint.remove(key);
+        if (checkpointJournal != null) {
+            checkpointJournal.remove(key);
         }
     }
-    
-    // Save lastSourceKey to checkpoint for proper restoration
-    private static void updateLastSourceKeyInCheckpoint(Map<String, String> checkpoint, String lastSourceKey) {
-        if (lastSourceKey != null) {
-            checkpoint.put("lastSourceKey", lastSourceKey);
+
+    // Phase 5: Journal the changes in one group commit; without a journal the caller saves the whole
+    // checkpoint afterwards anyway (caller holds checkpointLock)
+    private static void inOneCommit(Runnable changes) {
+        CheckpointJournal journal = checkpointJournal;
+        if (journal != null) {
+            journal.atomically(changes);
+        } else {
+            changes.run();
         }
     }
 
-    private static void clearBufferFromCheckpoint(Map<String, String> checkpoint) {
-        // Remove all buffer-related keys
-        checkpoint.entrySet().removeIf(entry -> 
-            entry.getKey().startsWith("buffer_") || entry.getKey().equals("bufferCount")
-        );
+    // Phase 10: Make every change so far durable now rather than at the next group commit
+    // (before long retry waits). Without a journal the whole checkpoint is rewritten.
+    private static void syncCheckpoint(Map<String, String> checkpoint) {
+        CheckpointJournal journal = checkpointJournal;
+        if (journal == null) {
+            saveCheckpoint(checkpoint);
+            return;
+        }
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            log("ERROR saving checkpoint: " + e.getMessage());
+        }
+    }
+
+    // Phase 10: Fold the journal into a final checkpoint.txt and stop its threads
+    private static void closeCheckpointJournal() {
+        CheckpointJournal journal = checkpointJournal;
+        if (journal == null) return;
+        checkpointJournal = null;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log("ERROR compacting checkpoint journal: " + e.getMessage());
+            e.printStackTrace();
+        }
     }
 
     // Phase 1: Thread-safe checkpoint loading
-    private static Map<String, String> loadCheckpoint() {
+    static Map<String, String> loadCheckpoint() {
         synchronized (checkpointLock) {
             Map<String, String> map = new HashMap<>();
             File f = new File(CHECKPOINT_FILE);
-            if (!f.exists()) {
-                log("No checkpoint found. Starting fresh.");
-                return map;
+            try {
+                if (!f.exists() && CheckpointJournal.segmentNumbers(f.toPath()).isEmpty()) {
+                    log("No checkpoint found. Starting fresh.");
+                    return map;
+                }
+            } catch (IOException e) {
+                log("ERROR listing checkpoint journal: " + e.getMessage());
             }
 
-            try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] parts = line.split("=", 2);
-                    if (parts.length == 2) {
-                        map.put(parts[0], parts[1]);
+            try {
+                if (f.exists()) {
+                    try (BufferedReader br = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = br.readLine()) != null) {
+                            String[] parts = line.split("=", 2);
+                            if (parts.length == 2) {
+                                map.put(parts[0], parts[1]);
+                            }
+                        }
                     }
                 }
+                // Phase 10: Changes journaled after the snapshot was written
+                CheckpointJournal.replay(f.toPath(), map);
                 log("Checkpoint loaded. Tracked files/entries: " + map.size());
             } catch (IOException e) {
                 log("ERROR loading checkpoint: " + e.getMessage());
@@ -719,12 +1650,12 @@ public class S3SequentialJsonArrayMerger {
     }
 
     // Phase 1: Thread-safe atomic checkpoint saving
-    private static void saveCheckpoint(Map<String, String> checkpoint) {
+    static void saveCheckpoint(Map<String, String> checkpoint) {
         synchronized (checkpointLock) {
             File tempFile = new File(CHECKPOINT_FILE + ".tmp");
             File finalFile = new File(CHECKPOINT_FILE);
             
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile))) {
+            try (BufferedWriter bw = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
                 for (Map.Entry<String, String> entry : checkpoint.entrySet()) {
                     bw.write(entry.getKey() + "=" + entry.getValue());
                     bw.newLine();
@@ -0,0 +1,35 @@
+package com.example.s3merge;
+
+/**
+ * Backend-neutral description of a listed object. Accessor names mirror
+ * S3Object so listing code reads the same whichever store produced it.
+ */
+public final class StoredObject {
+
+    private final String key;
+    private final long size;
+    private final String eTag;
+
+    public StoredObject(String key, long size, String eTag) {
+        this.key = key;
+        this.size = size;
+        this.eTag = eTag;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public String eTag() {
+        return eTag;
+    }
+
+    @Override
+    public String toString() {
+        return key + " (" + size + " bytes)";
+    }
+}
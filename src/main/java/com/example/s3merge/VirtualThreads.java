@@ -0,0 +1,156 @@
+package com.example.s3merge;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors that start one virtual thread per task (execution.mode=virtual), with a
+ * semaphore instead of a pool size bounding how many tasks run at once.
+ *
+ * The build targets Java 17, so the Java 21 API (Thread.ofVirtual) is looked up at run
+ * time. On an older runtime the executors fall back to one platform thread per task,
+ * under the same limit; {@link #available()} tells which one a run got.
+ *
+ * A task waiting for a permit parks its thread before doing anything, so submitting
+ * never blocks and the limit applies to the work itself. Tasks must not wait on other
+ * tasks of the same executor, or a full set of permits could wait on itself.
+ */
+final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookup();
+
+    private VirtualThreads() {
+    }
+
+    /** Whether this runtime has virtual threads (Java 21+). */
+    static boolean available() {
+        return OF_VIRTUAL != null;
+    }
+
+    /** A thread-per-task executor running at most maxConcurrent tasks at a time. */
+    static ExecutorService newExecutor(String name, int maxConcurrent) {
+        return new Limited(threadFactory(name), maxConcurrent);
+    }
+
+    private static Method lookup() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        if (OF_VIRTUAL != null) {
+            try {
+                // Through the public Thread.Builder interface; the builder class itself is not accessible
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                Object builder = OF_VIRTUAL.invoke(null);
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+                return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create virtual threads", e);
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // One new thread per task; the semaphore is taken on that thread
+    private static final class Limited extends AbstractExecutorService {
+        private final ThreadFactory factory;
+        private final Semaphore permits;
+        private final Set<Thread> running = new HashSet<>();  // guarded by itself
+        private boolean shutdown;                             // guarded by running
+
+        Limited(ThreadFactory factory, int maxConcurrent) {
+            this.factory = factory;
+            this.permits = new Semaphore(Math.max(1, maxConcurrent));
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            Thread thread = factory.newThread(() -> {
+                try {
+                    permits.acquire();
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    synchronized (running) {
+                        running.remove(Thread.currentThread());
+                        running.notifyAll();
+                    }
+                }
+            });
+            synchronized (running) {
+                if (shutdown) {
+                    throw new RejectedExecutionException("Executor is shut down");
+                }
+                running.add(thread);
+            }
+            thread.start();
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (running) {
+                shutdown = true;
+            }
+        }
+
+        // Tasks start right away, so there is never a queue to hand back
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (running) {
+                shutdown = true;
+                running.forEach(Thread::interrupt);
+            }
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (running) {
+                return shutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (running) {
+                return shutdown && running.isEmpty();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (running) {
+                while (!(shutdown && running.isEmpty())) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) return false;
+                    TimeUnit.NANOSECONDS.timedWait(running, remaining);
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the Bloom filter in front of the checkpoint index: never a false negative,
+ * and false positives at about the configured rate
+ */
+@DisplayName("BloomFilter Test Suite")
+class BloomFilterTest {
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @CsvSource({
+        "4, 0.20",
+        "10, 0.015",
+        "16, 0.002"
+    })
+    @DisplayName("mightContain: Every added key, and few others")
+    void testFalsePositiveRate(int bitsPerKey, double maxRate) {
+        BloomFilter filter = new BloomFilter(100_000, bitsPerKey);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("logs/present-" + i + ".json");
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.mightContain("logs/present-" + i + ".json"));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("logs/absent-" + i + ".json")) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100_000 * maxRate, falsePositives + " false positives");
+        assertEquals(100_000L * bitsPerKey / 8, filter.sizeBytes());
+    }
+
+    @Test
+    @DisplayName("of: Built from an index, holds every key in it")
+    void testFromIndex() throws Exception {
+        Path file = dir.resolve("checkpoint.idx");
+        try (CheckpointIndex.Writer writer = new CheckpointIndex.Writer(file)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.add(String.format("logs/file-%04d.json", i).getBytes(StandardCharsets.UTF_8), i);
+            }
+        }
+
+        try (CheckpointIndex index = CheckpointIndex.open(file)) {
+            BloomFilter filter = BloomFilter.of(index, 10);
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(filter.mightContain(String.format("logs/file-%04d.json", i)));
+            }
+            assertFalse(filter.mightContain("logs/file-xxxx.json") && filter.mightContain("logs/other.json")
+                        && filter.mightContain("logs/another.json"));
+        }
+    }
+}
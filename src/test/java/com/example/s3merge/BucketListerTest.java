@@ -0,0 +1,286 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for splitting a bucket into prefix partitions and listing them into the work queue
+ */
+@DisplayName("BucketLister Test Suite")
+class BucketListerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("partitions: Depth 0 is one listing of the whole bucket")
+    void testWholeBucket() throws Exception {
+        List<BucketLister.Partition> partitions = partitions(new InMemoryObjectStore(), 0, 1, Collections.emptySet());
+
+        assertEquals(1, partitions.size());
+        assertNull(partitions.get(0).listPrefix());
+        assertNull(partitions.get(0).delimiter());
+        assertFalse(partitions.get(0).sealable);
+    }
+
+    @Test
+    @DisplayName("partitions: Depth-D prefixes in key order, all but the newest sealable")
+    void testPartitionsAtDepth() throws Exception {
+        InMemoryObjectStore store = store("logs/2025/01/a.json", "logs/2025/01/b.json", "logs/2025/02/c.json",
+                                          "logs/2024/12/d.json", "metrics/2025/01/e.json");
+
+        List<BucketLister.Partition> partitions = partitions(store, 3, 1, Collections.emptySet());
+
+        assertEquals(Arrays.asList("logs/2024/12/", "logs/2025/01/", "logs/2025/02/", "metrics/2025/01/"), prefixes(partitions));
+        assertTrue(partitions.stream().allMatch(p -> p.recursive));
+        assertEquals(Arrays.asList(true, true, true, false), sealable(partitions));
+    }
+
+    @Test
+    @DisplayName("partitions: Objects above the partition depth are listed directly and never sealable")
+    void testDirectObjects() throws Exception {
+        InMemoryObjectStore store = store("root.json", "logs/top.json", "logs/2025/a.json", "logs/2026/b.json");
+
+        List<BucketLister.Partition> partitions = partitions(store, 2, 0, Collections.emptySet());
+
+        assertEquals(Arrays.asList("", "logs/", "logs/2025/", "logs/2026/"), prefixes(partitions));
+        assertEquals(Arrays.asList(false, false, true, true), sealable(partitions));
+        assertFalse(partitions.get(0).recursive);
+        assertEquals(BucketLister.DELIMITER, partitions.get(1).delimiter());
+        assertNull(partitions.get(0).listPrefix());
+    }
+
+    @Test
+    @DisplayName("partitions: Completed prefixes are left out at any level")
+    void testCompletedPrefixesSkipped() throws Exception {
+        InMemoryObjectStore store = store("logs/2024/12/a.json", "logs/2025/01/b.json", "logs/2025/02/c.json",
+                                          "old/2020/01/d.json");
+
+        List<BucketLister.Partition> partitions =
+            partitions(store, 3, 1, new HashSet<>(Arrays.asList("logs/2025/01/", "old/")));
+
+        assertEquals(Arrays.asList("logs/2024/12/", "logs/2025/02/"), prefixes(partitions));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    @DisplayName("start: Every object not yet complete is queued once, each partition ending after its objects")
+    void testWorkQueue(int threads) throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        Set<String> expected = new HashSet<>();
+        for (int p = 0; p < 6; p++) {
+            for (int i = 0; i < 700; i++) {
+                String key = "logs/p" + p + "/f" + String.format("%04d", i) + ".json";
+                store.put("bucket", key, "{}\n".getBytes(StandardCharsets.UTF_8));
+                if (i % 3 != 0) {
+                    expected.add(key);
+                }
+            }
+        }
+
+        List<String> queued = new ArrayList<>();
+        Map<String, Long> ended = new HashMap<>();
+        try (BucketLister lister = new BucketLister(store, "bucket", BucketListerTest::isThird, threads, 100)) {
+            lister.start(lister.partitions(2, 1, Collections.emptySet()));
+            for (BucketLister.Listed listed = lister.take(); listed != BucketLister.END; listed = lister.take()) {
+                if (listed.object == null) {
+                    ended.put(listed.partition.prefix, listed.objects);
+                } else {
+                    assertFalse(ended.containsKey(listed.partition.prefix), "object after the end of its partition");
+                    assertTrue(listed.object.key().startsWith(listed.partition.prefix));
+                    queued.add(listed.object.key());
+                }
+            }
+            assertEquals(6 * 700, lister.listedCount());
+            assertEquals(6 * 700 - queued.size(), lister.skippedCount());
+        }
+
+        assertEquals(expected, new HashSet<>(queued));
+        assertEquals(queued.size(), new HashSet<>(queued).size());
+        assertEquals(6, ended.size());
+        ended.values().forEach(objects -> assertEquals(700L, objects));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3})
+    @DisplayName("start: Pages are fetched ahead of a stalled consumer, but only prefetchPages of them")
+    void testPrefetch(int prefetchPages) throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+                requests.incrementAndGet();
+                return super.list(bucket, prefix, delimiter, continuationToken);
+            }
+        };
+        for (int i = 0; i < 10000; i++) {
+            store.put("bucket", "logs/f" + String.format("%05d", i) + ".json", "{}\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (BucketLister lister = new BucketLister(store, "bucket", key -> false, 1, 10, prefetchPages)) {
+            lister.start(lister.partitions(0, 1, Collections.emptySet()));
+
+            // One page being queued, prefetchPages waiting, one fetched and waiting for buffer space
+            int expected = prefetchPages + 2;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (requests.get() < expected && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            assertEquals(expected, requests.get());
+
+            int taken = 0;
+            for (BucketLister.Listed listed = lister.take(); listed != BucketLister.END; listed = lister.take()) {
+                if (listed.object != null) taken++;
+            }
+            assertEquals(10000, taken);
+            assertEquals(10, requests.get());
+        }
+    }
+
+    @Test
+    @DisplayName("start: A restart replays the manifest and lists only the pages after it")
+    void testResumeFromManifest() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        InMemoryObjectStore crashing = new InMemoryObjectStore() {
+            @Override
+            public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+                if (continuationToken != null) {
+                    try {
+                        never.await(); // the run dies before its second page
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new CancellationException("closed");
+                }
+                return super.list(bucket, prefix, delimiter, continuationToken);
+            }
+        };
+        List<String> tokens = Collections.synchronizedList(new ArrayList<>());
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+                tokens.add(continuationToken);
+                return super.list(bucket, prefix, delimiter, continuationToken);
+            }
+        };
+        for (int i = 0; i < 2500; i++) {
+            String key = "logs/f" + String.format("%04d", i) + ".json";
+            crashing.put("bucket", key, "{}\n".getBytes(StandardCharsets.UTF_8));
+            store.put("bucket", key, "{}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        Path file = dir.resolve("listing.manifest");
+
+        try (ListingManifest manifest = new ListingManifest(file, "bucket", 0);
+             BucketLister lister = new BucketLister(crashing, "bucket", key -> false, 1, 10)) {
+            lister.start(lister.partitions(0, 1, Collections.emptySet()), manifest);
+            for (int i = 0; i < 500; i++) {
+                assertNotNull(lister.take().object);
+            }
+        }
+
+        List<String> queued = new ArrayList<>();
+        long ended;
+        try (ListingManifest manifest = new ListingManifest(file, "bucket", 0);
+             BucketLister lister = new BucketLister(store, "bucket", BucketListerTest::isThird, 2, 10)) {
+            lister.start(lister.partitions(0, 1, Collections.emptySet()), manifest);
+            BucketLister.Listed listed = lister.take();
+            for (; listed.object != null; listed = lister.take()) {
+                queued.add(listed.object.key());
+            }
+            ended = listed.objects;
+            assertSame(BucketLister.END, lister.take());
+            assertEquals(2500, lister.listedCount());
+        }
+
+        assertEquals(2500, ended);
+        assertEquals(2500 - 834, queued.size());
+        assertEquals(queued.size(), new HashSet<>(queued).size());
+        assertEquals(Arrays.asList("logs/f0999.json", "logs/f1999.json"), tokens, "the first page came from the manifest");
+    }
+
+    @Test
+    @DisplayName("start: An empty bucket ends the queue straight away")
+    void testEmptyBucket() throws Exception {
+        try (BucketLister lister = new BucketLister(new InMemoryObjectStore(), "bucket", key -> false, 2, 10)) {
+            lister.start(lister.partitions(2, 1, Collections.emptySet()));
+            assertSame(BucketLister.END, lister.take());
+        }
+    }
+
+    @Test
+    @DisplayName("take: A listing thread that dies fails the consumer instead of hanging it")
+    void testListingFailure() throws Exception {
+        InMemoryObjectStore store = store("logs/a.json");
+        try (BucketLister lister = new BucketLister(store, "bucket", key -> { throw new IllegalStateException("boom"); }, 1, 10)) {
+            lister.start(lister.partitions(0, 1, Collections.emptySet()));
+            IllegalStateException e = assertThrows(IllegalStateException.class, lister::take);
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    @DisplayName("partitionOf: Prefix up to the D-th delimiter")
+    void testPartitionOf() {
+        assertEquals("logs/2025/01/", BucketLister.partitionOf("logs/2025/01/a.json", 3));
+        assertEquals("logs/", BucketLister.partitionOf("logs/2025/01/a.json", 1));
+        assertNull(BucketLister.partitionOf("logs/a.json", 2));
+        assertNull(BucketLister.partitionOf("logs/a.json", 0));
+    }
+
+    @Test
+    @DisplayName("isCovered: Matches whole path segments only")
+    void testIsCovered() {
+        Set<String> prefixes = new HashSet<>(Arrays.asList("logs/2025/01/"));
+
+        assertTrue(BucketLister.isCovered("logs/2025/01/a.json", prefixes));
+        assertTrue(BucketLister.isCovered("logs/2025/01/deeper/a.json", prefixes));
+        assertFalse(BucketLister.isCovered("logs/2025/011/a.json", prefixes));
+        assertFalse(BucketLister.isCovered("logs/2025/a.json", prefixes));
+        assertFalse(BucketLister.isCovered("logs/2025/01/a.json", Collections.emptySet()));
+    }
+
+    // Every third file of a partition counts as complete
+    private static boolean isThird(String key) {
+        return Integer.parseInt(key.substring(key.length() - 9, key.length() - 5)) % 3 == 0;
+    }
+
+    private static List<BucketLister.Partition> partitions(ObjectStore store, int depth, int openPrefixes,
+                                                           Set<String> completedPrefixes) throws Exception {
+        try (BucketLister lister = new BucketLister(store, "bucket", key -> false, 4, 10)) {
+            return lister.partitions(depth, openPrefixes, completedPrefixes);
+        }
+    }
+
+    private static InMemoryObjectStore store(String... keys) {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        for (String key : keys) {
+            store.put("bucket", key, "{}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        return store;
+    }
+
+    private static List<String> prefixes(List<BucketLister.Partition> partitions) {
+        List<String> prefixes = new ArrayList<>();
+        partitions.forEach(p -> prefixes.add(p.prefix));
+        return prefixes;
+    }
+
+    private static List<Boolean> sealable(List<BucketLister.Partition> partitions) {
+        List<Boolean> sealable = new ArrayList<>();
+        partitions.forEach(p -> sealable.add(p.sealable));
+        return sealable;
+    }
+}
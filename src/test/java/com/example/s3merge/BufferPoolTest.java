@@ -0,0 +1,122 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the size-classed buffer pool, on and off the heap
+ */
+@DisplayName("BufferPool Test Suite")
+class BufferPoolTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("acquire: Released buffers are handed out again, on or off the heap")
+    void testRecycles(boolean direct) {
+        BufferPool pool = new BufferPool(16, 4, direct);
+        ByteBuffer first = pool.acquire();
+        assertEquals(16, first.capacity());
+        assertEquals(direct, first.isDirect());
+        first.put((byte) 1);
+
+        pool.release(first);
+        ByteBuffer second = pool.acquire();
+
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(16, second.remaining());
+    }
+
+    @Test
+    @DisplayName("acquire: Larger requests round up to a doubling of the standard size, pooled per class")
+    void testSizeClasses() {
+        BufferPool pool = new BufferPool(16, 4);
+        ByteBuffer grown = pool.acquire(17);
+        assertEquals(32, grown.capacity());
+        assertEquals(64, pool.acquire(33).capacity());
+        assertEquals(16 << (BufferPool.MAX_CLASSES - 1), pool.acquire(16 << (BufferPool.MAX_CLASSES - 1)).capacity());
+
+        pool.release(grown);
+        assertSame(grown, pool.acquire(20));
+        assertNotSame(grown, pool.acquire(16));
+    }
+
+    @Test
+    @DisplayName("release: One-off buffers and buffers beyond a class's limit are not pooled")
+    void testLimits() {
+        BufferPool pool = new BufferPool(16, 2);
+        ByteBuffer huge = pool.acquire(16 << BufferPool.MAX_CLASSES);
+        assertEquals(16 << BufferPool.MAX_CLASSES, huge.capacity());
+        pool.release(huge);
+        assertEquals(0, pool.pooledCount());
+
+        ByteBuffer[] standard = {pool.acquire(), pool.acquire(), pool.acquire()};
+        for (ByteBuffer buffer : standard) {
+            pool.release(buffer);
+        }
+        assertEquals(2, pool.pooledCount());
+
+        ByteBuffer[] grown = {pool.acquire(64), pool.acquire(64)};
+        for (ByteBuffer buffer : grown) {
+            pool.release(buffer);
+        }
+        assertEquals(2 + 1, pool.pooledCount());  // half as many of each larger class, at least one
+
+        BufferPool unpooled = new BufferPool(16, 0);
+        unpooled.release(unpooled.acquire());
+        assertEquals(0, unpooled.pooledCount());
+    }
+
+    @Test
+    @DisplayName("outstanding: Counts buffers until they are released")
+    void testOutstanding() {
+        BufferPool pool = new BufferPool(16, 1, true);
+        ByteBuffer a = pool.acquire();
+        ByteBuffer b = pool.acquire(100);
+        ByteBuffer c = pool.acquire(16 << BufferPool.MAX_CLASSES);
+        assertEquals(3, pool.outstanding());
+
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+
+        assertEquals(0, pool.outstanding());
+    }
+
+    @Test
+    @DisplayName("release: A buffer from the other side of the heap is not pooled")
+    void testForeignBuffer() {
+        BufferPool pool = new BufferPool(16, 4, true);
+        pool.acquire();
+        pool.release(ByteBuffer.allocate(16));
+
+        assertEquals(0, pool.pooledCount());
+        assertTrue(pool.acquire().isDirect());
+    }
+
+    @Test
+    @DisplayName("acquireBounds: A released array is reused when long enough, up to the pool's limit")
+    void testBounds() {
+        BufferPool pool = new BufferPool(16, 1);
+        int[] bounds = pool.acquireBounds(8);
+        assertEquals(8, bounds.length);
+
+        pool.releaseBounds(bounds);
+        assertSame(bounds, pool.acquireBounds(4));
+
+        pool.releaseBounds(bounds);
+        assertEquals(32, pool.acquireBounds(32).length);
+        assertEquals(0, pool.pooledBoundsCount());
+
+        for (int i = 0; i < 2 * BufferPool.MAX_CLASSES; i++) {
+            pool.releaseBounds(new int[8]);
+        }
+        assertEquals(BufferPool.MAX_CLASSES, pool.pooledBoundsCount());  // one per pooled buffer
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the byte-counted semaphore behind download.budget.mb and queue.budget.mb
+ */
+@DisplayName("ByteBudget Test Suite")
+class ByteBudgetTest {
+
+    @Test
+    @DisplayName("acquire: Reservations within the budget are granted at once and tracked")
+    void testWithinBudget() throws Exception {
+        ByteBudget budget = new ByteBudget(100);
+        budget.acquire(60);
+        budget.acquire(40);
+        assertEquals(100, budget.used());
+
+        budget.release(60);
+        budget.release(40);
+        assertEquals(0, budget.used());
+        assertEquals(100, budget.peak());
+    }
+
+    @Test
+    @DisplayName("acquire: Waits until enough bytes have been released")
+    void testWaitsForRelease() throws Exception {
+        ByteBudget budget = new ByteBudget(100);
+        budget.acquire(80);
+        CountDownLatch granted = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                budget.acquire(50);
+                granted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(granted.await(100, TimeUnit.MILLISECONDS));
+        budget.release(80);
+        assertTrue(granted.await(5, TimeUnit.SECONDS));
+        assertEquals(50, budget.used());
+    }
+
+    @Test
+    @DisplayName("acquire: A reservation larger than the budget runs alone instead of never")
+    void testOversizedClamped() throws Exception {
+        ByteBudget budget = new ByteBudget(100);
+        budget.acquire(10);
+        CountDownLatch granted = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                budget.acquire(5000);
+                granted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(granted.await(100, TimeUnit.MILLISECONDS));
+        budget.release(10);
+        assertTrue(granted.await(5, TimeUnit.SECONDS));
+        assertEquals(100, budget.used());
+        budget.release(5000);
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    @DisplayName("acquire: Granted in arrival order, so a large reservation is not overtaken by small ones")
+    void testArrivalOrder() throws Exception {
+        ByteBudget budget = new ByteBudget(100);
+        budget.acquire(50);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread large = start(budget, 100, "large", order);
+        waitUntilWaiting(large);
+        Thread small = start(budget, 10, "small", order);
+        waitUntilWaiting(small);
+
+        assertTrue(order.isEmpty());   // 10 bytes would fit, but the large reservation came first
+        budget.release(50);
+        large.join(5000);
+        assertEquals(List.of("large"), order);
+        budget.release(100);
+        small.join(5000);
+        assertEquals(List.of("large", "small"), order);
+    }
+
+    @Test
+    @DisplayName("acquire: An interrupted waiter gives up its turn to the ones behind it")
+    void testInterruptedWaiter() throws Exception {
+        ByteBudget budget = new ByteBudget(100);
+        budget.acquire(100);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread first = start(budget, 100, "first", order);
+        waitUntilWaiting(first);
+        Thread second = start(budget, 100, "second", order);
+        waitUntilWaiting(second);
+
+        first.interrupt();
+        first.join(5000);
+        budget.release(100);
+        second.join(5000);
+
+        assertEquals(List.of("second"), order);
+        assertEquals(100, budget.used());
+    }
+
+    private static Thread start(ByteBudget budget, long bytes, String name, List<String> order) {
+        Thread thread = new Thread(() -> {
+            try {
+                budget.acquire(bytes);
+                order.add(name);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for converting a text checkpoint into a binary checkpoint index
+ */
+@DisplayName("CheckpointConverter Test Suite")
+class CheckpointConverterTest {
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1000})
+    @DisplayName("convert: Completed files move to the index whatever the run size; the rest stays as text")
+    void testConvert(int runEntries) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 99; i >= 0; i--) {
+            lines.add("logs/2025/file-" + i + ".json=" + (i + 1));
+        }
+        lines.add(3, "progress_logs/2025/big.json=10:4096");
+        lines.add(50, "bufferCount=0");
+        lines.add(CheckpointJournal.SEGMENT_KEY + "=3");
+        Path text = dir.resolve("checkpoint.txt");
+        Path indexFile = dir.resolve("checkpoint.idx");
+        Files.write(text, lines);
+
+        assertEquals(100, CheckpointConverter.convert(text, indexFile, runEntries));
+
+        try (CheckpointIndex index = CheckpointIndex.open(indexFile)) {
+            assertEquals(100, index.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i + 1, index.lineCount("logs/2025/file-" + i + ".json"));
+            }
+            assertFalse(index.contains("progress_logs/2025/big.json"));
+        }
+        assertEquals(Arrays.asList("progress_logs/2025/big.json=10:4096", "bufferCount=0", CheckpointJournal.SEGMENT_KEY + "=3"),
+                     Files.readAllLines(text));
+        try (var files = Files.list(dir)) {
+            assertEquals(2, files.count(), "no run or temporary files left behind");
+        }
+    }
+
+    @Test
+    @DisplayName("convert: Merges into an existing index, the text entry winning on conflict")
+    void testConvertIntoExistingIndex() throws Exception {
+        Path text = dir.resolve("checkpoint.txt");
+        Path indexFile = dir.resolve("checkpoint.idx");
+        Files.write(text, Arrays.asList("logs/a.json=1", "logs/b.json=2"));
+        CheckpointConverter.convert(text, indexFile, 10);
+
+        Files.write(text, Arrays.asList("logs/b.json=20", "logs/c.json=3"));
+        CheckpointConverter.convert(text, indexFile, 10);
+
+        try (CheckpointIndex index = CheckpointIndex.open(indexFile)) {
+            assertEquals(3, index.size());
+            assertEquals(1, index.lineCount("logs/a.json"));
+            assertEquals(20, index.lineCount("logs/b.json"));
+            assertEquals(3, index.lineCount("logs/c.json"));
+        }
+        assertEquals(Collections.emptyList(), Files.readAllLines(text));
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the memory-mapped, prefix-compressed index of completed files
+ */
+@DisplayName("CheckpointIndex Test Suite")
+class CheckpointIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 15, 16, 17, 1000})
+    @DisplayName("lineCount: Finds every key and nothing else, for any number of restart intervals")
+    void testLookup(int count) throws Exception {
+        TreeMap<String, Long> entries = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            entries.put(String.format("logs/2025/%02d/app-%06d.json", i % 12, i * 2), (long) i * 1000);
+        }
+        Path file = write(entries);
+
+        try (CheckpointIndex index = CheckpointIndex.open(file)) {
+            assertEquals(count, index.size());
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                assertEquals(entry.getValue(), index.lineCount(entry.getKey()));
+            }
+            for (int i = 0; i < count; i++) {
+                assertFalse(index.contains(String.format("logs/2025/%02d/app-%06d.json", i % 12, i * 2 + 1)));
+            }
+            assertFalse(index.contains(""));
+            assertFalse(index.contains("a"));
+            assertFalse(index.contains("zzz"));
+            assertFalse(index.contains(entries.firstKey() + "x"));
+            assertFalse(index.contains(entries.lastKey().substring(0, 10)));
+        }
+    }
+
+    @Test
+    @DisplayName("write: Keys sharing long prefixes are stored as short suffixes")
+    void testPrefixCompression() throws Exception {
+        TreeMap<String, Long> entries = new TreeMap<>();
+        long keyBytes = 0;
+        for (int i = 0; i < 10000; i++) {
+            String key = "tenant-42/service/api-gateway/2025/12/26/part-" + String.format("%08d", i) + ".json";
+            entries.put(key, 25500L);
+            keyBytes += key.length();
+        }
+
+        Path file = write(entries);
+
+        assertTrue(Files.size(file) < keyBytes / 3, "index of " + Files.size(file) + " bytes for " + keyBytes + " key bytes");
+    }
+
+    @Test
+    @DisplayName("lineCount: Orders multi-byte keys by their UTF-8 bytes")
+    void testUnicodeKeys() throws Exception {
+        List<String> keys = Arrays.asList("logs/a.json", "logs/é.json", "logs/日本.json", "logs/🚀.json", "logs/�.json");
+        List<CheckpointIndex.Entry> sorted = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            sorted.add(new CheckpointIndex.Entry(keys.get(i), i));
+        }
+        Collections.sort(sorted);
+        Path file = dir.resolve("checkpoint.idx");
+        CheckpointIndex.merge(file, Collections.singletonList(sorted.iterator()));
+
+        try (CheckpointIndex index = CheckpointIndex.open(file)) {
+            for (int i = 0; i < keys.size(); i++) {
+                assertEquals(i, index.lineCount(keys.get(i)));
+            }
+            assertFalse(index.contains("logs/日.json"));
+        }
+    }
+
+    @Test
+    @DisplayName("open: Missing file is an empty index")
+    void testMissingFile() throws Exception {
+        try (CheckpointIndex index = CheckpointIndex.open(dir.resolve("missing.idx"))) {
+            assertEquals(0, index.size());
+            assertFalse(index.contains("logs/a.json"));
+            assertFalse(index.cursor().next());
+        }
+    }
+
+    @Test
+    @DisplayName("open: Rejects a file that is not an index")
+    void testNotAnIndex() throws Exception {
+        Path file = dir.resolve("checkpoint.idx");
+        Files.write(file, "logs/a.json=10\nlogs/b.json=20\nlogs/c.json=30\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> CheckpointIndex.open(file));
+    }
+
+    @Test
+    @DisplayName("write: Keys out of order are rejected and the existing index is kept")
+    void testUnsortedRejected() throws Exception {
+        Path file = write(new TreeMap<>(Map.of("logs/a.json", 1L)));
+
+        List<CheckpointIndex.Entry> unsorted = Arrays.asList(
+            new CheckpointIndex.Entry("logs/b.json", 2), new CheckpointIndex.Entry("logs/a.json", 1));
+        assertThrows(IllegalArgumentException.class,
+                     () -> CheckpointIndex.merge(file, Collections.singletonList(unsorted.iterator())));
+
+        try (CheckpointIndex index = CheckpointIndex.open(file)) {
+            assertEquals(1, index.size());
+            assertEquals(1, index.lineCount("logs/a.json"));
+        }
+        assertFalse(Files.exists(dir.resolve("checkpoint.idx.tmp")));
+    }
+
+    @Test
+    @DisplayName("merge: Union of sorted sources, later sources winning on duplicate keys")
+    void testMerge() throws Exception {
+        Path file = write(new TreeMap<>(Map.of("logs/a.json", 1L, "logs/c.json", 3L, "logs/e.json", 5L)));
+
+        try (CheckpointIndex existing = CheckpointIndex.open(file)) {
+            List<CheckpointIndex.Entry> added = Arrays.asList(
+                new CheckpointIndex.Entry("logs/b.json", 2), new CheckpointIndex.Entry("logs/c.json", 30));
+            CheckpointIndex.merge(file, Arrays.asList(existing.entries(), added.iterator()));
+        }
+
+        try (CheckpointIndex index = CheckpointIndex.open(file)) {
+            List<String> keys = new ArrayList<>();
+            CheckpointIndex.Cursor cursor = index.cursor();
+            while (cursor.next()) {
+                keys.add(new String(cursor.key(), StandardCharsets.UTF_8) + "=" + cursor.value());
+            }
+            assertEquals(Arrays.asList("logs/a.json=1", "logs/b.json=2", "logs/c.json=30", "logs/e.json=5"), keys);
+        }
+    }
+
+    private Path write(SortedMap<String, Long> entries) throws IOException {
+        Path file = dir.resolve("checkpoint.idx");
+        try (CheckpointIndex.Writer writer = new CheckpointIndex.Writer(file)) {
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.add(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+            }
+        }
+        return file;
+    }
+}
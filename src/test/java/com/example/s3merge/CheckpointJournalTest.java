@@ -0,0 +1,312 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the checkpoint journal plus its snapshot always replay to the map
+ * the merger had in memory
+ */
+@DisplayName("CheckpointJournal Test Suite")
+class CheckpointJournalTest {
+
+    private static final long NO_FLUSH = 60_000;
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+
+    @TempDir
+    Path dir;
+
+    private Path snapshot;
+    private Map<String, String> state;
+    private final Object lock = new Object();
+    private CheckpointJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = dir.resolve("checkpoint.txt");
+        state = new HashMap<>();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    @DisplayName("replay: Synced puts and removes are applied on top of the snapshot")
+    void testReplayOverSnapshot() throws Exception {
+        Files.write(snapshot, Arrays.asList("logs/a.json=10", "progress_logs/b.json=2:20"));
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+
+        change("logs/b.json", "4");
+        change("progress_logs/b.json", null);
+        change("progress_logs/c.json", "1:7");
+        journal.sync();
+
+        assertEquals(expected("logs/a.json=10", "logs/b.json=4", "progress_logs/c.json=1:7"), reload());
+    }
+
+    @Test
+    @DisplayName("sync: Records are only written at a group commit")
+    void testGroupCommit() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+
+        change("logs/a.json", "1");
+        change("logs/b.json", "2");
+        assertEquals(0, Files.size(CheckpointJournal.segmentPath(snapshot, 1)));
+
+        journal.sync();
+        assertEquals(2, Files.readAllLines(CheckpointJournal.segmentPath(snapshot, 1)).size());
+    }
+
+    @Test
+    @DisplayName("flusher: Appended records become durable without an explicit sync")
+    void testBackgroundFlush() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, 10, NO_COMPACTION);
+
+        change("logs/a.json", "1");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.size(CheckpointJournal.segmentPath(snapshot, 1)) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected("logs/a.json=1"), reload());
+    }
+
+    @Test
+    @DisplayName("replay: A torn record ends its segment without corrupting the value before it")
+    void testTornTail() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("progress_logs/a.json", "1:10");
+        change("progress_logs/a.json", "2:20");
+        journal.sync();
+
+        Path segment = CheckpointJournal.segmentPath(snapshot, 1);
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 4));
+
+        assertEquals(expected("progress_logs/a.json=1:10"), reload());
+    }
+
+    @Test
+    @DisplayName("replay: Record whose checksum does not match is not applied")
+    void testChecksumMismatch() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("logs/a.json", "1");
+        journal.sync();
+
+        Files.write(CheckpointJournal.segmentPath(snapshot, 1),
+                    "+logs/b.json=2\t0\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertEquals(expected("logs/a.json=1"), reload());
+    }
+
+    @Test
+    @DisplayName("compact: Snapshot covers the folded segments and they are deleted")
+    void testCompaction() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("logs/a.json", "1");
+        change("progress_logs/b.json", "3:30");
+
+        journal.compact();
+        change("progress_logs/b.json", null);
+        change("logs/b.json", "5");
+        journal.sync();
+
+        assertEquals(Arrays.asList(2L), CheckpointJournal.segmentNumbers(snapshot));
+        assertTrue(Files.readAllLines(snapshot).contains(CheckpointJournal.SEGMENT_KEY + "=2"));
+        assertEquals(expected("logs/a.json=1", "logs/b.json=5"), reload());
+    }
+
+    @Test
+    @DisplayName("compact: Snapshot is UTF-8 whatever the platform charset, like the segments")
+    void testCompactionUnicodeKeys() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("logs/日本語/€.json", "1");
+        change("progress_logs/émojis-🚀.json", "2:20");
+
+        journal.compact();
+
+        assertEquals(expected("logs/日本語/€.json=1", "progress_logs/émojis-🚀.json=2:20"), reload());
+    }
+
+    @Test
+    @DisplayName("compact: Runs in the background once the journal reaches the threshold")
+    void testCompactionThreshold() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, 64);
+        for (int i = 0; i < 10; i++) {
+            change("logs/file-" + i + ".json", String.valueOf(i));
+        }
+        journal.sync();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Files.exists(snapshot) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.readAllLines(snapshot).contains("logs/file-9.json=9"));
+        assertEquals(state, reload());
+    }
+
+    @Test
+    @DisplayName("compact: With an index, completed files move out of the snapshot and the map")
+    void testCompactionIntoIndex() throws Exception {
+        Path indexFile = dir.resolve("checkpoint.idx");
+        journal = new CheckpointJournal(snapshot, indexFile, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("logs/a.json", "10");
+        change("logs/b.json", "20");
+        change("progress_logs/c.json", "3:30");
+
+        journal.compact();
+
+        try (CheckpointIndex index = CheckpointIndex.open(indexFile)) {
+            assertEquals(10, index.lineCount("logs/a.json"));
+            assertEquals(20, index.lineCount("logs/b.json"));
+            assertFalse(index.contains("progress_logs/c.json"));
+        }
+        assertEquals(expected("progress_logs/c.json=3:30"), state);
+        assertEquals(expected("progress_logs/c.json=3:30"), reload());
+
+        change("progress_logs/c.json", null);
+        change("logs/c.json", "5");
+        journal.compact();
+
+        try (CheckpointIndex index = CheckpointIndex.open(indexFile)) {
+            assertEquals(3, index.size());
+            assertEquals(5, index.lineCount("logs/c.json"));
+        }
+        assertEquals(Collections.emptyMap(), reload());
+    }
+
+    @Test
+    @DisplayName("compact: Completed files under a completed prefix are dropped from snapshot, map and index")
+    void testCompactionCollapsesCompletedPrefix() throws Exception {
+        Path indexFile = dir.resolve("checkpoint.idx");
+        journal = new CheckpointJournal(snapshot, indexFile, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("logs/2025/01/a.json", "10");
+        change("logs/2025/02/b.json", "20");
+        journal.compact();
+
+        change("logs/2025/01/c.json", "30");
+        change("prefix_logs/2025/01/", "2");
+        change("progress_logs/2025/01/d.json", "1:5");
+        journal.compact();
+
+        Map<String, String> left = expected("prefix_logs/2025/01/=2", "progress_logs/2025/01/d.json=1:5");
+        assertEquals(left, state);
+        assertEquals(left, reload());
+        try (CheckpointIndex index = CheckpointIndex.open(indexFile)) {
+            assertEquals(1, index.size());
+            assertEquals(20, index.lineCount("logs/2025/02/b.json"));
+        }
+    }
+
+    @Test
+    @DisplayName("replay: Segments left behind by a crash are replayed in order and folded by the next run")
+    void testLeftoverSegments() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("progress_logs/a.json", "1:10");
+        journal.sync();
+        journal.compact();
+        change("progress_logs/a.json", "2:20");
+        journal.sync();
+        // Crash: segment 2 is never folded
+
+        Map<String, String> restored = reload();
+        assertEquals(expected("progress_logs/a.json=2:20"), restored);
+
+        CheckpointJournal next = new CheckpointJournal(snapshot, restored, lock, NO_FLUSH, NO_COMPACTION);
+        synchronized (lock) {
+            restored.put("logs/b.json", "1");
+            next.put("logs/b.json", "1");
+        }
+        next.close();
+
+        assertEquals(Collections.emptyList(), CheckpointJournal.segmentNumbers(snapshot));
+        assertEquals(expected("progress_logs/a.json=2:20", "logs/b.json=1"), reload());
+    }
+
+    @Test
+    @DisplayName("sync: Changes made during group commits and compactions all replay")
+    void testConcurrentChangesDuringCommits() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, 1, 256);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int writer = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    change("progress_logs/w" + writer + ".json", (i + 1) + ":" + i);
+                    change("logs/w" + writer + "-" + i + ".json", String.valueOf(i));
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        journal.close();
+        journal = null;
+
+        assertEquals(state, reload());
+    }
+
+    @Test
+    @DisplayName("close: Leaves a complete snapshot and no segments")
+    void testClose() throws Exception {
+        journal = new CheckpointJournal(snapshot, state, lock, NO_FLUSH, NO_COMPACTION);
+        change("logs/a.json", "1");
+
+        journal.close();
+        journal = null;
+
+        assertEquals(Collections.emptyList(), CheckpointJournal.segmentNumbers(snapshot));
+        assertEquals(expected("logs/a.json=1"), reload());
+    }
+
+    // Change the in-memory state and journal it, as the merger does; null removes the key
+    private void change(String key, String value) {
+        synchronized (lock) {
+            if (value == null) {
+                state.remove(key);
+                journal.remove(key);
+            } else {
+                state.put(key, value);
+                journal.put(key, value);
+            }
+        }
+    }
+
+    // Load the snapshot and replay the journal the way loadCheckpoint does
+    private Map<String, String> reload() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        if (Files.exists(snapshot)) {
+            for (String line : Files.readAllLines(snapshot)) {
+                String[] parts = line.split("=", 2);
+                map.put(parts[0], parts[1]);
+            }
+        }
+        CheckpointJournal.replay(snapshot, map);
+        return map;
+    }
+
+    private static Map<String, String> expected(String... entries) {
+        Map<String, String> map = new HashMap<>();
+        for (String entry : entries) {
+            String[] parts = entry.split("=", 2);
+            map.put(parts[0], parts[1]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for intra-file progress: which lines of a partially merged file the checkpoint
+ * records as uploaded, and when the file is marked complete
+ */
+@DisplayName("ChunkLedger Test Suite")
+class ChunkLedgerTest {
+
+    private static final String CHECKPOINT = "checkpoint.txt";
+    private static final String KEY = "logs/big.json";
+
+    private Map<String, String> checkpoint;
+    private CompletedSet completedFiles;
+    private S3SequentialJsonArrayMerger.ChunkLedger ledger;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.deleteIfExists(Paths.get(CHECKPOINT));
+        checkpoint = new HashMap<>();
+        completedFiles = CompletedSet.create("heap", 0);
+        ledger = new S3SequentialJsonArrayMerger.ChunkLedger(checkpoint, completedFiles, 4, 0);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(Paths.get(CHECKPOINT));
+        Files.deleteIfExists(Paths.get(CHECKPOINT + ".tmp"));
+    }
+
+    @Test
+    @DisplayName("uploaded: Records the last uploaded line and its byte offset mid-file")
+    void testProgressMarker() throws Exception {
+        List<LineBatch> batches = frame("aaa\nbbb\nccc\nddd\n");
+
+        ledger.acquireSlot();
+        ledger.uploaded(ledger.nextSeq(), chunk(batches.get(0), 0, 2));
+
+        assertEquals("2:8", checkpoint.get("progress_" + KEY));
+        assertFalse(completedFiles.contains(KEY));
+        assertTrue(Files.readAllLines(Paths.get(CHECKPOINT)).contains("progress_" + KEY + "=2:8"));
+    }
+
+    @Test
+    @DisplayName("uploaded: A chunk finishing early waits for the chunks before it")
+    void testOutOfOrderCompletion() throws Exception {
+        List<LineBatch> batches = frame("aaa\nbbb\nccc\nddd\n");
+        ChunkWriter first = chunk(batches.get(0), 0, 2);
+        ChunkWriter second = chunk(batches.get(0), 2, 4);
+        ledger.acquireSlot();
+        long firstSeq = ledger.nextSeq();
+        ledger.acquireSlot();
+        long secondSeq = ledger.nextSeq();
+
+        ledger.uploaded(secondSeq, second);
+        assertNull(checkpoint.get("progress_" + KEY));
+
+        ledger.uploaded(firstSeq, first);
+        assertEquals("4:16", checkpoint.get("progress_" + KEY));
+    }
+
+    @Test
+    @DisplayName("abandoned: A failed chunk is recorded and the chunks after it are not applied")
+    void testAbandonedChunk() throws Exception {
+        List<LineBatch> batches = frame("aaa\nbbb\nccc\nddd\n");
+        ChunkWriter second = chunk(batches.get(0), 2, 4);
+        ledger.acquireSlot();
+        long firstSeq = ledger.nextSeq();
+        ledger.acquireSlot();
+        long secondSeq = ledger.nextSeq();
+
+        ledger.abandoned(firstSeq, "merged/failed.json");
+        ledger.uploaded(secondSeq, second);
+        ledger.awaitAll();
+
+        assertNull(checkpoint.get("progress_" + KEY));
+        assertEquals(List.of("merged/failed.json"), ledger.abandonedChunks());
+    }
+
+    @Test
+    @DisplayName("fileRead: File is complete only once its last line is uploaded")
+    void testCompletionAfterLastLine() throws Exception {
+        List<LineBatch> batches = frame("aaa\nbbb\nccc\n");
+
+        ledger.fileRead(KEY, 0, 3);
+        assertFalse(completedFiles.contains(KEY));
+
+        ledger.acquireSlot();
+        ledger.uploaded(ledger.nextSeq(), chunk(batches.get(0), 0, 3));
+
+        assertTrue(completedFiles.contains(KEY));
+        assertEquals("3", checkpoint.get(KEY));
+        assertNull(checkpoint.get("progress_" + KEY));
+    }
+
+    @Test
+    @DisplayName("fileRead: File with no new lines since its progress marker completes at once")
+    void testNothingLeftToUpload() {
+        checkpoint.put("progress_" + KEY, "7:70");
+
+        ledger.fileRead(KEY, 7, 7);
+
+        assertTrue(completedFiles.contains(KEY));
+        assertEquals("7", checkpoint.get(KEY));
+        assertNull(checkpoint.get("progress_" + KEY));
+    }
+
+    @Test
+    @DisplayName("progressValue: Round-trips line and offset, and reads line-only markers")
+    void testProgressValue() {
+        String value = S3SequentialJsonArrayMerger.progressValue(123, 4567);
+        assertEquals(123, S3SequentialJsonArrayMerger.progressLine(value));
+        assertEquals(4567, S3SequentialJsonArrayMerger.progressOffset(value));
+
+        assertEquals("9", S3SequentialJsonArrayMerger.progressValue(9, -1));
+        assertEquals(9, S3SequentialJsonArrayMerger.progressLine("9"));
+        assertEquals(-1, S3SequentialJsonArrayMerger.progressOffset("9"));
+    }
+
+    private static List<LineBatch> frame(String body) throws Exception {
+        List<LineBatch> batches = new ArrayList<>();
+        new LineFramer(new BufferPool(1024, 4), KEY, 0, batches::add)
+            .frame(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        return batches;
+    }
+
+    private static ChunkWriter chunk(LineBatch batch, int from, int to) throws Exception {
+        ChunkWriter writer = new ChunkWriter(new InMemoryObjectStore(), "target", 1024, 1, Runnable::run,
+                                             (sourceKey, prefix) -> prefix);
+        writer.write(batch, from, to);
+        writer.finish("merged-").join();
+        return writer;
+    }
+}
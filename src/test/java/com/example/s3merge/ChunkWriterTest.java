@@ -0,0 +1,315 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for streaming a chunk into parts while it is still being written
+ */
+@DisplayName("ChunkWriter Test Suite")
+class ChunkWriterTest {
+
+    private static final String BUCKET = "target";
+
+    @Test
+    @DisplayName("finish: Chunk smaller than one part is a single put named with the finish prefix")
+    void testSmallChunkSinglePut() throws Exception {
+        CountingStore store = new CountingStore();
+        ChunkWriter writer = writer(store, 1024);
+        writer.write(new LineBatch(Arrays.asList("a", "bb", "ccc"), "logs/x/file.json", 1), 0, 3);
+
+        writer.finish("final-").join();
+
+        assertEquals("logs/x/final-", writer.key());
+        assertEquals("a\nbb\nccc", content(store, writer.key()));
+        assertEquals(0, store.createCalls.get());
+        assertEquals(3, writer.lineCount());
+        assertEquals(8, writer.bytesWritten());
+    }
+
+    @Test
+    @DisplayName("write: Parts ship as they fill and lines may straddle part boundaries")
+    void testStreamsParts() throws Exception {
+        CountingStore store = new CountingStore();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            lines.add("{\"line\":" + i + "}");
+        }
+        ChunkWriter writer = writer(store, 16);
+        writer.write(new LineBatch(lines, "logs/x/file.json", 1), 0, 20);
+        assertTrue(store.partCalls.get() > 0, "parts should ship before the chunk is finished");
+        writer.write(new LineBatch(lines, "logs/x/file.json", 1), 20, 50);
+
+        writer.finish("final-").join();
+
+        assertEquals("logs/x/merged-", writer.key());
+        assertEquals(String.join("\n", lines), content(store, writer.key()));
+        assertEquals(1, store.createCalls.get());
+        assertEquals((writer.bytesWritten() + 15) / 16, store.partCalls.get());
+    }
+
+    @Test
+    @DisplayName("write: Byte-mode batches are copied without decoding")
+    void testByteBatches() throws Exception {
+        CountingStore store = new CountingStore();
+        String body = "{\"k\":\"日本語\"}\r\n{\"k\":\"🚀\"}\nplain\n";
+        List<LineBatch> batches = new ArrayList<>();
+        new LineFramer(new BufferPool(8, 4), "logs/b.json", 0, batches::add)
+            .frame(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        ChunkWriter writer = writer(store, 7);
+        for (LineBatch batch : batches) {
+            writer.write(batch, 0, batch.size());
+            batch.release();
+        }
+        writer.finish("final-").join();
+
+        assertEquals("{\"k\":\"日本語\"}\n{\"k\":\"🚀\"}\nplain", content(store, writer.key()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 5, 1024})
+    @DisplayName("write: String lines are encoded as String.getBytes would, across part boundaries")
+    void testStringEncoding(int partSize) throws Exception {
+        CountingStore store = new CountingStore();
+        List<String> lines = Arrays.asList("plain ascii", "{\"k\":\"日本語\"}", "é ß ½", "🚀 rocket 🚀",
+                                           "lone \uD83D high", "lone \uDE80 low", "end \uD83D", "");
+        ChunkWriter writer = writer(store, partSize);
+        writer.write(new LineBatch(lines, "logs/x/file.json", 1), 0, lines.size());
+
+        writer.finish("final-").join();
+
+        byte[] expected = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, store.getBytes(BUCKET, writer.key()));
+        assertEquals(expected.length, writer.bytesWritten());
+    }
+
+    @Test
+    @DisplayName("finish: Part buffers go back to the pool and are reused by the next chunk")
+    void testPartsRecycled() throws Exception {
+        CountingStore store = new CountingStore();
+        BufferPool parts = new BufferPool(8, 4);
+        List<String> lines = Arrays.asList("0123456789", "abcdefghij", "klm");
+
+        for (int chunk = 0; chunk < 3; chunk++) {
+            ChunkWriter writer = new ChunkWriter(store, BUCKET, parts, 1, Runnable::run,
+                                                 (sourceKey, prefix) -> prefix + sourceKey);
+            writer.write(new LineBatch(lines, String.valueOf(chunk), 1), 0, lines.size());
+            writer.finish("final-").join();
+
+            assertEquals(String.join("\n", lines), content(store, writer.key()));
+            // One buffer fills while the other ships, chunk after chunk
+            assertEquals(2, parts.pooledCount());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes", "string"})
+    @DisplayName("finish: Direct parts upload the same bytes and all go back to the pool")
+    void testDirectParts(String mode) throws Exception {
+        CountingStore store = new CountingStore();
+        BufferPool parts = new BufferPool(16, 4, true);
+        String body = "{\"k\":\"日本語\"}\n{\"k\":\"🚀\"}\nplain\n" + "x".repeat(40) + "\nlast";
+        List<LineBatch> batches = new ArrayList<>();
+        if (mode.equals("bytes")) {
+            new LineFramer(new BufferPool(8, 4, true), "logs/b.json", 0, batches::add)
+                .frame(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        } else {
+            batches.add(new LineBatch(Arrays.asList(body.split("\n")), "logs/b.json", 1));
+        }
+
+        for (String prefix : Arrays.asList("multi-", "single-")) {
+            ChunkWriter writer = new ChunkWriter(store, BUCKET, parts, 2, Runnable::run, (sourceKey, p) -> p);
+            if (prefix.equals("multi-")) {
+                for (LineBatch batch : batches) {
+                    writer.write(batch, 0, batch.size());
+                }
+            } else {
+                writer.write(new LineBatch(Arrays.asList("short"), "logs/b.json", 1), 0, 1);
+            }
+            writer.finish(prefix).join();
+        }
+        batches.forEach(LineBatch::release);
+
+        assertEquals(body, content(store, "merged-"));
+        assertEquals("short", content(store, "single-"));
+        assertEquals(0, parts.outstanding());
+    }
+
+    @Test
+    @DisplayName("write: Tracks the last line written from each source file")
+    void testTracksLastLines() throws Exception {
+        ChunkWriter writer = writer(new CountingStore(), 1024);
+        writer.write(new LineBatch(Arrays.asList("r1", "r2"), "logs/old.json", 0), 0, 2);
+        writer.write(new LineBatch(Arrays.asList("a", "b", "c"), "logs/a.json", 5), 0, 2);
+        writer.write(new LineBatch(Arrays.asList("d", "e"), "logs/b.json", 1), 0, 2);
+
+        Map<String, Long> lastLines = writer.lastLines();
+        assertEquals(Arrays.asList("logs/a.json", "logs/b.json"), new ArrayList<>(lastLines.keySet()));
+        assertEquals(6L, lastLines.get("logs/a.json"));
+        assertEquals(2L, lastLines.get("logs/b.json"));
+        assertEquals(2, writer.restoredLines());
+        assertEquals("logs/b.json", writer.lastSourceKey());
+    }
+
+    @Test
+    @DisplayName("write: Tracks the resume offset of byte-mode lines")
+    void testTracksResumeOffsets() throws Exception {
+        List<LineBatch> batches = new ArrayList<>();
+        new LineFramer(new BufferPool(1024, 4), "logs/a.json", 0, batches::add)
+            .frame(new ByteArrayInputStream("one\r\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8)));
+        ChunkWriter writer = writer(new CountingStore(), 1024);
+
+        writer.write(batches.get(0), 0, 2);
+        assertEquals(2L, writer.lastLines().get("logs/a.json"));
+        assertEquals(9L, writer.resumeOffsets().get("logs/a.json"));
+
+        writer.write(new LineBatch(Arrays.asList("x"), "logs/b.json", 1), 0, 1);
+        assertEquals(-1L, writer.resumeOffsets().get("logs/b.json"));
+    }
+
+    @Test
+    @DisplayName("finish: A failed part is retried on its own")
+    void testFailedPartRetried() throws Exception {
+        CountingStore store = new CountingStore();
+        store.failPart = 2;
+        ChunkWriter writer = writer(store, 4);
+        writer.write(new LineBatch(Arrays.asList("0123456789", "abcdef"), "k", 1), 0, 2);
+
+        writer.finish("final-").join();
+
+        assertEquals("0123456789\nabcdef", content(store, writer.key()));
+        assertEquals(1, store.createCalls.get());
+        assertEquals(5 + 1, store.partCalls.get());
+    }
+
+    @Test
+    @DisplayName("finish: Parts upload concurrently up to the limit and complete in part order")
+    void testConcurrentParts() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        List<String> completedETags = new ArrayList<>();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) throws IOException {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(partNumber == 1 ? 150 : 20); // part 1 finishes last
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    active.decrementAndGet();
+                }
+                return super.uploadPart(bucket, key, uploadId, partNumber, data);
+            }
+
+            @Override
+            public void completeMultipartUpload(String bucket, String key, String uploadId, List<String> partETags) throws IOException {
+                for (String eTag : partETags) {
+                    completedETags.add(eTag.substring(eTag.lastIndexOf('-') + 1));
+                }
+                super.completeMultipartUpload(bucket, key, uploadId, partETags);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ChunkWriter writer = new ChunkWriter(store, BUCKET, 4, 2, executor, (sourceKey, prefix) -> prefix);
+            writer.write(new LineBatch(Arrays.asList("aaaa", "bbbb", "cccc", "dddd"), "k", 1), 0, 4);
+
+            writer.finish("final-").get(10, TimeUnit.SECONDS);
+
+            assertEquals("aaaa\nbbbb\ncccc\ndddd", content(store, writer.key()));
+            assertEquals(Arrays.asList("1", "2", "3", "4", "5"), completedETags);
+            assertEquals(2, maxActive.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1024, 4})
+    @DisplayName("finish: The commit listener hears of the object after its parts and before it is visible")
+    void testCommitListener(int partSize) throws Exception {
+        CountingStore store = new CountingStore();
+        ChunkWriter writer = writer(store, partSize);
+        writer.write(new LineBatch(Arrays.asList("0123456789", "abcdef"), "logs/x/file.json", 1), 0, 2);
+        List<String> committing = new ArrayList<>();
+        AtomicInteger partsBefore = new AtomicInteger();
+
+        writer.finish("final-", (bucket, key) -> {
+            assertNull(store.getBytes(bucket, key));
+            partsBefore.set(store.partCalls.get());
+            committing.add(bucket + "/" + key);
+        }).join();
+
+        assertEquals(Arrays.asList(BUCKET + "/" + writer.key()), committing);
+        assertEquals(store.partCalls.get(), partsBefore.get());
+        assertEquals("0123456789\nabcdef", content(store, writer.key()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1024, 4})
+    @DisplayName("finish: An object whose commit listener fails is abandoned, never made visible")
+    void testCommitListenerFails(int partSize) throws Exception {
+        CountingStore store = new CountingStore();
+        ChunkWriter writer = writer(store, partSize);
+        writer.write(new LineBatch(Arrays.asList("0123456789", "abcdef"), "logs/x/file.json", 1), 0, 2);
+
+        CompletableFuture<Void> done = writer.finish("final-", (bucket, key) -> {
+            throw new IllegalStateException("checkpoint not writable");
+        });
+
+        assertThrows(CompletionException.class, done::join);
+        assertNull(store.getBytes(BUCKET, writer.key()));
+    }
+
+    private static ChunkWriter writer(ObjectStore store, int partSize) {
+        return new ChunkWriter(store, BUCKET, partSize, 1, Runnable::run,
+                               (sourceKey, prefix) -> sourceKey.substring(0, sourceKey.lastIndexOf('/') + 1) + prefix);
+    }
+
+    private static String content(InMemoryObjectStore store, String key) {
+        return new String(store.getBytes(BUCKET, key), StandardCharsets.UTF_8);
+    }
+
+    // Counts multipart requests and can fail one part once with a network error
+    private static class CountingStore extends InMemoryObjectStore {
+        final AtomicInteger createCalls = new AtomicInteger();
+        final AtomicInteger partCalls = new AtomicInteger();
+        int failPart = -1;
+
+        @Override
+        public String createMultipartUpload(String bucket, String key) {
+            createCalls.incrementAndGet();
+            return super.createMultipartUpload(bucket, key);
+        }
+
+        @Override
+        public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) throws IOException {
+            partCalls.incrementAndGet();
+            if (partNumber == failPart) {
+                failPart = -1;
+                throw new IOException("Connection reset");
+            }
+            return super.uploadPart(bucket, key, uploadId, partNumber, data);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that every completed-set implementation answers exactly like a HashSet of the keys
+ */
+@DisplayName("CompletedSet Test Suite")
+class CompletedSetTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "digest"})
+    @DisplayName("add/contains: Holds exactly the keys added, counting duplicates once")
+    void testAddContains(String type) {
+        CompletedSet set = CompletedSet.create(type, 0);
+
+        set.add("logs/a.json");
+        set.add("logs/b.json");
+        set.add("logs/a.json");
+        set.add("");
+        set.add("logs/日本語/🚀.json");
+
+        assertEquals(4, set.size());
+        assertTrue(set.contains("logs/a.json"));
+        assertTrue(set.contains("logs/b.json"));
+        assertTrue(set.contains(""));
+        assertTrue(set.contains("logs/日本語/🚀.json"));
+        assertFalse(set.contains("logs/c.json"));
+        assertFalse(set.contains("logs/a.json "));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "digest"})
+    @DisplayName("add: Grows far past the expected size without losing keys")
+    void testGrowth(String type) {
+        CompletedSet set = CompletedSet.create(type, 10);
+
+        for (int i = 0; i < 200_000; i++) {
+            set.add(key(i));
+        }
+
+        assertEquals(200_000, set.size());
+        for (int i = 0; i < 200_000; i++) {
+            assertTrue(set.contains(key(i)), key(i));
+        }
+        for (int i = 200_000; i < 300_000; i++) {
+            assertFalse(set.contains(key(i)), key(i));
+        }
+    }
+
+    @Test
+    @DisplayName("digest: Costs well under 32 bytes of direct memory per key")
+    void testDigestFootprint() {
+        DigestCompletedSet set = new DigestCompletedSet(0);
+        for (int i = 0; i < 300_000; i++) {
+            set.add(key(i));
+        }
+
+        assertEquals(300_000, set.size());
+        assertTrue(set.capacityBytes() < 32L * 300_000, set.capacityBytes() + " bytes");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "digest"})
+    @DisplayName("contains: Safe to call while the upload side adds keys")
+    void testConcurrentAccess(String type) throws Exception {
+        CompletedSet set = CompletedSet.create(type, 0);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reader = executor.submit(() -> {
+                int checked = 0;
+                while (!done.get()) {
+                    long size = set.size();
+                    for (int i = 0; i < size; i += 97) {
+                        assertTrue(set.contains(key(i)));
+                    }
+                    checked++;
+                }
+                return checked;
+            });
+            for (int i = 0; i < 50_000; i++) {
+                set.add(key(i));
+            }
+            done.set(true);
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("create: Unknown type is rejected")
+    void testUnknownType() {
+        assertThrows(IllegalArgumentException.class, () -> CompletedSet.create("bloom", 0));
+    }
+
+    @Test
+    @DisplayName("KeyDigest: Matches the reference 128-bit MurmurHash3 of the UTF-8 key")
+    void testKeyDigestKnownAnswers() {
+        KeyDigest hello = KeyDigest.of("hello");
+        assertEquals(0xcbd8a7b341bd9b02L, hello.high);
+        assertEquals(0x5b1e906a48ae1d19L, hello.low);
+
+        KeyDigest key = KeyDigest.of("logs/2025/12/26/app-00000001.json");
+        assertEquals(0x2b200a961c6aeaa9L, key.high);
+        assertEquals(0x6d634310ee28f416L, key.low);
+    }
+
+    private static String key(int i) {
+        return "logs/2025/" + (i % 12 + 1) + "/" + (i % 28 + 1) + "/app-" + i + ".json";
+    }
+}
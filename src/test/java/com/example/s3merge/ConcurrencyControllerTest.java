@@ -0,0 +1,105 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the AIMD limit behind download.concurrency.adaptive. A window of 0 ms makes
+ * every call to limit() close a window.
+ */
+@DisplayName("ConcurrencyController Test Suite")
+class ConcurrencyControllerTest {
+
+    @Test
+    @DisplayName("limit: Throttling halves the limit and reports the change")
+    void testThrottlingHalves() {
+        List<Integer> changes = new ArrayList<>();
+        ConcurrencyController controller = new ConcurrencyController(40, 4, 100, 0, changes::add);
+
+        controller.throttled();
+        controller.throttled();
+
+        assertEquals(20, controller.limit());
+        assertEquals(List.of(20), changes);
+        assertEquals(40, controller.peakLimit());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 7})
+    @DisplayName("limit: Never backs off below the minimum")
+    void testMinimum(int min) {
+        ConcurrencyController controller = new ConcurrencyController(8, min, 100, 0, limit -> { });
+        for (int i = 0; i < 5; i++) {
+            controller.throttled();
+            controller.limit();
+        }
+        assertEquals(min, controller.currentLimit());
+    }
+
+    @Test
+    @DisplayName("limit: Grows while throughput improves, holds when it does not")
+    void testGrowsWithThroughput() {
+        ConcurrencyController controller = new ConcurrencyController(10, 1, 100, 0, limit -> { });
+
+        controller.bytesRead(1);
+        assertEquals(10, controller.limit());   // first window, nothing to compare with
+        controller.bytesRead(1L << 40);
+        assertEquals(10 + ConcurrencyController.INCREASE_STEP, controller.limit());
+        assertEquals(10 + ConcurrencyController.INCREASE_STEP, controller.limit());   // no bytes: held
+    }
+
+    @Test
+    @DisplayName("limit: Never grows above the maximum")
+    void testMaximum() {
+        List<Integer> changes = new ArrayList<>();
+        ConcurrencyController controller = new ConcurrencyController(100, 1, 16, 0, changes::add);
+        assertEquals(16, controller.currentLimit());
+
+        controller.limit();
+        controller.bytesRead(1L << 40);
+
+        assertEquals(16, controller.limit());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    @DisplayName("limit: Backs off when p99 first byte latency rises well above the best seen")
+    void testLatencyBackoff() {
+        ConcurrencyController controller = new ConcurrencyController(50, 1, 100, 0, limit -> { });
+        for (int i = 0; i < ConcurrencyController.MIN_LATENCY_SAMPLES; i++) {
+            controller.firstByteLatency(10_000_000);
+        }
+        assertEquals(50, controller.limit());
+
+        for (int i = 0; i < ConcurrencyController.MIN_LATENCY_SAMPLES; i++) {
+            controller.firstByteLatency(i == 0 ? 100_000_000 : 10_000_000);
+        }
+        assertEquals(40, controller.limit());
+
+        // Too few samples to judge latency
+        controller.firstByteLatency(1_000_000_000);
+        assertEquals(40, controller.limit());
+    }
+
+    @Test
+    @DisplayName("meter: Counts the bytes read through the stream as throughput")
+    void testMeter() throws Exception {
+        ConcurrencyController controller = new ConcurrencyController(10, 1, 100, 0, limit -> { });
+        controller.limit();
+
+        try (InputStream in = controller.meter(new ByteArrayInputStream(new byte[1 << 20]), System.nanoTime())) {
+            assertEquals(1 << 20, in.readAllBytes().length);
+        }
+
+        assertEquals(10 + ConcurrencyController.INCREASE_STEP, controller.limit());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for reading S3 Inventory reports as the list of objects to merge
+ */
+@DisplayName("InventoryManifest Test Suite")
+class InventoryManifestTest {
+
+    private static final String SCHEMA = "Bucket, Key, VersionId, IsLatest, IsDeleteMarker, Size, LastModifiedDate, ETag";
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("read: Current objects come back with decoded keys, sizes and ETags, gzip or not")
+    void testReadLocal(boolean gzip) throws Exception {
+        String csv = String.join("\n",
+            "\"src\",\"logs/a.json\",\"v1\",\"true\",\"false\",\"10\",\"2025-01-01T00:00:00.000Z\",\"e1\"",
+            "\"src\",\"logs/with%20space%2Bplus.json\",\"v2\",\"true\",\"false\",\"20\",\"2025-01-01T00:00:00.000Z\",\"e2\"",
+            "\"src\",\"logs/old.json\",\"v3\",\"false\",\"false\",\"30\",\"2025-01-01T00:00:00.000Z\",\"e3\"",
+            "\"src\",\"logs/deleted.json\",\"v4\",\"true\",\"true\",\"\",\"2025-01-01T00:00:00.000Z\",\"\"") + "\n";
+        Files.write(dir.resolve("part-0.csv.gz"), gzip ? gzip(csv) : csv.getBytes(StandardCharsets.UTF_8));
+        Path manifest = writeManifest(dir, "src", SCHEMA, "inv/src/cfg/data/part-0.csv.gz");
+
+        InventoryManifest inventory = InventoryManifest.load(manifest.toString(), new InMemoryObjectStore());
+        List<StoredObject> objects = new ArrayList<>();
+        long count = inventory.read(inventory.files.get(0), objects::add);
+
+        assertEquals("src", inventory.sourceBucket);
+        assertEquals(2, count);
+        assertEquals("logs/a.json", objects.get(0).key());
+        assertEquals(10, objects.get(0).size());
+        assertEquals("e1", objects.get(0).eTag());
+        assertEquals("logs/with space+plus.json", objects.get(1).key());
+        assertEquals(20, objects.get(1).size());
+    }
+
+    @Test
+    @DisplayName("load: Data files of a synced report are found in the data/ directory beside the manifest's")
+    void testSyncedLayout() throws Exception {
+        Path dated = Files.createDirectories(dir.resolve("cfg/2025-01-02T01-00Z"));
+        Files.createDirectories(dir.resolve("cfg/data"));
+        Files.write(dir.resolve("cfg/data/part-0.csv.gz"), gzip("\"src\",\"a.json\",\"5\"\n"));
+        Path manifest = writeManifest(dated, "src", "Bucket, Key, Size", "inv/src/cfg/data/part-0.csv.gz");
+
+        InventoryManifest inventory = InventoryManifest.load(manifest.toString(), new InMemoryObjectStore());
+        List<StoredObject> objects = new ArrayList<>();
+        inventory.read(inventory.files.get(0), objects::add);
+
+        assertEquals(1, objects.size());
+        assertNull(objects.get(0).eTag());
+    }
+
+    @Test
+    @DisplayName("load: A manifest in the store reads its data files from the destination bucket")
+    void testReadFromStore() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        store.put("inventory", "src/cfg/data/part-0.csv.gz", gzip("\"src\",\"a.json\",\"5\"\n\"src\",\"b.json\",\"6\"\n"));
+        store.put("inventory", "src/cfg/2025-01-02T01-00Z/manifest.json", manifest("src", "Bucket, Key, Size",
+            "src/cfg/data/part-0.csv.gz").getBytes(StandardCharsets.UTF_8));
+
+        InventoryManifest inventory = InventoryManifest.load("s3://inventory/src/cfg/2025-01-02T01-00Z/manifest.json", store);
+        List<String> keys = new ArrayList<>();
+        inventory.read(inventory.files.get(0), obj -> keys.add(obj.key()));
+
+        assertEquals(Arrays.asList("a.json", "b.json"), keys);
+    }
+
+    @Test
+    @DisplayName("load: Reports without sizes or in another format are rejected")
+    void testUnsupported() throws Exception {
+        Path noSize = writeManifest(dir, "src", "Bucket, Key", "data/x.csv.gz");
+        assertThrows(IOException.class, () -> InventoryManifest.load(noSize.toString(), new InMemoryObjectStore()));
+
+        Files.write(dir.resolve("manifest.json"), manifest("src", SCHEMA, "data/x.orc")
+            .replace("\"CSV\"", "\"ORC\"").getBytes(StandardCharsets.UTF_8));
+        IOException e = assertThrows(IOException.class,
+            () -> InventoryManifest.load(dir.resolve("manifest.json").toString(), new InMemoryObjectStore()));
+        assertTrue(e.getMessage().contains("ORC"));
+    }
+
+    @Test
+    @DisplayName("parseCsvLine: Quoted fields may hold commas and doubled quotes")
+    void testParseCsvLine() {
+        assertEquals(Arrays.asList("a", "b,c", "say \"hi\"", ""), InventoryManifest.parseCsvLine("\"a\",\"b,c\",\"say \"\"hi\"\"\",\"\""));
+        assertEquals(Arrays.asList("plain", "12", ""), InventoryManifest.parseCsvLine("plain,12,"));
+    }
+
+    static String manifest(String sourceBucket, String schema, String... files) {
+        StringBuilder json = new StringBuilder("{\"sourceBucket\":\"" + sourceBucket + "\"," +
+            "\"destinationBucket\":\"arn:aws:s3:::inventory\",\"version\":\"2016-11-30\"," +
+            "\"fileFormat\":\"CSV\",\"fileSchema\":\"" + schema + "\",\"files\":[");
+        for (int i = 0; i < files.length; i++) {
+            json.append(i > 0 ? "," : "").append("{\"key\":\"").append(files[i]).append("\",\"size\":1,\"MD5checksum\":\"x\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static Path writeManifest(Path dir, String sourceBucket, String schema, String... files) throws IOException {
+        return Files.write(dir.resolve("manifest.json"), manifest(sourceBucket, schema, files).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for byte-level line framing: line boundaries must match BufferedReader.readLine
+ * for '\n' and "\r\n" input, across block edges, without decoding.
+ */
+@DisplayName("LineFramer Test Suite")
+class LineFramerTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "a\nb\nc\n",
+        "a\nb\nc",
+        "a\r\nb\r\n",
+        "\n\n\n",
+        "single",
+        "",
+        "trailing\n\n",
+        "{\"k\":\"日本語 🚀\"}\n{\"k\":\"€\"}\n"
+    })
+    @DisplayName("frame: Matches BufferedReader.readLine")
+    void testMatchesReadLine(String input) throws Exception {
+        assertEquals(readLines(input), frame(input, new BufferPool(16, 4), 0));
+    }
+
+    @Test
+    @DisplayName("frame: Lines spanning block edges are stitched")
+    void testLinesAcrossBlocks() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("line-").append(i).append("-").append("x".repeat(i % 37)).append('\n');
+        }
+        String input = sb.toString();
+
+        assertEquals(readLines(input), frame(input, new BufferPool(64, 4), 0));
+    }
+
+    @Test
+    @DisplayName("frame: Line longer than a block grows the block")
+    void testLineLongerThanBlock() throws Exception {
+        String longLine = "y".repeat(1000);
+        String input = "short\n" + longLine + "\nafter\n";
+
+        assertEquals(List.of("short", longLine, "after"), frame(input, new BufferPool(32, 4), 0));
+    }
+
+    @Test
+    @DisplayName("frame: CRLF split across a block edge is stripped")
+    void testCrLfAcrossBlockEdge() throws Exception {
+        // 7 bytes of content then \r lands on the last byte of an 8-byte block
+        String input = "abcdefg\r\nhij\r\n";
+        assertEquals(List.of("abcdefg", "hij"), frame(input, new BufferPool(8, 4), 0));
+    }
+
+    @Test
+    @DisplayName("frame: Skipped lines are counted but not emitted")
+    void testSkipLines() throws Exception {
+        BufferPool pool = new BufferPool(16, 4);
+        List<String> out = new ArrayList<>();
+        LineFramer framer = new LineFramer(pool, "k", 3, batch -> collect(batch, out));
+
+        long emitted = framer.frame(stream("1\n2\n3\n4\n5\n"));
+
+        assertEquals(List.of("4", "5"), out);
+        assertEquals(2, emitted);
+        assertEquals(5, framer.lineNumber());
+    }
+
+    @Test
+    @DisplayName("frame: Batches carry the source key and byte lengths")
+    void testBatchMetadata() throws Exception {
+        List<LineBatch> batches = new ArrayList<>();
+        new LineFramer(new BufferPool(1024, 4), "logs/a.json", 0, batches::add).frame(stream("ab\ncde\n"));
+
+        assertEquals(1, batches.size());
+        LineBatch batch = batches.get(0);
+        assertTrue(batch.isBytes());
+        assertEquals("logs/a.json", batch.sourceKey);
+        assertEquals(2, batch.size());
+        assertEquals(2, batch.lineEnd(0) - batch.lineStart(0));
+        assertEquals(3, batch.lineEnd(1) - batch.lineStart(1));
+    }
+
+    @Test
+    @DisplayName("frame: Each batch records the source line number of its first line")
+    void testBatchFirstLine() throws Exception {
+        List<LineBatch> batches = new ArrayList<>();
+        new LineFramer(new BufferPool(16, 8), "k", 2, batches::add).frame(stream("aaaa\nbbbb\ncccc\ndddd\neeee\nffff\n"));
+
+        long expected = 3;
+        for (LineBatch batch : batches) {
+            assertEquals(expected, batch.firstLine);
+            expected += batch.size();
+        }
+        assertEquals(7, expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 8, 64})
+    @DisplayName("frame: Resume offsets point just past each line terminator")
+    void testResumeOffsets(int blockSize) throws Exception {
+        String input = "a\r\nbb\n\nccc\r\ndddd";
+        List<Long> offsets = new ArrayList<>();
+        new LineFramer(new BufferPool(blockSize, 8), "k", 0, batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                offsets.add(batch.resumeOffset(i));
+            }
+            batch.release();
+        }).frame(stream(input));
+
+        assertEquals(List.of(3L, 6L, 7L, 12L, 16L), offsets);
+    }
+
+    @Test
+    @DisplayName("frame: A framer started mid-object numbers lines and offsets from that point")
+    void testStartMidObject() throws Exception {
+        List<LineBatch> batches = new ArrayList<>();
+        new LineFramer(new BufferPool(1024, 4), "k", 10, 500, 0, batches::add).frame(stream("x\nyy\n"));
+
+        LineBatch batch = batches.get(0);
+        assertEquals(11, batch.firstLine);
+        assertEquals(502, batch.resumeOffset(0));
+        assertEquals(505, batch.resumeOffset(1));
+    }
+
+    @Test
+    @DisplayName("frame: Released blocks are recycled by the pool")
+    void testBlocksRecycled() throws Exception {
+        BufferPool pool = new BufferPool(16, 8);
+        List<LineBatch> batches = new ArrayList<>();
+        new LineFramer(pool, "k", 0, batches::add).frame(stream("aaaa\nbbbb\ncccc\ndddd\neeee\n"));
+
+        assertTrue(batches.size() > 1);
+        batches.forEach(LineBatch::release);
+        assertEquals(batches.size(), pool.pooledCount());
+    }
+
+    @Test
+    @DisplayName("frame: Bounds arrays come back with released batches and are reused")
+    void testBoundsRecycled() throws Exception {
+        BufferPool pool = new BufferPool(16, 8);
+        String input = "aaaa\nbbbb\ncccc\ndddd\neeee\n";
+        new LineFramer(pool, "k", 0, LineBatch::release).frame(stream(input));
+        int pooled = pool.pooledBoundsCount();
+
+        new LineFramer(pool, "k", 0, LineBatch::release).frame(stream(input));
+
+        assertTrue(pooled > 0 && pooled <= 2, "pooled " + pooled);
+        assertEquals(pooled, pool.pooledBoundsCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 64, 4096})
+    @DisplayName("feed: Pushed buffers of any size frame exactly like the pulled stream")
+    void testFeed(int bufferSize) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("line-").append(i).append("-").append("z".repeat(i % 41)).append(i % 5 == 0 ? "\r\n" : "\n");
+        }
+        sb.append("no terminator");
+        byte[] input = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<String> out = new ArrayList<>();
+        LineFramer framer = new LineFramer(new BufferPool(32, 4), "k", 0, batch -> collect(batch, out));
+        framer.begin();
+        for (int at = 0; at < input.length; at += bufferSize) {
+            framer.feed(ByteBuffer.wrap(input, at, Math.min(bufferSize, input.length - at)));
+        }
+        long emitted = framer.end();
+
+        assertEquals(readLines(sb.toString()), out);
+        assertEquals(301, emitted);
+        assertEquals(301, framer.lineNumber());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("frame/feed: Direct blocks frame exactly like heap blocks and all go back to the pool")
+    void testDirectBlocks(boolean pushed) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("{\"k\":\"日本語-").append(i).append("\"}").append("z".repeat(i % 53)).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        sb.append("y".repeat(200));
+        byte[] input = sb.toString().getBytes(StandardCharsets.UTF_8);
+        BufferPool pool = new BufferPool(32, 4, true);
+
+        List<String> out = new ArrayList<>();
+        LineFramer framer = new LineFramer(pool, "k", 0, batch -> {
+            assertTrue(batch.block().isDirect());
+            collect(batch, out);
+        });
+        if (pushed) {
+            framer.begin();
+            for (int at = 0; at < input.length; at += 7) {
+                framer.feed(ByteBuffer.wrap(input, at, Math.min(7, input.length - at)));
+            }
+            framer.end();
+        } else {
+            framer.frame(new ByteArrayInputStream(input));
+        }
+
+        assertEquals(readLines(sb.toString()), out);
+        assertEquals(0, pool.outstanding());
+    }
+
+    @Test
+    @DisplayName("frame: Empty stream emits nothing")
+    void testEmptyStream() throws Exception {
+        List<LineBatch> batches = new ArrayList<>();
+        BufferPool pool = new BufferPool(16, 4);
+        long emitted = new LineFramer(pool, "k", 0, batches::add).frame(stream(""));
+
+        assertEquals(0, emitted);
+        assertTrue(batches.isEmpty());
+        assertEquals(1, pool.pooledCount());
+    }
+
+    private static List<String> frame(String input, BufferPool pool, long skip) throws Exception {
+        List<String> out = new ArrayList<>();
+        new LineFramer(pool, "k", skip, batch -> collect(batch, out)).frame(stream(input));
+        return out;
+    }
+
+    private static void collect(LineBatch batch, List<String> out) {
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] bytes = new byte[batch.lineEnd(i) - batch.lineStart(i)];
+            batch.block().get(batch.lineStart(i), bytes);
+            out.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        batch.release();
+    }
+
+    private static List<String> readLines(String input) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(stream(input), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static InputStream stream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+}
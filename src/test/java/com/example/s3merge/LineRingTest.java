@@ -0,0 +1,175 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the lock-free line queue behind queue.type=ring
+ */
+@DisplayName("LineRing Test Suite")
+class LineRingTest {
+
+    @Test
+    @DisplayName("offer/poll: Batches come out in the order they went in")
+    void testFifo() {
+        LineRing ring = new LineRing(8, 1 << 20);
+        for (int i = 1; i <= 20; i++) {
+            assertTrue(ring.offer(batch("k", i)));
+            if (i % 3 == 0) {
+                assertEquals(i - 2, ring.poll().firstLine);
+                assertEquals(i - 1, ring.poll().firstLine);
+                assertEquals(i, ring.poll().firstLine);
+            }
+        }
+        assertEquals(19, ring.peek().firstLine);
+        assertEquals(2, ring.size());
+        assertEquals(19, ring.poll().firstLine);
+        assertEquals(20, ring.poll().firstLine);
+        assertNull(ring.poll());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 5, 8})
+    @DisplayName("offer: Slots are rounded up to a power of two and refused once full")
+    void testSlotBound(int slots) {
+        LineRing ring = new LineRing(slots, Long.MAX_VALUE);
+        int size = Integer.highestOneBit(slots - 1) << 1;
+        assertEquals(size, ring.slots());
+        for (int i = 0; i < size; i++) {
+            assertTrue(ring.offer(batch("k", i + 1)));
+        }
+        assertFalse(ring.offer(batch("k", 0)));
+        assertEquals(0, ring.remainingCapacity());
+
+        assertNotNull(ring.poll());
+        assertTrue(ring.offer(batch("k", 0)));
+    }
+
+    @Test
+    @DisplayName("offer: Refused once the queued blocks reach the byte bound, but never when empty")
+    void testByteBound() {
+        LineRing ring = new LineRing(64, 3 * 1024);
+        assertTrue(ring.offer(block(1024)));
+        assertTrue(ring.offer(block(2048)));
+        assertFalse(ring.offer(block(1)));
+        assertEquals(3 * 1024, ring.queuedBytes());
+
+        ring.poll();
+        ring.poll();
+        assertEquals(0, ring.queuedBytes());
+        assertTrue(ring.offer(block(10 * 1024)));   // larger than the bound, but alone
+        assertFalse(ring.offer(block(1)));
+        assertEquals(10 * 1024, ring.peakBytes());
+    }
+
+    @Test
+    @DisplayName("take: Waits for a producer, and a timed poll gives up")
+    void testBlockingTake() throws Exception {
+        LineRing ring = new LineRing(4, 1 << 20);
+        assertNull(ring.poll(20, TimeUnit.MILLISECONDS));
+
+        AtomicReference<LineBatch> taken = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(ring.take());
+                done.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+
+        ring.put(batch("k", 7));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(7, taken.get().firstLine);
+    }
+
+    @Test
+    @DisplayName("put: An interrupted producer gives back its bytes")
+    void testInterruptedPut() throws Exception {
+        LineRing ring = new LineRing(2, 1 << 20);
+        ring.put(batch("k", 1));
+        ring.put(batch("k", 2));
+        long queued = ring.queuedBytes();
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                ring.put(batch("k", 3));
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        Thread.sleep(50);
+        producer.interrupt();
+        producer.join(5000);
+
+        assertInstanceOf(InterruptedException.class, failure.get());
+        assertEquals(queued, ring.queuedBytes());
+        assertEquals(2, ring.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 8, 100})
+    @DisplayName("put/take: Every batch from many producers arrives exactly once and in order per producer")
+    void testManyProducers(int producers) throws Exception {
+        LineRing ring = new LineRing(16, 64 * 1024);
+        int perProducer = 2000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String key = "p" + p;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 1; i <= perProducer; i++) {
+                        ring.put(batch(key, i));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long[] last = new long[producers];
+        List<LineBatch> drained = new ArrayList<>();
+        for (int received = 0; received < producers * perProducer; ) {
+            drained.add(ring.take());
+            ring.drainTo(drained, 31);
+            for (LineBatch batch : drained) {
+                int p = Integer.parseInt(batch.sourceKey.substring(1));
+                assertEquals(last[p] + 1, batch.firstLine);
+                last[p] = batch.firstLine;
+                received++;
+            }
+            drained.clear();
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertNull(ring.poll());
+        assertEquals(0, ring.queuedBytes());
+    }
+
+    private static LineBatch batch(String key, long firstLine) {
+        return new LineBatch(List.of("{\"line\":" + firstLine + "}"), key, firstLine);
+    }
+
+    private static LineBatch block(int capacity) {
+        return new LineBatch(ByteBuffer.allocate(capacity), new int[] {0, 1}, 1, null, "k", 1, -1, -1);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the local record of listed pages that a restarted run replays
+ */
+@DisplayName("ListingManifest Test Suite")
+class ListingManifestTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("replay: Objects, sizes, ETags and continuation tokens come back per partition")
+    void testRoundTrip() throws Exception {
+        Path file = dir.resolve("listing.manifest");
+        try (ListingManifest manifest = new ListingManifest(file, "bucket", 2)) {
+            assertTrue(manifest.replay((p, o) -> fail("nothing to replay")).isEmpty());
+            manifest.page("logs/a/", Arrays.asList(obj("logs/a/1.json", 10, "\"e1\""), obj("logs/a/2.json", 20, null)), "t1");
+            manifest.page("logs/b/", Arrays.asList(obj("logs/b/1.json", 30, "\"e3\"")), null);
+            manifest.page("logs/a/", Arrays.asList(obj("logs/a/3.json", 40, "\"e4\"")), "t2");
+        }
+
+        List<String> replayed = new ArrayList<>();
+        Map<String, ListingManifest.Progress> progress;
+        try (ListingManifest manifest = new ListingManifest(file, "bucket", 2)) {
+            progress = manifest.replay((p, o) -> replayed.add(p + " " + o.key() + " " + o.size() + " " + o.eTag()));
+        }
+
+        assertEquals(Arrays.asList("logs/a/ logs/a/1.json 10 \"e1\"", "logs/a/ logs/a/2.json 20 null",
+                                   "logs/b/ logs/b/1.json 30 \"e3\"", "logs/a/ logs/a/3.json 40 \"e4\""), replayed);
+        assertEquals(3, progress.get("logs/a/").objects);
+        assertEquals("t2", progress.get("logs/a/").token);
+        assertFalse(progress.get("logs/a/").complete);
+        assertEquals(1, progress.get("logs/b/").objects);
+        assertNull(progress.get("logs/b/").token);
+        assertTrue(progress.get("logs/b/").complete);
+    }
+
+    @Test
+    @DisplayName("replay: A page torn by a crash is dropped, and listing resumes before it")
+    void testTornPage() throws Exception {
+        Path file = dir.resolve("listing.manifest");
+        try (ListingManifest manifest = new ListingManifest(file, "bucket", 0)) {
+            manifest.replay((p, o) -> { });
+            manifest.page("", Arrays.asList(obj("a.json", 1, "x")), "a.json");
+        }
+        Files.write(file, "O\t\tb.json\t2\tx\nO\t\tc.js".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<String> replayed = new ArrayList<>();
+        try (ListingManifest manifest = new ListingManifest(file, "bucket", 0)) {
+            Map<String, ListingManifest.Progress> progress = manifest.replay((p, o) -> replayed.add(o.key()));
+            assertEquals("a.json", progress.get("").token);
+            assertEquals(1, progress.get("").objects);
+        }
+        assertEquals(Arrays.asList("a.json"), replayed);
+    }
+
+    @Test
+    @DisplayName("replay: A manifest for another bucket or depth is discarded")
+    void testOtherListing() throws Exception {
+        Path file = dir.resolve("listing.manifest");
+        try (ListingManifest manifest = new ListingManifest(file, "bucket", 0)) {
+            manifest.replay((p, o) -> { });
+            manifest.page("", Arrays.asList(obj("a.json", 1, "x")), null);
+        }
+
+        try (ListingManifest manifest = new ListingManifest(file, "other", 0)) {
+            assertTrue(manifest.replay((p, o) -> fail("other bucket replayed")).isEmpty());
+        }
+        try (ListingManifest manifest = new ListingManifest(file, "other", 1)) {
+            assertTrue(manifest.replay((p, o) -> fail("other depth replayed")).isEmpty());
+        }
+        assertEquals(1, Files.readAllLines(file).size());
+    }
+
+    @Test
+    @DisplayName("delete: The manifest of a finished run is removed")
+    void testDelete() throws Exception {
+        Path file = dir.resolve("listing.manifest");
+        ListingManifest manifest = new ListingManifest(file, "bucket", 0);
+        manifest.replay((p, o) -> { });
+        assertTrue(Files.exists(file));
+
+        manifest.delete();
+
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    @DisplayName("escape: Keys with tabs, newlines and backslashes survive the round trip")
+    void testEscape() {
+        for (String value : Arrays.asList("plain/key.json", "tab\there", "line\nbreak\r", "back\\slash\\t", "")) {
+            assertEquals(value, ListingManifest.unescape(ListingManifest.escape(value)));
+            assertFalse(ListingManifest.escape(value).contains("\t"));
+            assertFalse(ListingManifest.escape(value).contains("\n"));
+        }
+        assertSame("plain", ListingManifest.escape("plain"));
+    }
+
+    private static StoredObject obj(String key, long size, String eTag) {
+        return new StoredObject(key, size, eTag);
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Contract tests shared by the local-directory and in-memory ObjectStore backends
+ */
+@DisplayName("ObjectStore Backend Test Suite")
+class ObjectStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ObjectStore createStore(String type) {
+        return "local".equals(type) ? new LocalObjectStore(tempDir) : new InMemoryObjectStore();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("put/get: Round trip preserves bytes")
+    void testPutGetRoundTrip(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        store.put("bucket", "logs/2025/app.log", bytes("line1\nline2"));
+
+        assertEquals("line1\nline2", read(store.get("bucket", "logs/2025/app.log")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("getRange: Returns inclusive byte range")
+    void testGetRange(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        store.put("bucket", "file.log", bytes("0123456789"));
+
+        assertEquals("234", read(store.getRange("bucket", "file.log", 2, 4)));
+        assertEquals("789", read(store.getRange("bucket", "file.log", 7, 100)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("get: Missing key throws IOException")
+    void testGetMissingKey(String type) {
+        ObjectStore store = createStore(type);
+        assertThrows(IOException.class, () -> store.get("bucket", "missing.log"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("list: Keys returned in order with sizes")
+    void testListOrderAndSizes(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        store.put("bucket", "b/2.log", bytes("22"));
+        store.put("bucket", "a/1.log", bytes("1"));
+        store.put("bucket", "c.log", bytes("333"));
+
+        ObjectListing listing = store.list("bucket", null, null);
+
+        assertNull(listing.nextContinuationToken());
+        assertEquals(3, listing.contents().size());
+        assertEquals("a/1.log", listing.contents().get(0).key());
+        assertEquals(1, listing.contents().get(0).size());
+        assertEquals("b/2.log", listing.contents().get(1).key());
+        assertEquals("c.log", listing.contents().get(2).key());
+        assertEquals(3, listing.contents().get(2).size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("list: Prefix filters keys")
+    void testListPrefix(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        store.put("bucket", "logs/a.log", bytes("a"));
+        store.put("bucket", "logs/b.log", bytes("b"));
+        store.put("bucket", "other/c.log", bytes("c"));
+
+        ObjectListing listing = store.list("bucket", "logs/", null);
+
+        assertEquals(2, listing.contents().size());
+        assertTrue(listing.contents().stream().allMatch(o -> o.key().startsWith("logs/")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("list: Pages through more than 1000 keys")
+    void testListPagination(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        for (int i = 0; i < 1500; i++) {
+            store.put("bucket", String.format("f%05d.log", i), bytes("x"));
+        }
+
+        List<String> keys = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            ObjectListing listing = store.list("bucket", null, token);
+            listing.contents().forEach(o -> keys.add(o.key()));
+            token = listing.nextContinuationToken();
+            pages++;
+        } while (token != null);
+
+        assertEquals(2, pages);
+        assertEquals(1500, keys.size());
+        assertEquals("f00000.log", keys.get(0));
+        assertEquals("f01499.log", keys.get(1499));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("list: Missing bucket is empty")
+    void testListEmptyBucket(String type) throws Exception {
+        ObjectListing listing = createStore(type).list("nothing-here", null, null);
+        assertTrue(listing.contents().isEmpty());
+        assertNull(listing.nextContinuationToken());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("list: Delimiter rolls deeper keys up into common prefixes")
+    void testListDelimiter(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        store.put("bucket", "a.log", bytes("a"));
+        store.put("bucket", "logs/2025/01/x.log", bytes("x"));
+        store.put("bucket", "logs/2025/02/y.log", bytes("y"));
+        store.put("bucket", "logs/z.log", bytes("z"));
+        store.put("bucket", "other/q.log", bytes("q"));
+
+        ObjectListing root = store.list("bucket", null, "/", null);
+        assertEquals(Arrays.asList("a.log"), keys(root));
+        assertEquals(Arrays.asList("logs/", "other/"), root.commonPrefixes());
+
+        ObjectListing logs = store.list("bucket", "logs/", "/", null);
+        assertEquals(Arrays.asList("logs/z.log"), keys(logs));
+        assertEquals(Arrays.asList("logs/2025/"), logs.commonPrefixes());
+
+        assertTrue(store.list("bucket", "logs/", null, null).commonPrefixes().isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("list: Common prefixes count towards the page and are not repeated across pages")
+    void testListDelimiterPagination(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        for (int i = 0; i < 1200; i++) {
+            store.put("bucket", String.format("p%04d/a.log", i), bytes("a"));
+            store.put("bucket", String.format("p%04d/b.log", i), bytes("b"));
+        }
+
+        List<String> prefixes = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            ObjectListing listing = store.list("bucket", null, "/", token);
+            assertTrue(listing.contents().isEmpty());
+            prefixes.addAll(listing.commonPrefixes());
+            token = listing.nextContinuationToken();
+            pages++;
+        } while (token != null);
+
+        assertEquals(2, pages);
+        assertEquals(1200, prefixes.size());
+        assertEquals(1200, new HashSet<>(prefixes).size());
+        assertEquals("p1199/", prefixes.get(1199));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("list: A prefix ending mid-name pages through only its own keys")
+    void testListPartialPrefixPagination(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        for (int i = 0; i < 1100; i++) {
+            store.put("bucket", String.format("logs/2025/0%d/f%04d.log", i % 3 + 1, i), bytes("x"));
+        }
+        store.put("bucket", "logs/2025/10/g.log", bytes("g"));
+        store.put("bucket", "logs/2024/01/h.log", bytes("h"));
+        store.put("bucket", "logs/2025-summary.log", bytes("s"));
+
+        List<String> keys = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            ObjectListing listing = store.list("bucket", "logs/2025/0", null, token);
+            listing.contents().forEach(o -> keys.add(o.key()));
+            token = listing.nextContinuationToken();
+            pages++;
+        } while (token != null);
+
+        assertEquals(2, pages);
+        assertEquals(1100, keys.size());
+        List<String> sorted = new ArrayList<>(keys);
+        sorted.sort(null);
+        assertEquals(sorted, keys);
+        assertTrue(keys.stream().allMatch(k -> k.startsWith("logs/2025/0")));
+
+        List<String> objects = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        token = null;
+        do {
+            ObjectListing listing = store.list("bucket", "logs/", "-", token);
+            listing.contents().forEach(o -> objects.add(o.key()));
+            prefixes.addAll(listing.commonPrefixes());
+            token = listing.nextContinuationToken();
+        } while (token != null);
+
+        assertEquals(1102, objects.size());
+        assertEquals(Arrays.asList("logs/2025-"), prefixes);
+    }
+
+    @Test
+    @DisplayName("list: Staging files of in-flight local puts are not listed")
+    void testListSkipsStagingFiles() throws Exception {
+        ObjectStore store = new LocalObjectStore(tempDir);
+        store.put("bucket", "logs/a.log", bytes("a"));
+        Files.write(tempDir.resolve("bucket/logs/b.log.tmp-" + UUID.randomUUID()), bytes("partial"));
+
+        ObjectListing listing = store.list("bucket", "logs/", null);
+
+        assertEquals(Arrays.asList("logs/a.log"), keys(listing));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("multipart: Parts concatenated in part-number order")
+    void testMultipartUpload(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        String uploadId = store.createMultipartUpload("bucket", "merged/out");
+
+        String etag2 = store.uploadPart("bucket", "merged/out", uploadId, 2, bytes("world"));
+        String etag1 = store.uploadPart("bucket", "merged/out", uploadId, 1, bytes("hello "));
+        store.completeMultipartUpload("bucket", "merged/out", uploadId, Arrays.asList(etag1, etag2));
+
+        assertEquals("hello world", read(store.get("bucket", "merged/out")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("put/uploadPart: Length-bounded arrays and direct buffers write exactly their bytes")
+    void testBufferUploads(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        ByteBuffer direct = ByteBuffer.allocateDirect(32).put(bytes("xxhello direct"));
+        direct.flip().position(2);
+
+        store.put("bucket", "array.log", bytes("hello array, not this"), 11);
+        store.put("bucket", "direct.log", direct);
+        String uploadId = store.createMultipartUpload("bucket", "merged/out");
+        String etag1 = store.uploadPart("bucket", "merged/out", uploadId, 1, bytes("part one|junk"), 9);
+        String etag2 = store.uploadPart("bucket", "merged/out", uploadId, 2, direct);
+        store.completeMultipartUpload("bucket", "merged/out", uploadId, Arrays.asList(etag1, etag2));
+
+        assertEquals("hello array", read(store.get("bucket", "array.log")));
+        assertEquals("hello direct", read(store.get("bucket", "direct.log")));
+        assertEquals("part one|hello direct", read(store.get("bucket", "merged/out")));
+        assertEquals(2, direct.position());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("multipart: Aborted upload leaves no object")
+    void testMultipartAbort(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        String uploadId = store.createMultipartUpload("bucket", "merged/out");
+        store.uploadPart("bucket", "merged/out", uploadId, 1, bytes("partial"));
+        store.abortMultipartUpload("bucket", "merged/out", uploadId);
+
+        assertThrows(IOException.class, () -> store.get("bucket", "merged/out"));
+        assertThrows(IOException.class, () -> store.uploadPart("bucket", "merged/out", uploadId, 2, bytes("x")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "local"})
+    @DisplayName("delete: Removes the object; a missing key is not an error")
+    void testDelete(String type) throws Exception {
+        ObjectStore store = createStore(type);
+        store.put("bucket", "merged/a", bytes("a"));
+        store.put("bucket", "merged/b", bytes("b"));
+
+        store.delete("bucket", "merged/a");
+        store.delete("bucket", "merged/a");
+        store.delete("bucket", "never-written");
+
+        assertThrows(IOException.class, () -> store.get("bucket", "merged/a"));
+        assertEquals(Arrays.asList("merged/b"), keys(store.list("bucket", null, null)));
+    }
+
+    private static List<String> keys(ObjectListing listing) {
+        List<String> keys = new ArrayList<>();
+        listing.contents().forEach(o -> keys.add(o.key()));
+        return keys;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that parallel ranged reads hand back exactly the bytes of one sequential GET
+ */
+@DisplayName("RangedObjectInputStream Test Suite")
+class RangedObjectInputStreamTest {
+
+    private static final String BUCKET = "source";
+    private static final String KEY = "logs/big.json";
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "10000, 1000, 4",
+        "10001, 1000, 4",
+        "999, 1000, 2",
+        "5000, 7, 8",
+        "4096, 4096, 1",
+        "0, 100, 2"
+    })
+    @DisplayName("read: Matches the whole object for any range size and parallelism")
+    void testMatchesWholeObject(int size, int rangeSize, int parallelism) throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        byte[] data = randomBytes(size);
+        store.put(BUCKET, KEY, data);
+
+        try (InputStream in = new RangedObjectInputStream(store, BUCKET, KEY, 0, size, rangeSize, parallelism, executor)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("read: Starts at the requested offset")
+    void testStartOffset() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        byte[] data = randomBytes(5000);
+        store.put(BUCKET, KEY, data);
+
+        try (InputStream in = new RangedObjectInputStream(store, BUCKET, KEY, 1234, 5000, 500, 3, executor)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 1234, 5000), in.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("read: Single-byte reads see the same bytes")
+    void testSingleByteReads() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        byte[] data = randomBytes(300);
+        store.put(BUCKET, KEY, data);
+
+        try (InputStream in = new RangedObjectInputStream(store, BUCKET, KEY, 0, 300, 64, 2, executor)) {
+            for (byte b : data) {
+                assertEquals(b & 0xFF, in.read());
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    @DisplayName("read: A failed range is retried without disturbing the others")
+    void testFailedRangeRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public InputStream getRange(String bucket, String key, long start, long end) throws IOException {
+                if (calls.incrementAndGet() == 2) {
+                    throw new IOException("Connection reset");
+                }
+                return super.getRange(bucket, key, start, end);
+            }
+        };
+        byte[] data = randomBytes(4000);
+        store.put(BUCKET, KEY, data);
+
+        try (InputStream in = new RangedObjectInputStream(store, BUCKET, KEY, 0, 4000, 1000, 4, executor)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        assertEquals(5, calls.get());
+    }
+
+    @Test
+    @DisplayName("read: An object deleted mid-run fails the read instead of retrying forever")
+    void testMissingObjectFails() {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            try (InputStream in = new RangedObjectInputStream(store, BUCKET, KEY, 0, 4000, 1000, 4, executor)) {
+                assertThrows(FileNotFoundException.class, in::readAllBytes);
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("read: An object shorter than listed fails the read instead of retrying forever")
+    void testShortRangeFails() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        byte[] data = randomBytes(3500);
+        store.put(BUCKET, KEY, data);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            try (InputStream in = new RangedObjectInputStream(store, BUCKET, KEY, 0, 4000, 1000, 4, executor)) {
+                byte[] buffer = new byte[4000];
+                assertEquals(3000, in.readNBytes(buffer, 0, 3000));
+                assertThrows(EOFException.class, () -> in.read(buffer, 3000, 1000));
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("close: Ranges still retrying stop and free their threads")
+    void testCloseStopsRetries() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public InputStream getRange(String bucket, String key, long start, long end) throws IOException {
+                calls.incrementAndGet();
+                throw new IOException("Connection reset");
+            }
+        };
+
+        InputStream in = new RangedObjectInputStream(store, BUCKET, KEY, 0, 4000, 1000, 2, executor);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (calls.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        in.close();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(500, TimeUnit.MILLISECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
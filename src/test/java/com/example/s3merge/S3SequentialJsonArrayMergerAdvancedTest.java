@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Nested;
 
 import java.io.*;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -42,45 +43,6 @@ class S3SequentialJsonArrayMergerAdvancedTest {
     @DisplayName("Buffer Management Complex Scenarios")
     class BufferManagementTests {
         
-        @Test
-        @DisplayName("Buffer with large lines exceeding 1MB")
-        void testBufferWithLargeLines() throws Exception {
-            Map<String, String> checkpoint = new HashMap<>();
-            List<String> buffer = new ArrayList<>();
-            
-            // Create a large line (1MB)
-            StringBuilder largeLineBuilder = new StringBuilder();
-            for (int i = 0; i < 1024; i++) {
-                largeLineBuilder.append("x".repeat(1024));
-            }
-            String largeLine = largeLineBuilder.toString();
-            buffer.add(largeLine);
-            
-            Method updateBuffer = getPrivateMethod("updateBufferInCheckpoint", Map.class, List.class, int.class);
-            updateBuffer.invoke(null, checkpoint, buffer, 1);
-            
-            assertEquals("1", checkpoint.get("bufferCount"));
-            assertEquals(largeLine, checkpoint.get("buffer_0"));
-        }
-        
-        @Test
-        @DisplayName("Buffer with many small lines")
-        void testBufferWithManySmallLines() throws Exception {
-            Map<String, String> checkpoint = new HashMap<>();
-            List<String> buffer = new ArrayList<>();
-            
-            for (int i = 0; i < 10000; i++) {
-                buffer.add("line_" + i);
-            }
-            
-            Method updateBuffer = getPrivateMethod("updateBufferInCheckpoint", Map.class, List.class, int.class);
-            updateBuffer.invoke(null, checkpoint, buffer, 10000);
-            
-            assertEquals("10000", checkpoint.get("bufferCount"));
-            assertEquals("line_0", checkpoint.get("buffer_0"));
-            assertEquals("line_9999", checkpoint.get("buffer_9999"));
-        }
-        
         @Test
         @DisplayName("Clear buffer multiple times")
         void testClearBufferMultipleTimes() throws Exception {
@@ -99,29 +61,6 @@ class S3SequentialJsonArrayMergerAdvancedTest {
             assertFalse(checkpoint.containsKey("bufferCount"));
             assertFalse(checkpoint.containsKey("buffer_0"));
         }
-        
-        @Test
-        @DisplayName("Update buffer replaces old buffer")
-        void testUpdateBufferReplaces() throws Exception {
-            Map<String, String> checkpoint = new HashMap<>();
-            checkpoint.put("bufferCount", "2");
-            checkpoint.put("buffer_0", "old1");
-            checkpoint.put("buffer_1", "old2");
-            
-            List<String> newBuffer = new ArrayList<>();
-            newBuffer.add("new1");
-            newBuffer.add("new2");
-            newBuffer.add("new3");
-            
-            Method updateBuffer = getPrivateMethod("updateBufferInCheckpoint", Map.class, List.class, int.class);
-            updateBuffer.invoke(null, checkpoint, newBuffer, 3);
-            
-            assertEquals("3", checkpoint.get("bufferCount"));
-            assertEquals("new1", checkpoint.get("buffer_0"));
-            assertEquals("new2", checkpoint.get("buffer_1"));
-            assertEquals("new3", checkpoint.get("buffer_2"));
-            assertFalse(checkpoint.containsKey("buffer_3"));
-        }
     }
     
     // ============ Checkpoint Persistence Tests ============
@@ -466,40 +405,6 @@ class S3SequentialJsonArrayMergerAdvancedTest {
     @DisplayName("Checkpoint State Management")
     class StateManagementTests {
         
-        @Test
-        @DisplayName("LastSourceKey persists across updates")
-        void testLastSourceKeyPersists() throws Exception {
-            Map<String, String> checkpoint = new HashMap<>();
-            checkpoint.put("file1.log", "100");
-            
-            Method updateKey = getPrivateMethod("updateLastSourceKeyInCheckpoint", Map.class, String.class);
-            updateKey.invoke(null, checkpoint, "logs/first.log");
-            assertEquals("logs/first.log", checkpoint.get("lastSourceKey"));
-            
-            updateKey.invoke(null, checkpoint, "logs/second.log");
-            assertEquals("logs/second.log", checkpoint.get("lastSourceKey"));
-        }
-        
-        @Test
-        @DisplayName("Buffer count consistency")
-        void testBufferCountConsistency() throws Exception {
-            Map<String, String> checkpoint = new HashMap<>();
-            List<String> buffer = new ArrayList<>();
-            for (int i = 0; i < 100; i++) {
-                buffer.add("line_" + i);
-            }
-            
-            Method updateBuffer = getPrivateMethod("updateBufferInCheckpoint", Map.class, List.class, int.class);
-            updateBuffer.invoke(null, checkpoint, buffer, 100);
-            
-            int bufferCount = Integer.parseInt(checkpoint.get("bufferCount"));
-            int actualCount = (int) checkpoint.entrySet().stream()
-                .filter(e -> e.getKey().startsWith("buffer_"))
-                .count();
-            
-            assertEquals(bufferCount, actualCount);
-        }
-        
         @Test
         @DisplayName("Clear buffer removes exactly buffer entries")
         void testClearBufferExactRemoval() throws Exception {
@@ -532,7 +437,7 @@ class S3SequentialJsonArrayMergerAdvancedTest {
     }
     
     private void createCheckpointFile(String filename, String[] lines) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
             for (String line : lines) {
                 writer.write(line);
                 writer.newLine();
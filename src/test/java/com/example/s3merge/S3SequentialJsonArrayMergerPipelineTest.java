@@ -0,0 +1,945 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end tests that run the full download -> queue -> upload pipeline
+ * against the in-memory ObjectStore
+ */
+@DisplayName("S3SequentialJsonArrayMerger Pipeline Test Suite")
+class S3SequentialJsonArrayMergerPipelineTest {
+
+    private static final String ORIGINAL_CHECKPOINT = "checkpoint.txt";
+    private static final String CHECKPOINT_INDEX = "checkpoint.idx";
+    private static final String LISTING_MANIFEST = "listing.manifest";
+    private static final String SOURCE = "source";
+    private static final String TARGET = "target";
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.deleteIfExists(Paths.get(ORIGINAL_CHECKPOINT));
+        Files.deleteIfExists(Paths.get(ORIGINAL_CHECKPOINT + ".tmp"));
+        Files.deleteIfExists(Paths.get(CHECKPOINT_INDEX));
+        Files.deleteIfExists(Paths.get(LISTING_MANIFEST));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(Paths.get(ORIGINAL_CHECKPOINT));
+        Files.deleteIfExists(Paths.get(ORIGINAL_CHECKPOINT + ".tmp"));
+        Files.deleteIfExists(Paths.get(CHECKPOINT_INDEX));
+        Files.deleteIfExists(Paths.get(LISTING_MANIFEST));
+        S3SequentialJsonArrayMerger.indexedCheckpoint = false;
+        S3SequentialJsonArrayMerger.completedSetType = "heap";
+        S3SequentialJsonArrayMerger.bloomBitsPerKey = 0;
+        S3SequentialJsonArrayMerger.listingDepth = 0;
+        S3SequentialJsonArrayMerger.openPrefixes = S3SequentialJsonArrayMerger.DEFAULT_OPEN_PREFIXES;
+        S3SequentialJsonArrayMerger.listingThreads = S3SequentialJsonArrayMerger.DEFAULT_LISTING_THREADS;
+        S3SequentialJsonArrayMerger.listingPrefetchPages = S3SequentialJsonArrayMerger.DEFAULT_LISTING_PREFETCH_PAGES;
+        S3SequentialJsonArrayMerger.listingManifest = false;
+        S3SequentialJsonArrayMerger.inventoryManifest = null;
+        S3SequentialJsonArrayMerger.asyncDownloads = false;
+        S3SequentialJsonArrayMerger.asyncConcurrency = S3SequentialJsonArrayMerger.DEFAULT_ASYNC_CONCURRENCY;
+        S3SequentialJsonArrayMerger.virtualThreads = false;
+        S3SequentialJsonArrayMerger.virtualDownloadConcurrency = S3SequentialJsonArrayMerger.DEFAULT_VIRTUAL_DOWNLOAD_CONCURRENCY;
+        S3SequentialJsonArrayMerger.virtualUploadConcurrency = S3SequentialJsonArrayMerger.DEFAULT_VIRTUAL_UPLOAD_CONCURRENCY;
+        S3SequentialJsonArrayMerger.adaptiveConcurrency = false;
+        S3SequentialJsonArrayMerger.initialDownloadConcurrency = S3SequentialJsonArrayMerger.DEFAULT_INITIAL_DOWNLOAD_CONCURRENCY;
+        S3SequentialJsonArrayMerger.minDownloadConcurrency = S3SequentialJsonArrayMerger.DEFAULT_MIN_DOWNLOAD_CONCURRENCY;
+        S3SequentialJsonArrayMerger.maxDownloadConcurrency = S3SequentialJsonArrayMerger.DEFAULT_MAX_DOWNLOAD_CONCURRENCY;
+        S3SequentialJsonArrayMerger.downloadConcurrency = null;
+        S3SequentialJsonArrayMerger.downloadBudgetBytes = 0;
+        S3SequentialJsonArrayMerger.queueBudgetBytes = 0;
+        S3SequentialJsonArrayMerger.downloadBudget = null;
+        S3SequentialJsonArrayMerger.queueBudget = null;
+        S3SequentialJsonArrayMerger.ringQueue = false;
+        S3SequentialJsonArrayMerger.directBuffers = false;
+        S3SequentialJsonArrayMerger.uploadThreads = S3SequentialJsonArrayMerger.DEFAULT_UPLOAD_THREADS;
+        S3SequentialJsonArrayMerger.byteLineMode = true;
+        S3SequentialJsonArrayMerger.partSize = S3SequentialJsonArrayMerger.DEFAULT_PART_SIZE;
+        S3SequentialJsonArrayMerger.partConcurrency = S3SequentialJsonArrayMerger.DEFAULT_PART_CONCURRENCY;
+        S3SequentialJsonArrayMerger.rangeThreshold = S3SequentialJsonArrayMerger.DEFAULT_RANGE_THRESHOLD;
+        S3SequentialJsonArrayMerger.rangeSize = S3SequentialJsonArrayMerger.DEFAULT_RANGE_SIZE;
+    }
+
+    @Test
+    @DisplayName("Pipeline: Every source line appears exactly once in merged output")
+    void testAllLinesMerged() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 3, 4, 250);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 400);
+
+        List<String> actual = mergedLines(store);
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Merged files keep the source directory structure")
+    void testDirectoryStructurePreserved() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        seedSource(store, 1, 3, 100);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 120);
+
+        List<String> keys = store.keys(TARGET);
+        assertFalse(keys.isEmpty());
+        for (String key : keys) {
+            assertTrue(key.startsWith("logs/dir-0/"), "Unexpected target key: " + key);
+        }
+    }
+
+    @Test
+    @DisplayName("Pipeline: Second run skips files recorded in the checkpoint")
+    void testRerunSkipsCompletedFiles() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 2, 2, 50);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 1000);
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 1000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Chunks above 5MB use multipart upload")
+    void testLargeChunkMultipart() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        StringBuilder sb = new StringBuilder();
+        String padding = "x".repeat(1000);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 7000; i++) {
+            String line = "{\"id\":" + i + ",\"pad\":\"" + padding + "\"}";
+            expected.add(line);
+            sb.append(line).append('\n');
+        }
+        store.put(SOURCE, "big/file.json", sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 10000);
+
+        assertEquals(expected, mergedLines(store));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Parallel upload workers upload every chunk exactly once")
+    void testParallelUploadWorkers() throws Exception {
+        S3SequentialJsonArrayMerger.uploadThreads = 8;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 4, 5, 300);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 37);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertEquals((expected.size() + 36) / 37, store.keys(TARGET).size());
+    }
+
+    @Test
+    @DisplayName("Pipeline: Single upload worker still drains every chunk")
+    void testSingleUploadWorker() throws Exception {
+        S3SequentialJsonArrayMerger.uploadThreads = 1;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 2, 3, 200);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 150);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Buffer restored from checkpoint is uploaded and cleared")
+    void testRestoredBufferUploaded() throws Exception {
+        Files.write(Paths.get(ORIGINAL_CHECKPOINT), Arrays.asList(
+            "bufferCount=3",
+            "buffer_0={\"restored\":0}",
+            "buffer_1={\"restored\":1}",
+            "buffer_2={\"restored\":2}",
+            "lastSourceKey=logs/old/file.json"
+        ));
+        InMemoryObjectStore store = new InMemoryObjectStore();
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 2);
+
+        assertEquals(Arrays.asList("{\"restored\":0}", "{\"restored\":1}", "{\"restored\":2}"),
+                     sorted(mergedLines(store)));
+        assertTrue(store.keys(TARGET).stream().allMatch(k -> k.startsWith("logs/old/")));
+        
+        List<String> checkpoint = Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT));
+        assertTrue(checkpoint.contains("bufferCount=0"));
+        assertTrue(checkpoint.stream().noneMatch(l -> l.startsWith("buffer_")));
+    }
+
+    @Test
+    @DisplayName("Pipeline: String line mode produces the same lines as byte mode")
+    void testStringModeMatchesByteMode() throws Exception {
+        InMemoryObjectStore byteStore = new InMemoryObjectStore();
+        InMemoryObjectStore stringStore = new InMemoryObjectStore();
+        byte[] body = "{\"a\":1}\r\n{\"b\":\"日本語\"}\r\n\n{\"c\":3}".getBytes(StandardCharsets.UTF_8);
+        byteStore.put(SOURCE, "logs/crlf.json", body);
+        stringStore.put(SOURCE, "logs/crlf.json", body);
+
+        S3SequentialJsonArrayMerger.run(byteStore, SOURCE, TARGET, 100);
+        Files.deleteIfExists(Paths.get(ORIGINAL_CHECKPOINT));
+        S3SequentialJsonArrayMerger.byteLineMode = false;
+        S3SequentialJsonArrayMerger.run(stringStore, SOURCE, TARGET, 100);
+
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"b\":\"日本語\"}", "", "{\"c\":3}"), mergedLines(byteStore));
+        assertEquals(mergedLines(stringStore), mergedLines(byteStore));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Chunks larger than one part stream out as multipart uploads")
+    void testChunkStreamsAsParts() throws Exception {
+        S3SequentialJsonArrayMerger.partSize = S3SequentialJsonArrayMerger.MIN_PART_SIZE;
+        AtomicInteger parts = new AtomicInteger();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public String uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) throws IOException {
+                parts.incrementAndGet();
+                return super.uploadPart(bucket, key, uploadId, partNumber, data);
+            }
+        };
+        String padding = "y".repeat(1000);
+        List<String> expected = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 12000; i++) {
+            String line = "{\"id\":" + i + ",\"pad\":\"" + padding + "\"}";
+            expected.add(line);
+            sb.append(line).append('\n');
+        }
+        store.put(SOURCE, "big/file.json", sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 11000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertEquals(2, store.keys(TARGET).size());
+        assertEquals(3, parts.get()); // ~10.8MB chunk in 5MB parts; the 1000-line remainder is a single put
+    }
+
+    @Test
+    @DisplayName("Pipeline: Sequential part uploads produce the same output")
+    void testSinglePartInFlight() throws Exception {
+        S3SequentialJsonArrayMerger.partSize = S3SequentialJsonArrayMerger.MIN_PART_SIZE;
+        S3SequentialJsonArrayMerger.partConcurrency = 1;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        String padding = "z".repeat(2000);
+        List<String> expected = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8000; i++) {
+            String line = "{\"id\":" + i + ",\"pad\":\"" + padding + "\"}";
+            expected.add(line);
+            sb.append(line).append('\n');
+        }
+        store.put(SOURCE, "big/file.json", sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 8000);
+
+        assertEquals(expected, mergedLines(store));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Pipeline: Ranged parallel download stitches lines across range edges")
+    void testRangedDownload(boolean byteMode) throws Exception {
+        S3SequentialJsonArrayMerger.byteLineMode = byteMode;
+        S3SequentialJsonArrayMerger.rangeThreshold = 1;
+        S3SequentialJsonArrayMerger.rangeSize = 977; // never aligned with a line edge
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 1, 1, 1200);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100000);
+
+        assertEquals(expected, mergedLines(store));
+    }
+
+    @Test
+    @DisplayName("Pipeline: File is resumed after the last line recorded as uploaded")
+    void testResumeFromProgress() throws Exception {
+        Files.write(Paths.get(ORIGINAL_CHECKPOINT), Arrays.asList(
+            "progress_logs/a.json=3"
+        ));
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        store.put(SOURCE, "logs/a.json", "l1\nl2\nl3\nl4\nl5\n".getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(Arrays.asList("l4", "l5"), mergedLines(store));
+        List<String> checkpoint = Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT));
+        assertTrue(checkpoint.contains("logs/a.json=5"));
+        assertTrue(checkpoint.stream().noneMatch(l -> l.startsWith("progress_")));
+    }
+
+    @Test
+    @DisplayName("Pipeline: File with a recorded byte offset resumes with a ranged read")
+    void testResumeFromByteOffset() throws Exception {
+        Files.write(Paths.get(ORIGINAL_CHECKPOINT), Arrays.asList(
+            "progress_logs/a.json=3:9"
+        ));
+        List<Long> rangeStarts = new ArrayList<>();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public InputStream get(String bucket, String key) throws IOException {
+                throw new IOException("Resumed file must not be read from the start");
+            }
+
+            @Override
+            public InputStream getRange(String bucket, String key, long start, long end) throws IOException {
+                rangeStarts.add(start);
+                return super.getRange(bucket, key, start, end);
+            }
+        };
+        store.put(SOURCE, "logs/a.json", "l1\nl2\nl3\nl4\nl5\n".getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(Arrays.asList("l4", "l5"), mergedLines(store));
+        assertEquals(Arrays.asList(9L), rangeStarts);
+        assertTrue(Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT)).contains("logs/a.json=5"));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Progress journaled by a crashed run is replayed and folded into the checkpoint")
+    void testResumeFromJournal() throws Exception {
+        Files.write(Paths.get(ORIGINAL_CHECKPOINT), Arrays.asList(
+            CheckpointJournal.SEGMENT_KEY + "=4",
+            "logs/a.json=2"
+        ));
+        Files.write(CheckpointJournal.segmentPath(Paths.get(ORIGINAL_CHECKPOINT), 4), Arrays.asList(
+            journalRecord("+progress_logs/b.json=3:9"),
+            journalRecord("-logs/a.json"),
+            journalRecord("+logs/a.json=2")
+        ));
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        store.put(SOURCE, "logs/a.json", "a1\na2\n".getBytes(StandardCharsets.UTF_8));
+        store.put(SOURCE, "logs/b.json", "l1\nl2\nl3\nl4\nl5\n".getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(Arrays.asList("l4", "l5"), mergedLines(store));
+        List<String> checkpoint = Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT));
+        assertTrue(checkpoint.contains("logs/a.json=2"));
+        assertTrue(checkpoint.contains("logs/b.json=5"));
+        assertTrue(CheckpointJournal.segmentNumbers(Paths.get(ORIGINAL_CHECKPOINT)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Pipeline: Indexed checkpoint keeps completed files in the binary index and skips them on the next run")
+    void testIndexedCheckpoint() throws Exception {
+        S3SequentialJsonArrayMerger.indexedCheckpoint = true;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 2, 3, 40);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 50);
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 50);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        try (CheckpointIndex index = CheckpointIndex.open(Paths.get(CHECKPOINT_INDEX))) {
+            assertEquals(6, index.size());
+            assertEquals(40, index.lineCount("logs/dir-1/file-2.json"));
+        }
+        assertTrue(Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT)).stream().noneMatch(l -> l.startsWith("logs/")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 10})
+    @DisplayName("Pipeline: Digest completed set, with or without a Bloom filter, skips exactly the completed files")
+    void testDigestCompletedSet(int bloomBitsPerKey) throws Exception {
+        S3SequentialJsonArrayMerger.indexedCheckpoint = true;
+        S3SequentialJsonArrayMerger.completedSetType = "digest";
+        S3SequentialJsonArrayMerger.bloomBitsPerKey = bloomBitsPerKey;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 1, 3, 20);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 25);
+        List<String> more = new ArrayList<>();
+        for (int l = 0; l < 5; l++) {
+            more.add("{\"late\":" + l + "}");
+        }
+        store.put(SOURCE, "logs/dir-0/late.json", (String.join("\n", more) + "\n").getBytes(StandardCharsets.UTF_8));
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 25);
+
+        expected.addAll(more);
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Files in a converted checkpoint index are skipped in text mode too")
+    void testConvertedCheckpointSkipped() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        seedSource(store, 1, 2, 10);
+        Files.write(Paths.get(ORIGINAL_CHECKPOINT), Arrays.asList("logs/dir-0/file-0.json=10"));
+        CheckpointConverter.convert(Paths.get(ORIGINAL_CHECKPOINT), Paths.get(CHECKPOINT_INDEX), CheckpointConverter.RUN_ENTRIES);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(10, mergedLines(store).size());
+        assertTrue(Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT)).contains("logs/dir-0/file-1.json=10"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 8})
+    @DisplayName("Pipeline: Partitions listed in parallel merge every line exactly once")
+    void testParallelListing(int listingThreads) throws Exception {
+        S3SequentialJsonArrayMerger.listingDepth = 2;
+        S3SequentialJsonArrayMerger.listingThreads = listingThreads;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 12, 5, 30);
+        store.put(SOURCE, "top.json", "{\"top\":0}\n".getBytes(StandardCharsets.UTF_8));
+        expected.add("{\"top\":0}");
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        List<String> checkpoint = Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT));
+        assertEquals(11, checkpoint.stream().filter(l -> l.startsWith("prefix_")).count());
+        assertTrue(checkpoint.contains("top.json=1"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("Pipeline: Completed prefixes collapse into one marker and are never listed again")
+    void testCompletedPrefixesCollapsed(boolean indexed) throws Exception {
+        S3SequentialJsonArrayMerger.indexedCheckpoint = indexed;
+        S3SequentialJsonArrayMerger.listingDepth = 2;
+        List<String> listedPrefixes = Collections.synchronizedList(new ArrayList<>());
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+                listedPrefixes.add(prefix);
+                return super.list(bucket, prefix, delimiter, continuationToken);
+            }
+        };
+        List<String> expected = seedSource(store, 3, 3, 20);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 25);
+
+        List<String> checkpoint = Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT));
+        assertTrue(checkpoint.contains("prefix_logs/dir-0/=3"));
+        assertTrue(checkpoint.contains("prefix_logs/dir-1/=3"));
+        assertTrue(checkpoint.stream().noneMatch(l -> l.startsWith("prefix_logs/dir-2/")), "newest prefix stays open");
+        assertTrue(checkpoint.stream().noneMatch(l -> l.startsWith("logs/dir-0/") || l.startsWith("logs/dir-1/")));
+        assertEquals(!indexed, checkpoint.contains("logs/dir-2/file-0.json=20"));
+        if (indexed) {
+            try (CheckpointIndex index = CheckpointIndex.open(Paths.get(CHECKPOINT_INDEX))) {
+                assertEquals(3, index.size());
+                assertEquals(20, index.lineCount("logs/dir-2/file-0.json"));
+            }
+        }
+
+        // An object appearing in a completed prefix is not picked up; one in the open prefix is
+        store.put(SOURCE, "logs/dir-0/late.json", "{\"late\":0}\n".getBytes(StandardCharsets.UTF_8));
+        store.put(SOURCE, "logs/dir-2/late.json", "{\"late\":2}\n".getBytes(StandardCharsets.UTF_8));
+        listedPrefixes.clear();
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 25);
+
+        expected.add("{\"late\":2}");
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertFalse(listedPrefixes.contains("logs/dir-0/"));
+        assertFalse(listedPrefixes.contains("logs/dir-1/"));
+        assertTrue(listedPrefixes.contains("logs/dir-2/"));
+    }
+
+    @Test
+    @DisplayName("Pipeline: A restart takes the objects recorded in the listing manifest and lists only past them")
+    void testResumeFromListingManifest() throws Exception {
+        S3SequentialJsonArrayMerger.listingManifest = true;
+        List<String> tokens = Collections.synchronizedList(new ArrayList<>());
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+                tokens.add(continuationToken);
+                return super.list(bucket, prefix, delimiter, continuationToken);
+            }
+        };
+        List<String> expected = seedSource(store, 1, 4, 20);
+        // The crashed run had listed the first two files, finished the first and was partway into the second
+        List<StoredObject> listed = store.list(SOURCE, null, null, null).contents();
+        try (ListingManifest manifest = new ListingManifest(Paths.get(LISTING_MANIFEST), SOURCE, 0)) {
+            manifest.replay((p, o) -> { });
+            manifest.page("", listed.subList(0, 2), listed.get(1).key());
+        }
+        Files.write(Paths.get(ORIGINAL_CHECKPOINT), Arrays.asList(
+            listed.get(0).key() + "=20",
+            S3SequentialJsonArrayMerger.PROGRESS_PREFIX + listed.get(1).key() + "=5"
+        ));
+        tokens.clear();
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(sorted(expected.subList(25, 80)), sorted(mergedLines(store)));
+        assertEquals(Arrays.asList(listed.get(1).key()), tokens);
+        assertFalse(Files.exists(Paths.get(LISTING_MANIFEST)), "manifest of a finished run is deleted");
+    }
+
+    @Test
+    @DisplayName("Pipeline: An inventory report replaces the bucket listing, skipping completed files")
+    void testInventorySource() throws Exception {
+        AtomicInteger listRequests = new AtomicInteger();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public ObjectListing list(String bucket, String prefix, String delimiter, String continuationToken) {
+                listRequests.incrementAndGet();
+                return super.list(bucket, prefix, delimiter, continuationToken);
+            }
+        };
+        List<String> expected = seedSource(store, 2, 3, 15);
+        List<String> rows = new ArrayList<>();
+        for (StoredObject obj : store.list(SOURCE, null, null, null).contents()) {
+            rows.add("\"" + SOURCE + "\",\"" + obj.key() + "\",\"" + obj.size() + "\"");
+        }
+        store.put("inventory", "data/part-0.csv.gz", InventoryManifestTest.gzip(String.join("\n", rows.subList(0, 4)) + "\n"));
+        store.put("inventory", "data/part-1.csv.gz", InventoryManifestTest.gzip(String.join("\n", rows.subList(4, 6)) + "\n"));
+        store.put("inventory", "manifest.json", InventoryManifestTest.manifest(SOURCE, "Bucket, Key, Size",
+            "data/part-0.csv.gz", "data/part-1.csv.gz").getBytes(StandardCharsets.UTF_8));
+        Files.write(Paths.get(ORIGINAL_CHECKPOINT), Arrays.asList("logs/dir-0/file-0.json=15"));
+        S3SequentialJsonArrayMerger.inventoryManifest = "s3://inventory/manifest.json";
+        listRequests.set(0);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(sorted(expected.subList(15, 90)), sorted(mergedLines(store)));
+        assertEquals(0, listRequests.get());
+        assertTrue(Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT)).contains("logs/dir-1/file-2.json=15"));
+    }
+
+    @Test
+    @DisplayName("Pipeline: Files are only marked complete once their lines are uploaded")
+    void testCompletionWaitsForUpload() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        seedSource(store, 1, 2, 30);
+
+        // Chunks of 20 lines: the second file ends inside the final chunk
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 20);
+
+        List<String> checkpoint = Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT));
+        assertTrue(checkpoint.contains("logs/dir-0/file-0.json=30"));
+        assertTrue(checkpoint.contains("logs/dir-0/file-1.json=30"));
+        assertTrue(checkpoint.stream().noneMatch(l -> l.startsWith("progress_")));
+    }
+
+    @Test
+    @DisplayName("Pipeline: A chunk that landed ahead of an earlier one when the run crashed is deleted, not merged twice")
+    void testCrashWithChunkUploadedOutOfOrder() throws Exception {
+        S3SequentialJsonArrayMerger.uploadThreads = 4;
+        Path checkpointFile = Paths.get(ORIGINAL_CHECKPOINT);
+        CountDownLatch secondChunkVisible = new CountDownLatch(1);
+        Map<Path, byte[]> crashedCheckpoint = new HashMap<>();
+        Map<String, byte[]> crashedTarget = new HashMap<>();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public void put(String bucket, String key, byte[] data) {
+                String content = new String(data, StandardCharsets.UTF_8);
+                if (bucket.equals(TARGET) && content.startsWith("l0\n")) {
+                    // The first chunk is still uploading when the second has landed: crash here
+                    try {
+                        assertTrue(secondChunkVisible.await(30, TimeUnit.SECONDS));
+                        for (Path file : checkpointFiles(checkpointFile)) {
+                            crashedCheckpoint.put(file, Files.readAllBytes(file));
+                        }
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                    for (String target : keys(TARGET)) {
+                        crashedTarget.put(target, getBytes(TARGET, target));
+                    }
+                }
+                super.put(bucket, key, data);
+                if (bucket.equals(TARGET) && content.startsWith("l20\n")) {
+                    secondChunkVisible.countDown();
+                }
+            }
+        };
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            expected.add("l" + i);
+        }
+        store.put(SOURCE, "logs/a.json", (String.join("\n", expected) + "\n").getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 20);
+        // The second chunk, and perhaps the last, landed while the first was still uploading
+        List<String> landed = new ArrayList<>();
+        crashedTarget.values().forEach(data -> landed.add(new String(data, StandardCharsets.UTF_8).split("\n")[0]));
+        assertTrue(landed.contains("l20"));
+        assertFalse(landed.contains("l0"));
+
+        // Restart from what the crash left behind
+        for (Path file : checkpointFiles(checkpointFile)) {
+            Files.delete(file);
+        }
+        for (Map.Entry<Path, byte[]> file : crashedCheckpoint.entrySet()) {
+            Files.write(file.getKey(), file.getValue());
+        }
+        InMemoryObjectStore restarted = new InMemoryObjectStore();
+        restarted.put(SOURCE, "logs/a.json", store.getBytes(SOURCE, "logs/a.json"));
+        crashedTarget.forEach((key, data) -> restarted.put(TARGET, key, data));
+
+        S3SequentialJsonArrayMerger.run(restarted, SOURCE, TARGET, 20);
+
+        assertEquals(sorted(expected), sorted(mergedLines(restarted)));
+        assertTrue(restarted.keys(TARGET).stream().noneMatch(crashedTarget::containsKey));
+        List<String> checkpoint = Files.readAllLines(checkpointFile);
+        assertTrue(checkpoint.contains("logs/a.json=60"));
+        assertTrue(checkpoint.stream().noneMatch(l -> l.startsWith(S3SequentialJsonArrayMerger.COMMITTING_PREFIX)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {4, 256})
+    @DisplayName("Pipeline: Async engine merges every line exactly once, whatever the number in flight")
+    void testAsyncDownloads(int concurrency) throws Exception {
+        S3SequentialJsonArrayMerger.asyncDownloads = true;
+        S3SequentialJsonArrayMerger.asyncConcurrency = concurrency;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 10, 30, 40);
+        store.put(SOURCE, "logs/big.json", String.join("\n", bigLines(expected, 50000)).getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 2000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertTrue(Files.readAllLines(Paths.get(ORIGINAL_CHECKPOINT)).contains("logs/big.json=50000"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 1000})
+    @DisplayName("Pipeline: Thread-per-task execution merges every line exactly once under any limit")
+    void testVirtualThreads(int downloadConcurrency) throws Exception {
+        S3SequentialJsonArrayMerger.virtualThreads = true;
+        S3SequentialJsonArrayMerger.virtualDownloadConcurrency = downloadConcurrency;
+        S3SequentialJsonArrayMerger.virtualUploadConcurrency = 3;
+        S3SequentialJsonArrayMerger.partSize = S3SequentialJsonArrayMerger.MIN_PART_SIZE;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 8, 40, 30);
+        store.put(SOURCE, "logs/big.json", String.join("\n", bigLines(expected, 200000)).getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("Pipeline: A slow download does not stop the scheduling of later ones")
+    void testSlowDownloadNotHeadOfLine(boolean async) throws Exception {
+        S3SequentialJsonArrayMerger.asyncDownloads = async;
+        S3SequentialJsonArrayMerger.asyncConcurrency = 8;
+        CountDownLatch othersStarted = new CountDownLatch(100);
+        AtomicBoolean overtaken = new AtomicBoolean();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public InputStream get(String bucket, String key) throws IOException {
+                if (bucket.equals(SOURCE)) {
+                    if (!key.equals("logs/a-slow.json")) {
+                        othersStarted.countDown();
+                    } else {
+                        // Listed first; holds its slot until far more downloads than the limit have started
+                        try {
+                            overtaken.set(othersStarted.await(30, TimeUnit.SECONDS));
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                    }
+                }
+                return super.get(bucket, key);
+            }
+        };
+        List<String> expected = seedSource(store, 4, 30, 5);
+        store.put(SOURCE, "logs/a-slow.json", String.join("\n", bigLines(expected, 1000)).getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 200);
+
+        assertTrue(overtaken.get());
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes", "string", "async"})
+    @DisplayName("Pipeline: Byte budgets bound what downloads and the line queue hold, without losing lines")
+    void testByteBudgets(String mode) throws Exception {
+        S3SequentialJsonArrayMerger.byteLineMode = !mode.equals("string");
+        S3SequentialJsonArrayMerger.asyncDownloads = mode.equals("async");
+        S3SequentialJsonArrayMerger.downloadBudgetBytes = 300 * 1024;
+        S3SequentialJsonArrayMerger.queueBudgetBytes = 600 * 1024;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 5, 20, 30);
+        store.put(SOURCE, "logs/big.json", String.join("\n", bigLines(expected, 50000)).getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 2000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        ByteBudget downloads = S3SequentialJsonArrayMerger.downloadBudget;
+        ByteBudget queue = S3SequentialJsonArrayMerger.queueBudget;
+        assertTrue(downloads.peak() > 0 && downloads.peak() <= 300 * 1024);
+        assertTrue(queue.peak() > 0 && queue.peak() <= 600 * 1024);
+        assertEquals(0, downloads.used());
+        assertEquals(0, queue.used());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes", "string", "async"})
+    @DisplayName("Pipeline: The ring line queue merges every line exactly once")
+    void testRingQueue(String mode) throws Exception {
+        S3SequentialJsonArrayMerger.byteLineMode = !mode.equals("string");
+        S3SequentialJsonArrayMerger.asyncDownloads = mode.equals("async");
+        S3SequentialJsonArrayMerger.ringQueue = true;
+        S3SequentialJsonArrayMerger.queueBudgetBytes = 600 * 1024;
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 5, 20, 30);
+        store.put(SOURCE, "logs/big.json", String.join("\n", bigLines(expected, 50000)).getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 2000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertNull(S3SequentialJsonArrayMerger.queueBudget);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes", "string", "async", "ranged"})
+    @DisplayName("Pipeline: Direct buffers merge every line exactly once and none leak")
+    void testDirectBuffers(String mode) throws Exception {
+        S3SequentialJsonArrayMerger.directBuffers = true;
+        S3SequentialJsonArrayMerger.byteLineMode = !mode.equals("string");
+        S3SequentialJsonArrayMerger.asyncDownloads = mode.equals("async");
+        S3SequentialJsonArrayMerger.partSize = S3SequentialJsonArrayMerger.MIN_PART_SIZE;
+        if (mode.equals("ranged")) {
+            S3SequentialJsonArrayMerger.rangeThreshold = 1024 * 1024;
+            S3SequentialJsonArrayMerger.rangeSize = 256 * 1024;
+        }
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 5, 20, 30);
+        store.put(SOURCE, "logs/big.json", String.join("\n", bigLines(expected, 60000)).getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 50000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertTrue(S3SequentialJsonArrayMerger.blockPool.isDirect());
+        assertTrue(S3SequentialJsonArrayMerger.partPool.isDirect());
+        assertEquals(0, S3SequentialJsonArrayMerger.blockPool.outstanding());
+        assertEquals(0, S3SequentialJsonArrayMerger.partPool.outstanding());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"platform", "async", "virtual"})
+    @DisplayName("Pipeline: Adaptive download concurrency merges every line exactly once on any engine")
+    void testAdaptiveConcurrency(String engine) throws Exception {
+        S3SequentialJsonArrayMerger.adaptiveConcurrency = true;
+        S3SequentialJsonArrayMerger.initialDownloadConcurrency = 2;
+        S3SequentialJsonArrayMerger.minDownloadConcurrency = 1;
+        S3SequentialJsonArrayMerger.maxDownloadConcurrency = 16;
+        S3SequentialJsonArrayMerger.asyncDownloads = engine.equals("async");
+        S3SequentialJsonArrayMerger.virtualThreads = engine.equals("virtual");
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<String> expected = seedSource(store, 10, 30, 40);
+        store.put(SOURCE, "logs/big.json", String.join("\n", bigLines(expected, 50000)).getBytes(StandardCharsets.UTF_8));
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 2000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        ConcurrencyController concurrency = S3SequentialJsonArrayMerger.downloadConcurrency;
+        assertNotNull(concurrency);
+        assertTrue(concurrency.currentLimit() >= 1 && concurrency.peakLimit() <= 16);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("Pipeline: A throttled download is retried and merged exactly once")
+    void testThrottledDownloadRetried(boolean async) throws Exception {
+        S3SequentialJsonArrayMerger.adaptiveConcurrency = true;
+        S3SequentialJsonArrayMerger.asyncDownloads = async;
+        AtomicInteger throttled = new AtomicInteger();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public InputStream get(String bucket, String key) throws IOException {
+                if (bucket.equals(SOURCE) && throttled.getAndIncrement() == 0) {
+                    throw S3Exception.builder()
+                        .statusCode(503)
+                        .awsErrorDetails(AwsErrorDetails.builder().errorCode("SlowDown").build())
+                        .message("Please reduce your request rate.")
+                        .build();
+                }
+                return super.get(bucket, key);
+            }
+        };
+        List<String> expected = seedSource(store, 2, 3, 50);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 100);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertEquals(7, throttled.get());
+    }
+
+    @Test
+    @DisplayName("Pipeline: Async download retried mid-file resumes after the last queued line")
+    void testAsyncDownloadRetry() throws Exception {
+        S3SequentialJsonArrayMerger.asyncDownloads = true;
+        AtomicInteger failures = new AtomicInteger();
+        List<Long> rangeStarts = Collections.synchronizedList(new ArrayList<>());
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public InputStream get(String bucket, String key) throws IOException {
+                InputStream in = super.get(bucket, key);
+                if (!bucket.equals(SOURCE) || failures.getAndIncrement() > 0) {
+                    return in;
+                }
+                return new FilterInputStream(in) {
+                    private int served;
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        if (served >= 300000) throw new IOException("Connection reset");
+                        int n = super.read(b, off, Math.min(len, 300000 - served));
+                        if (n > 0) served += n;
+                        return n;
+                    }
+                };
+            }
+
+            @Override
+            public InputStream getRange(String bucket, String key, long start, long end) throws IOException {
+                rangeStarts.add(start);
+                return super.getRange(bucket, key, start, end);
+            }
+        };
+        List<String> expected = seedSource(store, 1, 1, 20000);
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 5000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        assertEquals(1, failures.get());
+        assertEquals(1, rangeStarts.size());
+        assertTrue(rangeStarts.get(0) > 0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Pipeline: A download retried mid-file does not repeat lines")
+    void testDownloadRetryNoDuplicates(boolean byteMode) throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        List<Long> rangeStarts = new ArrayList<>();
+        InMemoryObjectStore store = new InMemoryObjectStore() {
+            @Override
+            public InputStream get(String bucket, String key) throws IOException {
+                InputStream in = super.get(bucket, key);
+                if (!bucket.equals(SOURCE) || failures.getAndIncrement() > 0) {
+                    return in;
+                }
+                // First attempt dies after 300000 bytes, once the first block or batches have been queued
+                return new FilterInputStream(in) {
+                    private int served;
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        if (served >= 300000) throw new IOException("Connection reset");
+                        int n = super.read(b, off, Math.min(len, 300000 - served));
+                        if (n > 0) served += n;
+                        return n;
+                    }
+                };
+            }
+
+            @Override
+            public InputStream getRange(String bucket, String key, long start, long end) throws IOException {
+                rangeStarts.add(start);
+                return super.getRange(bucket, key, start, end);
+            }
+        };
+        List<String> expected = seedSource(store, 1, 1, 20000);
+        S3SequentialJsonArrayMerger.byteLineMode = byteMode;
+
+        S3SequentialJsonArrayMerger.run(store, SOURCE, TARGET, 5000);
+
+        assertEquals(sorted(expected), sorted(mergedLines(store)));
+        if (byteMode) {
+            // The retry picks up right after the last queued line instead of re-reading the object
+            assertEquals(1, failures.get());
+            assertEquals(1, rangeStarts.size());
+            assertTrue(rangeStarts.get(0) > 0);
+        } else {
+            assertEquals(2, failures.get());
+        }
+    }
+
+    // Creates dirs x filesPerDir objects, each with linesPerFile JSON lines
+    static List<String> seedSource(InMemoryObjectStore store, int dirs, int filesPerDir, int linesPerFile) {
+        List<String> all = new ArrayList<>();
+        for (int d = 0; d < dirs; d++) {
+            for (int f = 0; f < filesPerDir; f++) {
+                StringBuilder sb = new StringBuilder();
+                for (int l = 0; l < linesPerFile; l++) {
+                    String line = "{\"dir\":" + d + ",\"file\":" + f + ",\"line\":" + l + "}";
+                    all.add(line);
+                    sb.append(line).append('\n');
+                }
+                store.put(SOURCE, "logs/dir-" + d + "/file-" + f + ".json", sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return all;
+    }
+
+    // Appends count lines for one large object to expected and returns them
+    private static List<String> bigLines(List<String> expected, int count) {
+        List<String> lines = new ArrayList<>();
+        for (int l = 0; l < count; l++) {
+            lines.add("{\"big\":" + l + ",\"pad\":\"" + "p".repeat(l % 50) + "\"}");
+        }
+        expected.addAll(lines);
+        return lines;
+    }
+
+    static List<String> mergedLines(InMemoryObjectStore store) {
+        List<String> lines = new ArrayList<>();
+        for (String key : store.keys(TARGET)) {
+            String content = new String(store.getBytes(TARGET, key), StandardCharsets.UTF_8);
+            if (!content.isEmpty()) {
+                lines.addAll(Arrays.asList(content.split("\n")));
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        List<String> copy = new ArrayList<>(lines);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    // The checkpoint snapshot, if any, and its journal segments
+    private static List<Path> checkpointFiles(Path snapshot) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.exists(snapshot)) {
+            files.add(snapshot);
+        }
+        for (long n : CheckpointJournal.segmentNumbers(snapshot)) {
+            files.add(CheckpointJournal.segmentPath(snapshot, n));
+        }
+        return files;
+    }
+
+    // One journal line: the record and its CRC-32 in hex
+    private static String journalRecord(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return record + "\t" + Long.toHexString(crc.getValue());
+    }
+}
@@ -8,10 +8,13 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
 import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.*;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -266,6 +269,29 @@ class S3SequentialJsonArrayMergerTest {
         assertTrue((Boolean) result);
     }
     
+    // ============ isThrottlingException Tests ============
+    
+    @Test
+    @DisplayName("isThrottlingException: S3 503 SlowDown")
+    void testIsThrottlingExceptionSlowDown() {
+        S3Exception e = (S3Exception) S3Exception.builder()
+            .statusCode(503)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("SlowDown").build())
+            .message("Please reduce your request rate.")
+            .build();
+        assertTrue(S3SequentialJsonArrayMerger.isThrottlingException(e));
+        assertTrue(S3SequentialJsonArrayMerger.isThrottlingException(new IOException("Range failed", e)));
+    }
+    
+    @Test
+    @DisplayName("isThrottlingException: other errors are not throttling")
+    void testIsThrottlingExceptionOther() {
+        S3Exception notFound = (S3Exception) S3Exception.builder().statusCode(404).message("Not Found").build();
+        assertFalse(S3SequentialJsonArrayMerger.isThrottlingException(notFound));
+        assertFalse(S3SequentialJsonArrayMerger.isThrottlingException(SdkClientException.create("SDK error")));
+        assertFalse(S3SequentialJsonArrayMerger.isThrottlingException(new IOException("Connection reset")));
+    }
+    
     // ============ Checkpoint Operations Tests ============
     
     @Test
@@ -388,36 +414,6 @@ class S3SequentialJsonArrayMergerTest {
     
     // ============ Buffer Management Tests ============
     
-    @Test
-    @DisplayName("updateBufferInCheckpoint: Save empty buffer")
-    void testUpdateBufferInCheckpointEmpty() throws Exception {
-        Map<String, String> checkpoint = new HashMap<>();
-        List<String> buffer = new ArrayList<>();
-        
-        Method updateBuffer = getPrivateMethod("updateBufferInCheckpoint", Map.class, List.class, int.class);
-        updateBuffer.invoke(null, checkpoint, buffer, 0);
-        
-        assertEquals("0", checkpoint.get("bufferCount"));
-    }
-    
-    @Test
-    @DisplayName("updateBufferInCheckpoint: Save multiple lines")
-    void testUpdateBufferInCheckpointMultiple() throws Exception {
-        Map<String, String> checkpoint = new HashMap<>();
-        List<String> buffer = new ArrayList<>();
-        buffer.add("line1");
-        buffer.add("line2");
-        buffer.add("line3");
-        
-        Method updateBuffer = getPrivateMethod("updateBufferInCheckpoint", Map.class, List.class, int.class);
-        updateBuffer.invoke(null, checkpoint, buffer, 3);
-        
-        assertEquals("3", checkpoint.get("bufferCount"));
-        assertEquals("line1", checkpoint.get("buffer_0"));
-        assertEquals("line2", checkpoint.get("buffer_1"));
-        assertEquals("line3", checkpoint.get("buffer_2"));
-    }
-    
     @Test
     @DisplayName("clearBufferFromCheckpoint: Remove all buffer entries")
     void testClearBufferFromCheckpoint() throws Exception {
@@ -436,28 +432,6 @@ class S3SequentialJsonArrayMergerTest {
         assertFalse(checkpoint.containsKey("buffer_1"));
     }
     
-    @Test
-    @DisplayName("updateLastSourceKeyInCheckpoint: Save last source key")
-    void testUpdateLastSourceKeyInCheckpoint() throws Exception {
-        Map<String, String> checkpoint = new HashMap<>();
-        
-        Method updateKey = getPrivateMethod("updateLastSourceKeyInCheckpoint", Map.class, String.class);
-        updateKey.invoke(null, checkpoint, "logs/file.log");
-        
-        assertEquals("logs/file.log", checkpoint.get("lastSourceKey"));
-    }
-    
-    @Test
-    @DisplayName("updateLastSourceKeyInCheckpoint: Null key not saved")
-    void testUpdateLastSourceKeyInCheckpointNull() throws Exception {
-        Map<String, String> checkpoint = new HashMap<>();
-        
-        Method updateKey = getPrivateMethod("updateLastSourceKeyInCheckpoint", Map.class, String.class);
-        updateKey.invoke(null, checkpoint, null);
-        
-        assertFalse(checkpoint.containsKey("lastSourceKey"));
-    }
-    
     // ============ Checkpoint Parsing Edge Cases ============
     
     @Test
@@ -611,7 +585,7 @@ class S3SequentialJsonArrayMergerTest {
     }
     
     private void createCheckpointFile(String filename, String[] lines) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
             for (String line : lines) {
                 writer.write(line);
                 writer.newLine();
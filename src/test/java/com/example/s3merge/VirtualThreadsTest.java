@@ -0,0 +1,108 @@
+package com.example.s3merge;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the thread-per-task executors behind execution.mode=virtual
+ */
+@DisplayName("VirtualThreads Test Suite")
+class VirtualThreadsTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16})
+    @DisplayName("newExecutor: Never runs more tasks at once than the limit, and runs them all")
+    void testConcurrencyLimit(int limit) throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor("test", limit);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 64; i++) {
+            executor.execute(() -> {
+                int now = running.incrementAndGet();
+                peak.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.incrementAndGet();
+            });
+        }
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(64, done.get());
+        assertTrue(peak.get() <= limit, "peak " + peak.get() + " above limit " + limit);
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    @DisplayName("newExecutor: Submitting never blocks while the limit is taken")
+    void testSubmitDoesNotBlock() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor("test", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Future<String> queued = executor.submit(() -> "ran");
+        assertFalse(queued.isDone());
+        release.countDown();
+
+        assertEquals("ran", queued.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("shutdownNow: Interrupts running tasks and rejects new ones")
+    void testShutdownNow() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor("test", 2);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+    }
+
+    @Test
+    @DisplayName("available: Matches the runtime's support for virtual threads")
+    void testAvailable() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor("test", 1);
+        Future<String> name = executor.submit(() -> Thread.currentThread().toString());
+
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.available());
+        assertEquals(VirtualThreads.available(), name.get(10, TimeUnit.SECONDS).startsWith("VirtualThread"));
+        executor.shutdown();
+    }
+}